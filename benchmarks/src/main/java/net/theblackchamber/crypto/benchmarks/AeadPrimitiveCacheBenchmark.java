@@ -0,0 +1,115 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 Seamus Minogue
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.theblackchamber.crypto.benchmarks;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.lang3.RandomStringUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.google.crypto.tink.Aead;
+import com.google.crypto.tink.KeysetHandle;
+
+import net.theblackchamber.crypto.model.KeyConfig2;
+import net.theblackchamber.crypto.providers.EncryptionProvider2;
+import net.theblackchamber.crypto.providers.EncryptionProviderFactory2;
+import net.theblackchamber.crypto.util.KeystoreUtils2;
+
+/**
+ * Compares small payload throughput of {@link EncryptionProvider2}, which
+ * resolves the {@link Aead} primitive once per keyset, against resolving the
+ * primitive from the {@link KeysetHandle} on every call.
+ * 
+ * @author sminogue
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AeadPrimitiveCacheBenchmark {
+
+	@Param({ "16", "128", "1024" })
+	private int payloadSize;
+
+	private File keyFile;
+	private KeysetHandle key;
+	private EncryptionProvider2 provider;
+	private byte[] payload;
+	private byte[] associated;
+	private byte[] cipherText;
+
+	@Setup
+	public void setup() throws Exception {
+		keyFile = File.createTempFile("commonsencryption", ".keys");
+		KeyConfig2 config = new KeyConfig2(keyFile, "benchmark");
+		KeystoreUtils2.generateSecretKey(config);
+		key = KeystoreUtils2.getSecretKey(config);
+		provider = EncryptionProviderFactory2.getProvider(key);
+
+		payload = RandomStringUtils.randomAlphanumeric(payloadSize).getBytes();
+		associated = RandomStringUtils.randomAlphanumeric(16).getBytes();
+		cipherText = provider.encrypt(payload, associated);
+	}
+
+	@TearDown
+	public void tearDown() {
+		keyFile.delete();
+	}
+
+	@Benchmark
+	public byte[] encryptCachedPrimitive() throws Exception {
+		return provider.encrypt(payload, associated);
+	}
+
+	@Benchmark
+	public byte[] encryptResolvedPerCall() throws Exception {
+		return key.getPrimitive(Aead.class).encrypt(payload, associated);
+	}
+
+	@Benchmark
+	public byte[] decryptCachedPrimitive() throws Exception {
+		return provider.decrypt(cipherText, associated);
+	}
+
+	@Benchmark
+	public byte[] decryptResolvedPerCall() throws Exception {
+		return key.getPrimitive(Aead.class).decrypt(cipherText, associated);
+	}
+
+}
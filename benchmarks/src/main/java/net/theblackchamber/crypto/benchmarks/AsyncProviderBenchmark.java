@@ -0,0 +1,140 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 Seamus Minogue
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.theblackchamber.crypto.benchmarks;
+
+import java.io.File;
+import java.lang.reflect.Method;
+import java.util.Random;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import net.theblackchamber.crypto.model.KeyConfig2;
+import net.theblackchamber.crypto.providers.AsyncEncryptionProvider2;
+import net.theblackchamber.crypto.providers.EncryptionProvider2;
+import net.theblackchamber.crypto.providers.EncryptionProviderFactory2;
+import net.theblackchamber.crypto.util.AsyncExecutors;
+import net.theblackchamber.crypto.util.KeystoreUtils2;
+
+/**
+ * Small payload throughput of {@link AsyncEncryptionProvider2} on the default
+ * pool of {@link AsyncExecutors#defaultExecutor()} against a new thread per
+ * task, virtual where the runtime supports it, whose per thread state
+ * (DRBG, Cipher, scratch buffers) starts empty for every call. DIRECT is the
+ * blocking call on the benchmark thread, for reference.
+ * 
+ * @author sminogue
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AsyncProviderBenchmark {
+
+	@Param({ "DEFAULT", "THREAD_PER_TASK", "DIRECT" })
+	private String executor;
+
+	@Param({ "16", "1024" })
+	private int payloadSize;
+
+	private File keyFile;
+	private EncryptionProvider2 provider;
+	private AsyncEncryptionProvider2 asyncProvider;
+	private Executor taskExecutor;
+	private String clearText;
+	private String cipherText;
+
+	@Setup
+	public void setup() throws Exception {
+		keyFile = File.createTempFile("commonsencryption", ".keys");
+		KeyConfig2 config = new KeyConfig2(keyFile, "benchmark");
+		KeystoreUtils2.generateSecretKey(config);
+		provider = EncryptionProviderFactory2.getProvider(KeystoreUtils2.getSecretKey(config));
+
+		taskExecutor = "THREAD_PER_TASK".equals(executor) ? newThreadPerTaskExecutor()
+				: AsyncExecutors.defaultExecutor();
+		asyncProvider = new AsyncEncryptionProvider2(provider, taskExecutor);
+
+		char[] chars = new char[payloadSize];
+		Random random = new Random(payloadSize);
+		for (int i = 0; i < chars.length; i++) {
+			chars[i] = (char) ('a' + random.nextInt(26));
+		}
+		clearText = new String(chars);
+		cipherText = provider.encrypt(clearText);
+	}
+
+	@TearDown
+	public void tearDown() {
+		if (taskExecutor instanceof ExecutorService && taskExecutor != AsyncExecutors.defaultExecutor()) {
+			((ExecutorService) taskExecutor).shutdown();
+		}
+		keyFile.delete();
+	}
+
+	@Benchmark
+	public String encrypt() throws Exception {
+		if ("DIRECT".equals(executor)) {
+			return provider.encrypt(clearText);
+		}
+		return AsyncEncryptionProvider2.await(asyncProvider.encrypt(clearText));
+	}
+
+	@Benchmark
+	public String decrypt() throws Exception {
+		if ("DIRECT".equals(executor)) {
+			return provider.decrypt(cipherText);
+		}
+		return AsyncEncryptionProvider2.await(asyncProvider.decrypt(cipherText));
+	}
+
+	private static Executor newThreadPerTaskExecutor() {
+		try {
+			Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+			return (ExecutorService) factory.invoke(null);
+		} catch (ReflectiveOperationException | RuntimeException e) {
+			// Virtual threads not supported by this runtime, the cost of starting a
+			// platform thread is then measured along with the empty state.
+			return command -> new Thread(command).start();
+		}
+	}
+
+}
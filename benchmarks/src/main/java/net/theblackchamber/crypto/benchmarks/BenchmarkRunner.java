@@ -0,0 +1,74 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 Seamus Minogue
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.theblackchamber.crypto.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks matching a pattern on one thread and then on one thread
+ * per processor, measuring throughput and sampled latency with the GC
+ * profiler attached for allocation rates. Results are written as JSON next to
+ * the working directory. <br>
+ * Usage: <code>
+ * java -cp target/benchmarks.jar net.theblackchamber.crypto.benchmarks.BenchmarkRunner [pattern]
+ * </code> <br>
+ * For individual runs use the JMH command line instead, for example
+ * <code>java -jar target/benchmarks.jar ProviderBenchmark -t 4 -prof gc</code>.
+ * 
+ * @author sminogue
+ *
+ */
+public class BenchmarkRunner {
+
+	public static void main(String[] args) throws RunnerException {
+		String include = args.length > 0 ? args[0] : BenchmarkRunner.class.getPackage().getName() + ".*Benchmark";
+		int processors = Runtime.getRuntime().availableProcessors();
+
+		for (int threads : new int[] { 1, processors }) {
+			ChainedOptionsBuilder options = new OptionsBuilder()
+					.include(include)
+					.exclude(BenchmarkRunner.class.getSimpleName())
+					.mode(Mode.Throughput)
+					.mode(Mode.SampleTime)
+					.timeUnit(TimeUnit.MICROSECONDS)
+					.threads(threads)
+					.addProfiler(GCProfiler.class)
+					.result("benchmarks-" + threads + "t.json")
+					.resultFormat(ResultFormatType.JSON);
+			new Runner(options.build()).run();
+			if (processors == 1) {
+				break;
+			}
+		}
+	}
+
+}
@@ -0,0 +1,87 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 Seamus Minogue
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.theblackchamber.crypto.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.lang3.RandomStringUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import net.theblackchamber.crypto.providers.digest.SHA256DigestProvider;
+import net.theblackchamber.crypto.providers.digest.SHA256DigestProvider.TYPE;
+import net.theblackchamber.crypto.providers.digest.WhirlpoolDigestProvider;
+
+/**
+ * Throughput of {@link SHA256DigestProvider} for each {@link TYPE} and of
+ * {@link WhirlpoolDigestProvider}.
+ * 
+ * @author sminogue
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class DigestBenchmark {
+
+	@Param({ "SHA1", "SHA256", "SHA512" })
+	private TYPE type;
+
+	@Param({ "16", "1024", "65536" })
+	private int payloadSize;
+
+	private SHA256DigestProvider shaDigest;
+	private WhirlpoolDigestProvider whirlpoolDigest;
+	private String payload;
+
+	@Setup
+	public void setup() {
+		shaDigest = new SHA256DigestProvider(type);
+		whirlpoolDigest = new WhirlpoolDigestProvider();
+		payload = RandomStringUtils.randomAlphanumeric(payloadSize);
+	}
+
+	@Benchmark
+	public String sha() {
+		return shaDigest.digest(payload);
+	}
+
+	@Benchmark
+	public String whirlpool() {
+		return whirlpoolDigest.digest(payload);
+	}
+
+}
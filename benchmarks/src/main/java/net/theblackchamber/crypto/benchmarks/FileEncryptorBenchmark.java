@@ -0,0 +1,95 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 Seamus Minogue
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.theblackchamber.crypto.benchmarks;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.OutputStream;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.io.output.NullOutputStream;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import net.theblackchamber.crypto.implementations.FileEncryptor2;
+import net.theblackchamber.crypto.model.KeyConfig2;
+import net.theblackchamber.crypto.providers.EncryptionProviderFactory2;
+import net.theblackchamber.crypto.util.KeystoreUtils2;
+
+/**
+ * Throughput of {@link FileEncryptor2#encryptStream(java.io.InputStream, OutputStream)}
+ * from an in memory stream to a discarding stream, so the figures exclude
+ * disk I/O.
+ * 
+ * @author sminogue
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class FileEncryptorBenchmark {
+
+	@Param({ "1024", "65536", "1048576", "16777216" })
+	private int payloadSize;
+
+	private File keyFile;
+	private FileEncryptor2 fileEncryptor;
+	private byte[] payload;
+
+	@Setup
+	public void setup() throws Exception {
+		keyFile = File.createTempFile("commonsencryption", ".keys");
+		KeyConfig2 config = new KeyConfig2(keyFile, "benchmark");
+		KeystoreUtils2.generateSecretKey(config);
+		fileEncryptor = new FileEncryptor2(EncryptionProviderFactory2.getProvider(KeystoreUtils2.getSecretKey(config)));
+
+		payload = new byte[payloadSize];
+		new Random(payloadSize).nextBytes(payload);
+	}
+
+	@TearDown
+	public void tearDown() {
+		keyFile.delete();
+	}
+
+	@Benchmark
+	public void encryptStream() throws Exception {
+		fileEncryptor.encryptStream(new ByteArrayInputStream(payload), NullOutputStream.NULL_OUTPUT_STREAM);
+	}
+
+}
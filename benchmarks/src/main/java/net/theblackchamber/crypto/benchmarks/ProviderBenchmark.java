@@ -0,0 +1,119 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 Seamus Minogue
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.theblackchamber.crypto.benchmarks;
+
+import java.io.File;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import net.theblackchamber.crypto.constants.SupportedKeyGenAlgorithms;
+import net.theblackchamber.crypto.model.KeyConfig;
+import net.theblackchamber.crypto.model.KeyConfig2;
+import net.theblackchamber.crypto.providers.EncryptionProvider;
+import net.theblackchamber.crypto.providers.EncryptionProvider2;
+import net.theblackchamber.crypto.providers.symmetric.AESEncryptionProvider;
+import net.theblackchamber.crypto.providers.symmetric.AESEncryptionProvider2;
+import net.theblackchamber.crypto.providers.symmetric.DESEdeEncryptionProvider;
+import net.theblackchamber.crypto.util.KeystoreUtils;
+import net.theblackchamber.crypto.util.KeystoreUtils2;
+
+/**
+ * Byte array encryption and decryption throughput of
+ * {@link AESEncryptionProvider2} against the legacy
+ * {@link AESEncryptionProvider} and {@link DESEdeEncryptionProvider}, from 16
+ * bytes to 16MB.
+ * 
+ * @author sminogue
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class ProviderBenchmark {
+
+	@Param({ "AES_GCM", "LEGACY_AES", "LEGACY_DESEDE" })
+	private String provider;
+
+	@Param({ "16", "1024", "65536", "1048576", "16777216" })
+	private int payloadSize;
+
+	private File keyFile;
+	private EncryptionProvider2 provider2;
+	private EncryptionProvider legacyProvider;
+	private byte[] payload;
+	private byte[] cipherText;
+
+	@Setup
+	public void setup() throws Exception {
+		keyFile = File.createTempFile("commonsencryption", ".keys");
+
+		if ("AES_GCM".equals(provider)) {
+			KeyConfig2 config = new KeyConfig2(keyFile, "benchmark");
+			KeystoreUtils2.generateSecretKey(config);
+			provider2 = new AESEncryptionProvider2(KeystoreUtils2.getSecretKey(config));
+		} else if ("LEGACY_AES".equals(provider)) {
+			KeystoreUtils.generateSecretKey(new KeyConfig(keyFile, "benchmark", 256, SupportedKeyGenAlgorithms.AES, "aes-key"));
+			legacyProvider = new AESEncryptionProvider(KeystoreUtils.getSecretKey(keyFile, "aes-key", "benchmark"));
+		} else {
+			KeystoreUtils.generateSecretKey(new KeyConfig(keyFile, "benchmark", 192, SupportedKeyGenAlgorithms.DES, "des-key"));
+			legacyProvider = new DESEdeEncryptionProvider(KeystoreUtils.getSecretKey(keyFile, "des-key", "benchmark"));
+		}
+
+		payload = new byte[payloadSize];
+		new Random(payloadSize).nextBytes(payload);
+		cipherText = encrypt();
+	}
+
+	@TearDown
+	public void tearDown() {
+		keyFile.delete();
+	}
+
+	@Benchmark
+	public byte[] encrypt() throws Exception {
+		return provider2 != null ? provider2.encrypt(payload) : legacyProvider.encrypt(payload);
+	}
+
+	@Benchmark
+	public byte[] decrypt() throws Exception {
+		return provider2 != null ? provider2.decrypt(cipherText) : legacyProvider.decrypt(cipherText);
+	}
+
+}
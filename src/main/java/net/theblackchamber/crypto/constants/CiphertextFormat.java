@@ -0,0 +1,52 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 Seamus Minogue
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.theblackchamber.crypto.constants;
+
+/**
+ * Formats of text ciphertext recognised by
+ * {@link net.theblackchamber.crypto.providers.CiphertextFormatRouter}.
+ * 
+ * @author sminogue
+ * 
+ */
+public enum CiphertextFormat {
+
+	/**
+	 * Upper case hexadecimal jasypt ciphertext from the 1.x
+	 * {@link net.theblackchamber.crypto.providers.EncryptionProvider}.
+	 */
+	V1_HEX,
+
+	/**
+	 * Base64 Tink ciphertext with a key ID prefix from
+	 * {@link net.theblackchamber.crypto.providers.EncryptionProvider2}.
+	 */
+	V2_TINK,
+
+	/**
+	 * Neither, for example ciphertext of a RAW Tink key. Decrypted by trial.
+	 */
+	UNKNOWN
+
+}
@@ -0,0 +1,82 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 Seamus Minogue
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.theblackchamber.crypto.constants;
+
+import net.theblackchamber.crypto.providers.codec.Base64CiphertextCodec;
+import net.theblackchamber.crypto.providers.codec.CiphertextCodec;
+import net.theblackchamber.crypto.providers.codec.HexCiphertextCodec;
+import net.theblackchamber.crypto.providers.codec.Z85CiphertextCodec;
+
+/**
+ * Text encodings supported for the string output of
+ * {@link net.theblackchamber.crypto.providers.EncryptionProvider2}. Sizes are
+ * for a 100 byte ciphertext.
+ * 
+ * @author sminogue
+ * 
+ */
+public enum SupportedCiphertextCodecs {
+
+	/**
+	 * Standard Base64 with padding, 136 characters. The default.
+	 */
+	BASE64(new Base64CiphertextCodec(false, true)),
+
+	/**
+	 * Standard Base64 without padding, 134 characters.
+	 */
+	BASE64_UNPADDED(new Base64CiphertextCodec(false, false)),
+
+	/**
+	 * URL and filename safe Base64 with padding, 136 characters.
+	 */
+	BASE64_URL(new Base64CiphertextCodec(true, true)),
+
+	/**
+	 * URL and filename safe Base64 without padding, 134 characters. Suited to
+	 * tokens in URLs and cookies.
+	 */
+	BASE64_URL_UNPADDED(new Base64CiphertextCodec(true, false)),
+
+	/**
+	 * Upper case hexadecimal as used by the legacy providers, 200 characters.
+	 */
+	HEX(new HexCiphertextCodec()),
+
+	/**
+	 * Z85 (Base85), 125 characters. The most compact.
+	 */
+	Z85(new Z85CiphertextCodec());
+
+	private final CiphertextCodec codec;
+
+	private SupportedCiphertextCodecs(CiphertextCodec codec) {
+		this.codec = codec;
+	}
+
+	public CiphertextCodec getCodec() {
+		return codec;
+	}
+
+}
@@ -0,0 +1,56 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 Seamus Minogue
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.theblackchamber.crypto.constants;
+
+/**
+ * Formats {@link net.theblackchamber.crypto.implementations.FileEncryptor2}
+ * can write encrypted files in.
+ * 
+ * @author sminogue
+ * 
+ */
+public enum SupportedFileFormats {
+
+	/**
+	 * The whole file encrypted as one ciphertext by the encryption provider.
+	 * Needs memory for the whole file and is limited to 2GB. The default, for
+	 * compatibility with earlier releases.
+	 */
+	SINGLE_SHOT,
+
+	/**
+	 * Tink AES-GCM-HKDF streaming encryption under a per file key wrapped by
+	 * the encryption provider. Memory use is a few segments whatever the file
+	 * size.
+	 */
+	STREAMING,
+
+	/**
+	 * AES-GCM under a per file key wrapped by the encryption provider, in
+	 * independently authenticated segments. Files are encrypted and decrypted
+	 * on several threads and support random access.
+	 */
+	SEGMENTED
+
+}
@@ -0,0 +1,159 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 Seamus Minogue
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package net.theblackchamber.crypto.constants;
+
+import com.google.crypto.tink.KeyTemplate;
+import com.google.crypto.tink.aead.AesGcmKeyManager;
+import com.google.crypto.tink.aead.ChaCha20Poly1305KeyManager;
+import com.google.crypto.tink.aead.XChaCha20Poly1305KeyManager;
+import com.google.crypto.tink.daead.AesSivKeyManager;
+
+import net.theblackchamber.crypto.providers.symmetric.AESEncryptionProvider2;
+import net.theblackchamber.crypto.providers.symmetric.AESSIVEncryptionProvider2;
+import net.theblackchamber.crypto.providers.symmetric.ChaCha20Poly1305EncryptionProvider2;
+import net.theblackchamber.crypto.util.KeyTemplateSelector;
+
+/**
+ * Key templates supported when generating a keyset with
+ * {@link net.theblackchamber.crypto.util.KeystoreUtils2}. The template decides
+ * which provider the factory returns for the keyset.
+ * 
+ * @author sminogue
+ * 
+ */
+public enum SupportedKeyTemplates {
+
+	/**
+	 * Randomized AES-256-GCM. Used by {@link AESEncryptionProvider2}.
+	 */
+	AES256_GCM("type.googleapis.com/google.crypto.tink.AesGcmKey", 12 + 16) {
+		@Override
+		public KeyTemplate getTemplate() {
+			return AesGcmKeyManager.aes256GcmTemplate();
+		}
+	},
+
+	/**
+	 * Deterministic AES-256-SIV. Used by {@link AESSIVEncryptionProvider2}.
+	 */
+	AES256_SIV("type.googleapis.com/google.crypto.tink.AesSivKey", 16) {
+		@Override
+		public KeyTemplate getTemplate() {
+			return AesSivKeyManager.aes256SivTemplate();
+		}
+	},
+
+	/**
+	 * Randomized ChaCha20-Poly1305. Used by
+	 * {@link ChaCha20Poly1305EncryptionProvider2}.
+	 */
+	CHACHA20_POLY1305("type.googleapis.com/google.crypto.tink.ChaCha20Poly1305Key", 12 + 16) {
+		@Override
+		public KeyTemplate getTemplate() {
+			return ChaCha20Poly1305KeyManager.chaCha20Poly1305Template();
+		}
+	},
+
+	/**
+	 * Randomized XChaCha20-Poly1305. Used by
+	 * {@link ChaCha20Poly1305EncryptionProvider2}.
+	 */
+	XCHACHA20_POLY1305("type.googleapis.com/google.crypto.tink.XChaCha20Poly1305Key", 24 + 16) {
+		@Override
+		public KeyTemplate getTemplate() {
+			return XChaCha20Poly1305KeyManager.xChaCha20Poly1305Template();
+		}
+	},
+
+	/**
+	 * Whichever of {@link #AES256_GCM} and {@link #XCHACHA20_POLY1305} is
+	 * faster on the current host, as measured once by
+	 * {@link KeyTemplateSelector}. The generated keyset records the choice as
+	 * its key type. Has no type url of its own.
+	 */
+	FASTEST_AEAD(null, 0) {
+		@Override
+		public KeyTemplate getTemplate() {
+			return KeyTemplateSelector.recommend().getTemplate();
+		}
+	};
+
+	private String typeUrl;
+
+	private int ciphertextOverhead;
+
+	private SupportedKeyTemplates(String typeUrl, int ciphertextOverhead) {
+		this.typeUrl = typeUrl;
+		this.ciphertextOverhead = ciphertextOverhead;
+	}
+
+	/**
+	 * Gets the Tink type url of keys generated from this template.
+	 * 
+	 * @return The type url, or null for {@link #FASTEST_AEAD}.
+	 */
+	public String getTypeUrl() {
+		return typeUrl;
+	}
+
+	/**
+	 * Gets the number of bytes a key of this template adds to a plaintext,
+	 * its IV or synthetic IV and its tag, not counting the output prefix.
+	 * 
+	 * @return The overhead, or 0 for {@link #FASTEST_AEAD}.
+	 */
+	public int getCiphertextOverhead() {
+		return ciphertextOverhead;
+	}
+
+	/**
+	 * Gets the Tink {@link KeyTemplate} used to generate keys.
+	 * 
+	 * @return
+	 */
+	public abstract KeyTemplate getTemplate();
+
+	/**
+	 * Get enum based on the type url of a key.
+	 * 
+	 * @param typeUrl
+	 * @return The matching template or null if the key type is not one of the
+	 *         supported templates.
+	 */
+	public static SupportedKeyTemplates getByTypeUrl(String typeUrl) {
+
+		for (SupportedKeyTemplates template : SupportedKeyTemplates.values()) {
+
+			if (template.getTypeUrl() != null && template.getTypeUrl().equals(typeUrl)) {
+				return template;
+			}
+
+		}
+
+		return null;
+
+	}
+
+}
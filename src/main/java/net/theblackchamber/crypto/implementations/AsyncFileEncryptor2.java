@@ -0,0 +1,162 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 Seamus Minogue
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package net.theblackchamber.crypto.implementations;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.GeneralSecurityException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+import net.theblackchamber.crypto.exceptions.MissingParameterException;
+import net.theblackchamber.crypto.util.AsyncExecutors;
+
+/**
+ * Asynchronous facade over a {@link FileEncryptor2}. Each operation runs on an
+ * {@link Executor} and returns a {@link CompletableFuture}. Futures complete
+ * exceptionally with the same exceptions the blocking call would have thrown.
+ * {@link #await(CompletableFuture)} rethrows them as such.
+ * 
+ * @author sminogue
+ * 
+ */
+public class AsyncFileEncryptor2 {
+
+	private final FileEncryptor2 fileEncryptor;
+	private final Executor executor;
+
+	/**
+	 * Constructor which will run operations on the default executor. See
+	 * {@link AsyncExecutors#defaultExecutor()}.
+	 * 
+	 * @param fileEncryptor
+	 * @throws MissingParameterException
+	 */
+	public AsyncFileEncryptor2(FileEncryptor2 fileEncryptor) throws MissingParameterException {
+		this(fileEncryptor, AsyncExecutors.defaultExecutor());
+	}
+
+	/**
+	 * Constructor which will run operations on the specified executor.
+	 * 
+	 * @param fileEncryptor
+	 * @param executor
+	 * @throws MissingParameterException
+	 */
+	public AsyncFileEncryptor2(FileEncryptor2 fileEncryptor, Executor executor) throws MissingParameterException {
+		if (fileEncryptor == null || executor == null) {
+			throw new MissingParameterException();
+		}
+		this.fileEncryptor = fileEncryptor;
+		this.executor = executor;
+	}
+
+	/**
+	 * @see FileEncryptor2#encryptFile(File)
+	 */
+	public CompletableFuture<Void> encryptFile(File file) {
+		return AsyncExecutors.supplyAsync(() -> {
+			fileEncryptor.encryptFile(file);
+			return null;
+		}, executor);
+	}
+
+	/**
+	 * @see FileEncryptor2#encryptFile(File, boolean)
+	 */
+	public CompletableFuture<Void> encryptFile(File file, boolean replace) {
+		return AsyncExecutors.supplyAsync(() -> {
+			fileEncryptor.encryptFile(file, replace);
+			return null;
+		}, executor);
+	}
+
+	/**
+	 * @see FileEncryptor2#encryptStream(InputStream, OutputStream)
+	 */
+	public CompletableFuture<Void> encryptStream(InputStream clearInputStream, OutputStream encryptedOutputStream) {
+		return AsyncExecutors.supplyAsync(() -> {
+			fileEncryptor.encryptStream(clearInputStream, encryptedOutputStream);
+			return null;
+		}, executor);
+	}
+
+	/**
+	 * @see FileEncryptor2#decryptFile(File)
+	 */
+	public CompletableFuture<Void> decryptFile(File file) {
+		return AsyncExecutors.supplyAsync(() -> {
+			fileEncryptor.decryptFile(file);
+			return null;
+		}, executor);
+	}
+
+	/**
+	 * @see FileEncryptor2#decryptFile(File, boolean)
+	 */
+	public CompletableFuture<Void> decryptFile(File file, boolean replace) {
+		return AsyncExecutors.supplyAsync(() -> {
+			fileEncryptor.decryptFile(file, replace);
+			return null;
+		}, executor);
+	}
+
+	/**
+	 * @see FileEncryptor2#decryptStream(InputStream, OutputStream)
+	 */
+	public CompletableFuture<Void> decryptStream(InputStream encryptedInputStream, OutputStream clearOutputStream) {
+		return AsyncExecutors.supplyAsync(() -> {
+			fileEncryptor.decryptStream(encryptedInputStream, clearOutputStream);
+			return null;
+		}, executor);
+	}
+
+	/**
+	 * Method which will wait for an operation started by this facade and
+	 * return its result. Failures are rethrown as the checked exception of the
+	 * blocking API. A cancelled or interrupted wait is reported as a
+	 * {@link GeneralSecurityException}.
+	 * 
+	 * @param future
+	 * @return
+	 * @throws MissingParameterException
+	 * @throws IOException
+	 * @throws GeneralSecurityException
+	 */
+	public static <T> T await(CompletableFuture<T> future)
+			throws MissingParameterException, IOException, GeneralSecurityException {
+		try {
+			return AsyncExecutors.await(future, MissingParameterException.class, IOException.class);
+		} catch (MissingParameterException | IOException | GeneralSecurityException | RuntimeException e) {
+			throw e;
+		} catch (Exception e) {
+			// Unreachable, AsyncExecutors only rethrows the listed types.
+			throw new GeneralSecurityException(e.getMessage(), e);
+		}
+	}
+
+}
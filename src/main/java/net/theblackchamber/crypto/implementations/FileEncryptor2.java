@@ -24,32 +24,98 @@
  */
 package net.theblackchamber.crypto.implementations;
 
+import java.io.BufferedInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.file.StandardOpenOption;
 import java.security.GeneralSecurityException;
+import java.util.Arrays;
+import java.util.concurrent.Executor;
 
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.input.CountingInputStream;
+import org.apache.commons.io.output.CountingOutputStream;
 import org.apache.commons.lang3.RandomStringUtils;
 
+import com.google.crypto.tink.proto.KeyStatusType;
+import com.google.crypto.tink.proto.KeysetInfo.KeyInfo;
+import com.google.crypto.tink.proto.OutputPrefixType;
+
+import net.theblackchamber.crypto.constants.SupportedFileFormats;
 import net.theblackchamber.crypto.exceptions.MissingParameterException;
+import net.theblackchamber.crypto.jfr.CryptoEvents;
+import net.theblackchamber.crypto.metrics.CryptoMetrics;
+import net.theblackchamber.crypto.metrics.CryptoOperation;
 import net.theblackchamber.crypto.providers.EncryptionProvider2;
+import net.theblackchamber.crypto.util.AsyncExecutors;
 
 /**
- * Class which will provide functionality to encrypt and decrypt files.
+ * Class which will provide functionality to encrypt and decrypt files. <br>
+ * By default a file is encrypted as a single ciphertext, which needs memory
+ * for the whole file. For large files set the
+ * {@link SupportedFileFormats#STREAMING} format, which encrypts segment by
+ * segment under a per file key: <code>
+ * FileEncryptor2 fileEncryptor = new FileEncryptor2(encryptionProvider);
+ * fileEncryptor.setFileFormat(SupportedFileFormats.STREAMING);
+ * fileEncryptor.encryptFile(file);
+ * </code> The {@link SupportedFileFormats#SEGMENTED} format also encrypts and
+ * decrypts files on several threads, see {@link #setParallelism(int)}, and
+ * can be read at random through {@link #openChannel(File)}. <br>
+ * Decryption detects the format of the file, so files written before the
+ * format was changed still decrypt.
  * 
  * @author sminogue
  * 
  */
 public class FileEncryptor2 {
 
+	/**
+	 * Default ciphertext segment size of the segmented formats, 1MB.
+	 */
+	public static final int DEFAULT_SEGMENT_SIZE = 1 << 20;
+
+	/**
+	 * Default size of the windows files are mapped in, 64MB.
+	 */
+	public static final int DEFAULT_MAP_WINDOW_SIZE = 64 << 20;
+
+	/**
+	 * Most bytes read from the start of encrypted data to recognise its
+	 * format: the magic and the largest header.
+	 */
+	private static final int MAX_HEADER_SIZE = SegmentedFileFormat.FIXED_HEADER_SIZE + 0xFFFF;
+
+	/**
+	 * Largest data decrypted as {@link SupportedFileFormats#SINGLE_SHOT} when
+	 * it starts with a magic but its header does not unwrap, 16MB. Only
+	 * ciphertext of a RAW key can start with a magic, so the retry is also
+	 * limited to keysets with an enabled RAW key.
+	 */
+	private static final int MAX_FALLBACK_SIZE = 16 << 20;
+
 	private EncryptionProvider2 encryptionProvider;
 
+	private volatile SupportedFileFormats fileFormat = SupportedFileFormats.SINGLE_SHOT;
+
+	private volatile int segmentSize = DEFAULT_SEGMENT_SIZE;
+
+	private volatile int parallelism = Runtime.getRuntime().availableProcessors();
+
+	private volatile Executor executor = AsyncExecutors.defaultExecutor();
+
+	private volatile boolean memoryMapped;
+
+	private volatile int mapWindowSize = DEFAULT_MAP_WINDOW_SIZE;
+
 	public FileEncryptor2(EncryptionProvider2 provider) throws MissingParameterException {
 
 		if (provider == null) {
@@ -59,6 +125,113 @@ public class FileEncryptor2 {
 		this.encryptionProvider = provider;
 	}
 
+	public SupportedFileFormats getFileFormat() {
+		return fileFormat;
+	}
+
+	/**
+	 * Method which will set the format files and streams are encrypted in.
+	 * Defaults to {@link SupportedFileFormats#SINGLE_SHOT}.
+	 * 
+	 * @param fileFormat
+	 * @throws MissingParameterException
+	 */
+	public void setFileFormat(SupportedFileFormats fileFormat) throws MissingParameterException {
+		if (fileFormat == null) {
+			throw new MissingParameterException("Missing parameter: fileFormat");
+		}
+		this.fileFormat = fileFormat;
+	}
+
+	public int getSegmentSize() {
+		return segmentSize;
+	}
+
+	/**
+	 * Method which will set the ciphertext segment size used by the segmented
+	 * formats. Memory use is a small multiple of it. Defaults to
+	 * {@link #DEFAULT_SEGMENT_SIZE}.
+	 * 
+	 * @param segmentSize
+	 *            At least 1024 bytes.
+	 */
+	public void setSegmentSize(int segmentSize) {
+		this.segmentSize = StreamingFileFormat.checkSegmentSize(segmentSize);
+	}
+
+	public int getParallelism() {
+		return parallelism;
+	}
+
+	/**
+	 * Method which will set the number of threads, the calling thread
+	 * included, which encrypt and decrypt a {@link SupportedFileFormats#SEGMENTED}
+	 * file. Defaults to the number of processors. Streams are always processed
+	 * on the calling thread.
+	 * 
+	 * @param parallelism
+	 *            At least 1.
+	 */
+	public void setParallelism(int parallelism) {
+		if (parallelism < 1) {
+			throw new IllegalArgumentException("Parallelism must be at least 1: " + parallelism);
+		}
+		this.parallelism = parallelism;
+	}
+
+	/**
+	 * Method which will set the executor the extra threads of
+	 * {@link #setParallelism(int)} run on. Defaults to
+	 * {@link AsyncExecutors#defaultExecutor()}.
+	 * 
+	 * @param executor
+	 * @throws MissingParameterException
+	 */
+	public void setExecutor(Executor executor) throws MissingParameterException {
+		if (executor == null) {
+			throw new MissingParameterException("Missing parameter: executor");
+		}
+		this.executor = executor;
+	}
+
+	public boolean isMemoryMapped() {
+		return memoryMapped;
+	}
+
+	/**
+	 * Method which will set whether {@link SupportedFileFormats#SEGMENTED}
+	 * files are encrypted and decrypted through memory mapped windows of the
+	 * input and the pre-sized output, rather than positional reads and
+	 * writes, saving the copies between the kernel and the heap. Best for
+	 * large files on local disk. Files must not be truncated while they are
+	 * being processed. Defaults to false.
+	 * 
+	 * @param memoryMapped
+	 */
+	public void setMemoryMapped(boolean memoryMapped) {
+		this.memoryMapped = memoryMapped;
+	}
+
+	public int getMapWindowSize() {
+		return mapWindowSize;
+	}
+
+	/**
+	 * Method which will set the size of the windows files are mapped in when
+	 * memory mapped. Windows are rounded down to whole segments, at least
+	 * one, and each thread maps one window of the input and one of the output
+	 * at a time. Defaults to {@link #DEFAULT_MAP_WINDOW_SIZE}.
+	 * 
+	 * @param mapWindowSize
+	 *            At least 1 byte.
+	 */
+	public void setMapWindowSize(int mapWindowSize) {
+		if (mapWindowSize < 1) {
+			throw new IllegalArgumentException("Map window size must be at least 1: " + mapWindowSize);
+		}
+		this.mapWindowSize = mapWindowSize;
+	}
+
 	/**
 	 * Encrypt a file. This will replace the specified file with an encrypted
 	 * version.
@@ -90,23 +263,208 @@ public class FileEncryptor2 {
 			throw new MissingParameterException("File not specified or file does not exist.");
 		}
 		
-		FileInputStream fis = new FileInputStream(file);
-		
-		ByteArrayOutputStream baos = new ByteArrayOutputStream(1000);
-		
-		encryptStream(fis, baos);
-		
 		File tmpEncrypted = File.createTempFile("commonsencryption", RandomStringUtils.randomAlphanumeric(10));
 		
 		if(!tmpEncrypted.exists()){
 			throw new IOException("Failed to encrypt file.");
 		}
 		
-		FileOutputStream fos = new FileOutputStream(tmpEncrypted);
+		// Encrypt straight into the temporary file, closed on failure too so it can be deleted.
+		try {
+			if (fileFormat == SupportedFileFormats.SEGMENTED) {
+				processFile(file, tmpEncrypted, null);
+			} else {
+				try (FileInputStream fis = new FileInputStream(file);
+						FileOutputStream fos = new FileOutputStream(tmpEncrypted)) {
+					encryptStream(fis, fos, file);
+				}
+			}
+		} catch (IOException | MissingParameterException | GeneralSecurityException | RuntimeException e) {
+			tmpEncrypted.delete();
+			throw e;
+		}
 		
-		IOUtils.write(baos.toByteArray(),fos);
+		moveResult(file, tmpEncrypted, replace, ".encrypted", "encrypt");
+		
+	}
+
+	/**
+	 * Decrypt a file. This will replace the specified file with a decrypted
+	 * version.
+	 * 
+	 * @param file
+	 * @throws MissingParameterException
+	 * @throws IOException
+	 * @throws GeneralSecurityException
+	 */
+	public void decryptFile(File file) throws MissingParameterException, IOException, GeneralSecurityException {
+		decryptFile(file, true);
+	}
+
+	/**
+	 * Decrypt a file written by {@link #encryptFile(File, boolean)} in any
+	 * format. The file is decrypted to a temporary file first, so a file which
+	 * fails authentication leaves nothing behind.
+	 * 
+	 * @param file
+	 *            The file to decrypt
+	 * @param replace
+	 *            True - Replace the specified file with the decrypted version.
+	 *            False - Keep the encrypted file and write the decrypted
+	 *            version next to it with ".decrypted" appended.
+	 * @throws MissingParameterException
+	 * @throws IOException
+	 * @throws GeneralSecurityException
+	 */
+	public void decryptFile(File file, boolean replace) throws MissingParameterException, IOException, GeneralSecurityException {
+
+		if(file == null || !file.exists()){
+			throw new MissingParameterException("File not specified or file does not exist.");
+		}
+		
+		File tmpDecrypted = File.createTempFile("commonsencryption", RandomStringUtils.randomAlphanumeric(10));
+		
+		if(!tmpDecrypted.exists()){
+			throw new IOException("Failed to decrypt file.");
+		}
+		
+		try {
+			SupportedFileFormats format;
+			SegmentedFileFormat segmented = null;
+			try (FileInputStream fis = new FileInputStream(file)) {
+				BufferedInputStream in = new BufferedInputStream(fis);
+				format = readFormat(in);
+				if (format == SupportedFileFormats.SEGMENTED) {
+					try {
+						segmented = SegmentedFileFormat.read(encryptionProvider, in);
+					} catch (EOFException | MissingParameterException | GeneralSecurityException e) {
+						if (!isFallbackAllowed(file.length())) {
+							throw e;
+						}
+						// A single shot file which only looks segmented.
+						format = SupportedFileFormats.SINGLE_SHOT;
+					}
+				}
+			}
+			if (segmented != null) {
+				processFile(file, tmpDecrypted, segmented);
+			} else {
+				try (FileInputStream fis = new FileInputStream(file);
+						FileOutputStream fos = new FileOutputStream(tmpDecrypted)) {
+					decryptStream(fis, fos, file, format != SupportedFileFormats.SINGLE_SHOT);
+				}
+			}
+		} catch (IOException | MissingParameterException | GeneralSecurityException | RuntimeException e) {
+			tmpDecrypted.delete();
+			throw e;
+		}
+		
+		moveResult(file, tmpDecrypted, replace, ".decrypted", "decrypt");
+		
+	}
+
+	/**
+	 * Method which will open a {@link SupportedFileFormats#SEGMENTED} file for
+	 * reading at random. Only the segments overlapping the ranges read are
+	 * decrypted. See {@link SegmentedFileChannel}.
+	 * 
+	 * @param file
+	 * @return
+	 * @throws MissingParameterException
+	 * @throws IOException
+	 * @throws GeneralSecurityException
+	 *             If the file is not in the segmented format.
+	 */
+	public SeekableByteChannel openChannel(File file) throws MissingParameterException, IOException, GeneralSecurityException {
+
+		if(file == null || !file.exists()){
+			throw new MissingParameterException("File not specified or file does not exist.");
+		}
 		
-		fos.close();
+		return new SegmentedFileChannel(encryptionProvider, file.toPath());
+	}
+
+	/**
+	 * Method which will open a {@link SupportedFileFormats#SEGMENTED} file as
+	 * an input stream of its plaintext. Skipping does not decrypt the skipped
+	 * data.
+	 * 
+	 * @param file
+	 * @return
+	 * @throws MissingParameterException
+	 * @throws IOException
+	 * @throws GeneralSecurityException
+	 *             If the file is not in the segmented format.
+	 */
+	public InputStream openInputStream(File file) throws MissingParameterException, IOException, GeneralSecurityException {
+		return ((SegmentedFileChannel) openChannel(file)).newInputStream();
+	}
+
+	/**
+	 * Method which will encrypt or decrypt a
+	 * {@link SupportedFileFormats#SEGMENTED} file on several threads, recording
+	 * the operation to metrics and JFR.
+	 * 
+	 * @param file
+	 *            File to read.
+	 * @param target
+	 *            File to write.
+	 * @param sourceFormat
+	 *            Null to encrypt, otherwise the header read from the file to
+	 *            decrypt.
+	 * @throws IOException
+	 * @throws MissingParameterException
+	 * @throws GeneralSecurityException
+	 */
+	private void processFile(File file, File target, SegmentedFileFormat sourceFormat) throws IOException, MissingParameterException, GeneralSecurityException {
+
+		CryptoOperation operation = sourceFormat == null ? CryptoOperation.ENCRYPT_FILE : CryptoOperation.DECRYPT_FILE;
+		CryptoMetrics metrics = encryptionProvider.getMetrics();
+		Object event = CryptoEvents.beginFileOperation();
+		long start = metrics.isEnabled() ? System.nanoTime() : 0;
+		long bytesIn = 0;
+
+		try (FileChannel in = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+				FileChannel out = FileChannel.open(target.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE,
+						StandardOpenOption.TRUNCATE_EXISTING)) {
+
+			bytesIn = in.size();
+			int window = memoryMapped ? mapWindowSize : 0;
+			long bytesOut;
+			if (sourceFormat == null) {
+				SegmentedFileFormat format = SegmentedFileFormat.create(encryptionProvider, segmentSize);
+				bytesOut = SegmentedFileEngine.encrypt(format, in, out, executor, parallelism, window);
+			} else {
+				bytesOut = SegmentedFileEngine.decrypt(sourceFormat, in, out, executor, parallelism, window);
+			}
+
+			if (metrics.isEnabled()) {
+				metrics.record(operation, System.nanoTime() - start, bytesIn, bytesOut);
+			}
+			CryptoEvents.endFileOperation(event, operation.name(), file.getPath(), bytesIn, bytesOut, null);
+		} catch (IOException | MissingParameterException | GeneralSecurityException | RuntimeException e) {
+			if (metrics.isEnabled()) {
+				metrics.recordFailure(operation, e);
+			}
+			CryptoEvents.endFileOperation(event, operation.name(), file.getPath(), bytesIn, 0, e);
+			throw e;
+		}
+	}
+
+	/**
+	 * Method which will move the result of an operation into place, either
+	 * over the original file, which is kept with ".bkp" appended until the
+	 * move has succeeded, or next to it with the suffix appended.
+	 * 
+	 * @param file
+	 * @param result
+	 * @param replace
+	 * @param suffix
+	 * @param operation
+	 *            Operation name for error messages.
+	 * @throws IOException
+	 */
+	private void moveResult(File file, File result, boolean replace, String suffix, String operation) throws IOException {
 		
 		if(replace){
 			File bkpFile = FileUtils.getFile(file.getAbsolutePath() + ".bkp");
@@ -114,17 +472,17 @@ public class FileEncryptor2 {
 			
 			try{
 			
-				FileUtils.moveFile(tmpEncrypted, FileUtils.getFile(file.getAbsolutePath()));
+				FileUtils.moveFile(result, FileUtils.getFile(file.getAbsolutePath()));
 			
 			}catch(IOException e){
-				throw new IOException("Failed to encrypt file. Existing file saved with \".bkp\": " + e.getMessage(),e);
+				throw new IOException("Failed to " + operation + " file. Existing file saved with \".bkp\": " + e.getMessage(),e);
 			}
 			
 			bkpFile.delete();
 			
 		}else{
 			
-			FileUtils.moveFile(tmpEncrypted, FileUtils.getFile(file.getAbsolutePath() + ".encrypted"));
+			FileUtils.moveFile(result, FileUtils.getFile(file.getAbsolutePath() + suffix));
 			
 		}
 		
@@ -143,17 +501,226 @@ public class FileEncryptor2 {
 	 * @throws GeneralSecurityException 
 	 */
 	public void encryptStream(InputStream clearInputStream, OutputStream encryptedOutputStream) throws IOException, MissingParameterException, GeneralSecurityException {
+		encryptStream(clearInputStream, encryptedOutputStream, null);
+	}
 
-		byte[] clearBytes = IOUtils.toByteArray(clearInputStream);
+	/**
+	 * Method which will encrypt a stream, recording the operation to metrics
+	 * and JFR.
+	 * 
+	 * @param clearInputStream
+	 * @param encryptedOutputStream
+	 * @param file
+	 *            File being encrypted, null for streams.
+	 * @throws IOException
+	 * @throws MissingParameterException
+	 * @throws GeneralSecurityException
+	 */
+	private void encryptStream(InputStream clearInputStream, OutputStream encryptedOutputStream, File file) throws IOException, MissingParameterException, GeneralSecurityException {
 
-		byte[] cipherBytes = encryptionProvider.encrypt(clearBytes);
+		CryptoMetrics metrics = encryptionProvider.getMetrics();
+		Object event = CryptoEvents.beginFileOperation();
+		long start = metrics.isEnabled() ? System.nanoTime() : 0;
+		String path = file == null ? null : file.getPath();
+		CountingInputStream in = new CountingInputStream(clearInputStream);
+		CountingOutputStream out = new CountingOutputStream(encryptedOutputStream);
 
-		encryptedOutputStream.write(cipherBytes);
+		try {
+			if (fileFormat == SupportedFileFormats.STREAMING) {
+				StreamingFileFormat.encrypt(encryptionProvider, segmentSize, in, out);
+			} else if (fileFormat == SupportedFileFormats.SEGMENTED) {
+				SegmentedFileFormat.create(encryptionProvider, segmentSize).encrypt(in, out);
+			} else {
+				byte[] clearBytes = IOUtils.toByteArray(in);
 
-		encryptedOutputStream.flush();
+				byte[] cipherBytes = encryptionProvider.encrypt(clearBytes);
+
+				out.write(cipherBytes);
+			}
+
+			out.flush();
+			
+			out.close();
+
+			if (metrics.isEnabled()) {
+				metrics.record(CryptoOperation.ENCRYPT_FILE, System.nanoTime() - start, in.getByteCount(), out.getByteCount());
+			}
+			CryptoEvents.endFileOperation(event, CryptoOperation.ENCRYPT_FILE.name(), path, in.getByteCount(), out.getByteCount(), null);
+		} catch (IOException | MissingParameterException | GeneralSecurityException | RuntimeException e) {
+			if (metrics.isEnabled()) {
+				metrics.recordFailure(CryptoOperation.ENCRYPT_FILE, e);
+			}
+			CryptoEvents.endFileOperation(event, CryptoOperation.ENCRYPT_FILE.name(), path, in.getByteCount(), 0, e);
+			throw e;
+		}
 		
-		encryptedOutputStream.close();
+	}
+
+	/**
+	 * Decrypt the contents of an input stream and write the decrypted data to
+	 * the output stream. The format is detected from the data:
+	 * {@link SupportedFileFormats#STREAMING} and
+	 * {@link SupportedFileFormats#SEGMENTED} data is decrypted segment by
+	 * segment in constant memory on the calling thread, anything else is treated as
+	 * {@link SupportedFileFormats#SINGLE_SHOT} data and decrypted in one go.
+	 * So is data of up to 16MB which starts with the magic of a format but
+	 * whose header does not unwrap, if the keyset has an enabled RAW key whose
+	 * single shot data can start with the magic by chance. Otherwise the
+	 * unwrap failure is thrown.
+	 * Segmented data which fails authentication may already have been partly
+	 * written to the output stream, which must then be discarded.
+	 * 
+	 * @param encryptedInputStream
+	 *            Input stream containing the data to be decrypted.
+	 * @param clearOutputStream
+	 *            Output stream which the decrypted data will be written to.
+	 * @throws IOException
+	 * @throws MissingParameterException
+	 * @throws GeneralSecurityException
+	 */
+	public void decryptStream(InputStream encryptedInputStream, OutputStream clearOutputStream) throws IOException, MissingParameterException, GeneralSecurityException {
+		decryptStream(encryptedInputStream, clearOutputStream, null, true);
+	}
+
+	/**
+	 * Method which will decrypt a stream, recording the operation to metrics
+	 * and JFR.
+	 * 
+	 * @param encryptedInputStream
+	 * @param clearOutputStream
+	 * @param file
+	 *            File being decrypted, null for streams.
+	 * @param detect
+	 *            False if the data is known to be
+	 *            {@link SupportedFileFormats#SINGLE_SHOT}.
+	 * @throws IOException
+	 * @throws MissingParameterException
+	 * @throws GeneralSecurityException
+	 */
+	private void decryptStream(InputStream encryptedInputStream, OutputStream clearOutputStream, File file, boolean detect) throws IOException, MissingParameterException, GeneralSecurityException {
+
+		CryptoMetrics metrics = encryptionProvider.getMetrics();
+		Object event = CryptoEvents.beginFileOperation();
+		long start = metrics.isEnabled() ? System.nanoTime() : 0;
+		String path = file == null ? null : file.getPath();
+		CountingInputStream counting = new CountingInputStream(encryptedInputStream);
+		BufferedInputStream in = new BufferedInputStream(counting);
+		CountingOutputStream out = new CountingOutputStream(clearOutputStream);
+
+		try {
+			SupportedFileFormats format = detect ? readFormat(in) : SupportedFileFormats.SINGLE_SHOT;
+			StreamingFileFormat streaming = null;
+			SegmentedFileFormat segmented = null;
+			byte[] cipherBytes = null;
+			try {
+				if (format == SupportedFileFormats.STREAMING) {
+					streaming = StreamingFileFormat.read(encryptionProvider, in);
+				} else if (format == SupportedFileFormats.SEGMENTED) {
+					segmented = SegmentedFileFormat.read(encryptionProvider, in);
+				}
+			} catch (EOFException | MissingParameterException | GeneralSecurityException e) {
+				cipherBytes = readFallback(in);
+				if (cipherBytes == null) {
+					throw e;
+				}
+			}
+
+			if (streaming != null) {
+				streaming.decrypt(in, out);
+			} else if (segmented != null) {
+				segmented.decrypt(in, out);
+			} else {
+				if (cipherBytes == null) {
+					cipherBytes = IOUtils.toByteArray(in);
+				}
+
+				byte[] clearBytes = encryptionProvider.decrypt(cipherBytes);
+
+				out.write(clearBytes);
+			}
+
+			out.flush();
+			
+			out.close();
+
+			if (metrics.isEnabled()) {
+				metrics.record(CryptoOperation.DECRYPT_FILE, System.nanoTime() - start, counting.getByteCount(), out.getByteCount());
+			}
+			CryptoEvents.endFileOperation(event, CryptoOperation.DECRYPT_FILE.name(), path, counting.getByteCount(), out.getByteCount(), null);
+		} catch (IOException | MissingParameterException | GeneralSecurityException | RuntimeException e) {
+			if (metrics.isEnabled()) {
+				metrics.recordFailure(CryptoOperation.DECRYPT_FILE, e);
+			}
+			CryptoEvents.endFileOperation(event, CryptoOperation.DECRYPT_FILE.name(), path, counting.getByteCount(), 0, e);
+			throw e;
+		}
 		
 	}
 
+	/**
+	 * Method which will detect the format of encrypted data from its magic.
+	 * The start of the stream is marked, so the stream can be rewound by
+	 * {@link #readFallback(BufferedInputStream)} once the header has been
+	 * read. The magic is consumed if found, otherwise the stream is rewound.
+	 * 
+	 * @param in
+	 * @return The format, {@link SupportedFileFormats#SINGLE_SHOT} if there is
+	 *         no magic.
+	 * @throws IOException
+	 */
+	private static SupportedFileFormats readFormat(BufferedInputStream in) throws IOException {
+		in.mark(MAX_HEADER_SIZE);
+		byte[] magic = new byte[StreamingFileFormat.MAGIC.length];
+		int read = IOUtils.read(in, magic);
+		if (read == magic.length && Arrays.equals(magic, StreamingFileFormat.MAGIC)) {
+			return SupportedFileFormats.STREAMING;
+		}
+		if (read == magic.length && Arrays.equals(magic, SegmentedFileFormat.MAGIC)) {
+			return SupportedFileFormats.SEGMENTED;
+		}
+		in.reset();
+		return SupportedFileFormats.SINGLE_SHOT;
+	}
+
+	/**
+	 * Method which will rewind data whose header did not unwrap and read it
+	 * as {@link SupportedFileFormats#SINGLE_SHOT} ciphertext, if allowed by
+	 * {@link #isFallbackAllowed(long)}.
+	 * 
+	 * @param in
+	 *            Stream marked by {@link #readFormat(BufferedInputStream)}.
+	 * @return The ciphertext, or null if the header failure must be thrown.
+	 * @throws IOException
+	 */
+	private byte[] readFallback(BufferedInputStream in) throws IOException {
+		if (!isFallbackAllowed(0)) {
+			return null;
+		}
+		in.reset();
+		ByteArrayOutputStream cipherBytes = new ByteArrayOutputStream();
+		long read = IOUtils.copyLarge(in, cipherBytes, 0, MAX_FALLBACK_SIZE + 1L);
+		return read > MAX_FALLBACK_SIZE ? null : cipherBytes.toByteArray();
+	}
+
+	/**
+	 * Method which will check whether data which starts with a magic but
+	 * whose header does not unwrap may be single shot ciphertext of a RAW key
+	 * of the keyset.
+	 * 
+	 * @param length
+	 *            Length of the data, 0 if unknown.
+	 * @return
+	 */
+	private boolean isFallbackAllowed(long length) {
+		if (length > MAX_FALLBACK_SIZE) {
+			return false;
+		}
+		for (KeyInfo keyInfo : encryptionProvider.getKey().getKeysetInfo().getKeyInfoList()) {
+			if (keyInfo.getStatus() == KeyStatusType.ENABLED && keyInfo.getOutputPrefixType() == OutputPrefixType.RAW) {
+				return true;
+			}
+		}
+		return false;
+	}
+
 }
@@ -47,6 +47,9 @@ import com.google.crypto.tink.KeysetHandle;
 import net.theblackchamber.crypto.constants.Constants;
 import net.theblackchamber.crypto.exceptions.MissingParameterException;
 import net.theblackchamber.crypto.exceptions.RuntimeCryptoException;
+import net.theblackchamber.crypto.jfr.CryptoEvents;
+import net.theblackchamber.crypto.metrics.CryptoMetrics;
+import net.theblackchamber.crypto.metrics.CryptoOperation;
 import net.theblackchamber.crypto.model.KeyConfig2;
 import net.theblackchamber.crypto.providers.EncryptionProvider2;
 import net.theblackchamber.crypto.providers.EncryptionProviderFactory2;
@@ -89,7 +92,10 @@ public class SecureProperties2 extends Properties {
 
 	/**
 	 * Gets the encryption provider. This is the Provider which will be used to
-	 * encrypt and decrypt properties.
+	 * encrypt and decrypt properties. It is shared with every other user of
+	 * the keyset, see
+	 * {@link EncryptionProviderFactory2#getSharedProvider(KeysetHandle)}, so
+	 * its settings are read only.
 	 * 
 	 * @return
 	 */
@@ -429,7 +435,7 @@ public class SecureProperties2 extends Properties {
 					throw new RuntimeCryptoException(
 							"No encryption provider configured");
 
-				return encryptionProvider.decrypt(property);
+				return recordProperty(CryptoOperation.DECRYPT_PROPERTY, key, property);
 
 			} else {
 				return property;
@@ -461,7 +467,7 @@ public class SecureProperties2 extends Properties {
 				if (encryptionProvider == null)
 					throw new RuntimeCryptoException(
 							"No encryption provider configured");
-				return encryptionProvider.encrypt(property);
+				return recordProperty(CryptoOperation.ENCRYPT_PROPERTY, key, property);
 			} else {
 				return property;
 			}
@@ -472,6 +478,47 @@ public class SecureProperties2 extends Properties {
 		}
 	}
 
+	/**
+	 * Method which will encrypt or decrypt a property value, recording the
+	 * operation to the metrics of the encryption provider and decryptions to
+	 * JFR.
+	 * 
+	 * @param operation
+	 *            {@link CryptoOperation#ENCRYPT_PROPERTY} or
+	 *            {@link CryptoOperation#DECRYPT_PROPERTY}.
+	 * @param key
+	 *            Property key.
+	 * @param property
+	 * @return
+	 * @throws MissingParameterException
+	 * @throws GeneralSecurityException
+	 */
+	private String recordProperty(CryptoOperation operation, String key, String property)
+			throws MissingParameterException, GeneralSecurityException {
+		boolean encrypt = operation == CryptoOperation.ENCRYPT_PROPERTY;
+		CryptoMetrics metrics = encryptionProvider.getMetrics();
+		Object event = encrypt ? null : CryptoEvents.beginPropertyDecrypt();
+		if (!metrics.isEnabled() && event == null) {
+			return encrypt ? encryptionProvider.encrypt(property) : encryptionProvider.decrypt(property);
+		}
+		long start = System.nanoTime();
+		long length = property == null ? 0 : property.length();
+		try {
+			String result = encrypt ? encryptionProvider.encrypt(property) : encryptionProvider.decrypt(property);
+			if (metrics.isEnabled()) {
+				metrics.record(operation, System.nanoTime() - start, length, result.length());
+			}
+			CryptoEvents.endPropertyDecrypt(event, key, length, null);
+			return result;
+		} catch (MissingParameterException | GeneralSecurityException | RuntimeException e) {
+			if (metrics.isEnabled()) {
+				metrics.recordFailure(operation, e);
+			}
+			CryptoEvents.endPropertyDecrypt(event, key, length, e);
+			throw e;
+		}
+	}
+
 	/**
 	 * Method which will create a new Encryption provider using the already
 	 * specified key.
@@ -479,8 +526,8 @@ public class SecureProperties2 extends Properties {
 	private void initializeEncryptionProvider() {
 		if (key != null) {
 			try {
-				encryptionProvider = EncryptionProviderFactory2.getProvider(key);
-			} catch (GeneralSecurityException e) {
+				encryptionProvider = EncryptionProviderFactory2.getSharedProvider(key);
+			} catch (MissingParameterException | GeneralSecurityException e) {
 				throw new RuntimeCryptoException(e.getMessage(), e);
 			} 
 		}
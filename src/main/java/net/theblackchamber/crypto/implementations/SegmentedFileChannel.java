@@ -0,0 +1,341 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 Seamus Minogue
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.theblackchamber.crypto.implementations;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.NonWritableChannelException;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.GeneralSecurityException;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.crypto.Cipher;
+
+import net.theblackchamber.crypto.constants.SupportedFileFormats;
+import net.theblackchamber.crypto.exceptions.MissingParameterException;
+import net.theblackchamber.crypto.providers.EncryptionProvider2;
+
+/**
+ * Read only channel over the plaintext of a
+ * {@link SupportedFileFormats#SEGMENTED} file. Reads decrypt only the
+ * segments overlapping the requested range, and the most recently used
+ * decrypted segments are kept, so a small read from a large file costs one
+ * segment decrypt and sequential reads decrypt each segment once. <br>
+ * Usage: <code>
+ * try (SeekableByteChannel channel = fileEncryptor.openChannel(file)) {
+ *   channel.position(offset);
+ *   channel.read(buffer);
+ * }
+ * </code> <br>
+ * A segment which fails authentication is reported as an IOException caused
+ * by the {@link GeneralSecurityException}, and no data of it is returned.
+ * 
+ * @author sminogue
+ * 
+ */
+public class SegmentedFileChannel implements SeekableByteChannel {
+
+	/**
+	 * Default number of decrypted segments kept.
+	 */
+	public static final int DEFAULT_CACHED_SEGMENTS = 4;
+
+	private final FileChannel channel;
+	private final SegmentedFileFormat format;
+	private final Cipher cipher;
+	private final long size;
+	private final long segmentCount;
+	private final int plainSegmentSize;
+	private final Map<Long, byte[]> segments;
+
+	private long position;
+	private long decryptedSegments;
+
+	/**
+	 * Constructor which will open a file keeping
+	 * {@link #DEFAULT_CACHED_SEGMENTS} decrypted segments.
+	 * 
+	 * @param provider
+	 *            Provider the file key was wrapped with.
+	 * @param path
+	 * @throws MissingParameterException
+	 * @throws IOException
+	 * @throws GeneralSecurityException
+	 *             If the file is not in the segmented format or its key can not
+	 *             be unwrapped.
+	 */
+	public SegmentedFileChannel(EncryptionProvider2 provider, Path path)
+			throws MissingParameterException, IOException, GeneralSecurityException {
+		this(provider, path, DEFAULT_CACHED_SEGMENTS);
+	}
+
+	/**
+	 * @param provider
+	 *            Provider the file key was wrapped with.
+	 * @param path
+	 * @param cachedSegments
+	 *            Number of decrypted segments kept, at least 1.
+	 * @throws MissingParameterException
+	 * @throws IOException
+	 * @throws GeneralSecurityException
+	 *             If the file is not in the segmented format or its key can not
+	 *             be unwrapped.
+	 */
+	public SegmentedFileChannel(EncryptionProvider2 provider, Path path, int cachedSegments)
+			throws MissingParameterException, IOException, GeneralSecurityException {
+
+		if (provider == null || path == null) {
+			throw new MissingParameterException();
+		}
+		if (cachedSegments < 1) {
+			throw new IllegalArgumentException("Cached segments must be at least 1: " + cachedSegments);
+		}
+
+		FileChannel opened = FileChannel.open(path, StandardOpenOption.READ);
+		try {
+			ByteBuffer magic = ByteBuffer.allocate(SegmentedFileFormat.MAGIC.length);
+			while (magic.hasRemaining() && opened.read(magic) >= 0) {
+			}
+			if (!Arrays.equals(magic.array(), SegmentedFileFormat.MAGIC)) {
+				throw new GeneralSecurityException("File is not in the " + SupportedFileFormats.SEGMENTED + " format");
+			}
+			this.format = SegmentedFileFormat.read(provider, Channels.newInputStream(opened));
+			this.size = format.plaintextSize(opened.size());
+			this.segmentCount = format.segmentCount(size);
+			this.cipher = SegmentedFileFormat.newCipher();
+		} catch (IOException | GeneralSecurityException | RuntimeException e) {
+			opened.close();
+			throw e;
+		}
+
+		this.channel = opened;
+		this.plainSegmentSize = format.getPlainSegmentSize();
+		this.segments = new LinkedHashMap<Long, byte[]>(cachedSegments * 2, 0.75f, true) {
+
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Long, byte[]> eldest) {
+				if (size() > cachedSegments) {
+					Arrays.fill(eldest.getValue(), (byte) 0);
+					return true;
+				}
+				return false;
+			}
+
+		};
+	}
+
+	@Override
+	public synchronized int read(ByteBuffer dst) throws IOException {
+		ensureOpen();
+		if (position >= size) {
+			return -1;
+		}
+
+		int read = 0;
+		while (dst.hasRemaining() && position < size) {
+			byte[] plain = segment(position / plainSegmentSize);
+			int offset = (int) (position % plainSegmentSize);
+			int length = Math.min(dst.remaining(), plain.length - offset);
+			dst.put(plain, offset, length);
+			position += length;
+			read += length;
+		}
+		return read;
+	}
+
+	@Override
+	public int write(ByteBuffer src) throws IOException {
+		throw new NonWritableChannelException();
+	}
+
+	@Override
+	public synchronized long position() throws IOException {
+		ensureOpen();
+		return position;
+	}
+
+	/**
+	 * Method which will set the plaintext position of the next read. Nothing
+	 * is decrypted until data is read. A position past the end makes reads
+	 * return end of stream.
+	 */
+	@Override
+	public synchronized SeekableByteChannel position(long newPosition) throws IOException {
+		ensureOpen();
+		if (newPosition < 0) {
+			throw new IllegalArgumentException("Negative position: " + newPosition);
+		}
+		position = newPosition;
+		return this;
+	}
+
+	/**
+	 * Method which will return the size of the plaintext.
+	 */
+	@Override
+	public long size() throws IOException {
+		ensureOpen();
+		return size;
+	}
+
+	@Override
+	public SeekableByteChannel truncate(long size) throws IOException {
+		throw new NonWritableChannelException();
+	}
+
+	@Override
+	public boolean isOpen() {
+		return channel.isOpen();
+	}
+
+	@Override
+	public synchronized void close() throws IOException {
+		for (byte[] plain : segments.values()) {
+			Arrays.fill(plain, (byte) 0);
+		}
+		segments.clear();
+		channel.close();
+	}
+
+	/**
+	 * Method which will return an input stream reading from the current
+	 * position of this channel. Unlike {@link Channels#newInputStream}, skip
+	 * moves the position without decrypting the skipped data. Closing the
+	 * stream closes the channel.
+	 * 
+	 * @return
+	 */
+	public InputStream newInputStream() {
+		return new SegmentedInputStream();
+	}
+
+	/**
+	 * Method which will return the number of segments decrypted so far.
+	 * 
+	 * @return
+	 */
+	synchronized long getDecryptedSegments() {
+		return decryptedSegments;
+	}
+
+	/**
+	 * Method which will return the plaintext of a segment, decrypting it if
+	 * it is not cached.
+	 * 
+	 * @param index
+	 * @return
+	 * @throws IOException
+	 */
+	private byte[] segment(long index) throws IOException {
+
+		byte[] plain = segments.get(index);
+		if (plain != null) {
+			return plain;
+		}
+
+		boolean last = index == segmentCount - 1;
+		int plainLength = (int) Math.min(plainSegmentSize, size - index * plainSegmentSize);
+		ByteBuffer cipherText = ByteBuffer.allocate(plainLength + SegmentedFileFormat.TAG_SIZE);
+		SegmentedFileEngine.readFully(channel, cipherText,
+				format.getHeaderSize() + index * format.getSegmentSize());
+		cipherText.flip();
+
+		plain = new byte[plainLength];
+		try {
+			format.decryptSegment(cipher, index, last, cipherText, ByteBuffer.wrap(plain));
+		} catch (GeneralSecurityException e) {
+			throw new IOException("Segment " + index + " failed authentication", e);
+		}
+		decryptedSegments++;
+
+		segments.put(index, plain);
+		return plain;
+	}
+
+	private void ensureOpen() throws IOException {
+		if (!channel.isOpen()) {
+			throw new ClosedChannelException();
+		}
+	}
+
+	/**
+	 * Input stream over the channel with skip support.
+	 */
+	private final class SegmentedInputStream extends InputStream {
+
+		@Override
+		public int read() throws IOException {
+			byte[] single = new byte[1];
+			return read(single, 0, 1) == -1 ? -1 : single[0] & 0xFF;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			if (len == 0) {
+				return 0;
+			}
+			return SegmentedFileChannel.this.read(ByteBuffer.wrap(b, off, len));
+		}
+
+		@Override
+		public long skip(long n) throws IOException {
+			synchronized (SegmentedFileChannel.this) {
+				ensureOpen();
+				long skipped = Math.max(0, Math.min(n, size - position));
+				position += skipped;
+				return skipped;
+			}
+		}
+
+		@Override
+		public int available() throws IOException {
+			synchronized (SegmentedFileChannel.this) {
+				ensureOpen();
+				// Only what is decrypted already can be read without blocking.
+				if (position >= size || !segments.containsKey(position / plainSegmentSize)) {
+					return 0;
+				}
+				byte[] plain = segments.get(position / plainSegmentSize);
+				return plain.length - (int) (position % plainSegmentSize);
+			}
+		}
+
+		@Override
+		public void close() throws IOException {
+			SegmentedFileChannel.this.close();
+		}
+
+	}
+
+}
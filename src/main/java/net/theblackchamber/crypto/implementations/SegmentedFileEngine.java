@@ -0,0 +1,392 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 Seamus Minogue
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.theblackchamber.crypto.implementations;
+
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.security.GeneralSecurityException;
+import java.util.Arrays;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.crypto.Cipher;
+
+/**
+ * Engine which will encrypt and decrypt {@link SegmentedFileFormat} files on
+ * several threads. Workers claim segments from a shared counter and use
+ * positional {@link FileChannel} reads and writes, so segments are processed
+ * in any order with no coordination beyond the counter, and each worker
+ * holds two segment buffers whatever the file size. <br>
+ * The calling thread works too, so a job completes even when the executor
+ * runs none of the extra workers, for example because it is saturated by the
+ * callers themselves. Workers which start after the calling thread has run
+ * out of segments do nothing. <br>
+ * With a map window the engine maps the files instead, a window of whole
+ * segments at a time, and encrypts from the mapped source straight into the
+ * mapped, pre-sized target. Windows stay under 2GB whatever the file size.
+ * The source must not be truncated while it is mapped.
+ * 
+ * @author sminogue
+ * 
+ */
+final class SegmentedFileEngine {
+
+	private final SegmentedFileFormat format;
+	private final FileChannel source;
+	private final FileChannel target;
+	private final boolean encrypt;
+	private final long plainSize;
+	private final long segmentCount;
+	private final int windowSegments;
+
+	private final AtomicLong nextSegment = new AtomicLong();
+	private final Object lock = new Object();
+	private int running;
+	private boolean closed;
+	private volatile Throwable failure;
+
+	private SegmentedFileEngine(SegmentedFileFormat format, FileChannel source, FileChannel target, boolean encrypt,
+			long plainSize, int mapWindowSize) throws GeneralSecurityException {
+		this.format = format;
+		this.source = source;
+		this.target = target;
+		this.encrypt = encrypt;
+		this.plainSize = plainSize;
+		this.segmentCount = format.segmentCount(plainSize);
+		this.windowSegments = mapWindowSize <= 0 ? 0 : Math.max(1, mapWindowSize / format.getSegmentSize());
+	}
+
+	/**
+	 * Method which will encrypt the whole of the source channel into the
+	 * target channel, header included.
+	 * 
+	 * @param format
+	 * @param source
+	 * @param target
+	 * @param executor
+	 *            Executor the extra workers run on.
+	 * @param parallelism
+	 *            Number of threads to use, the calling thread included.
+	 * @param mapWindowSize
+	 *            Size of the windows the files are mapped in, rounded down to
+	 *            whole segments, or 0 to use positional reads and writes. The
+	 *            target must be open for reading too when mapped.
+	 * @return Number of bytes written.
+	 * @throws IOException
+	 * @throws GeneralSecurityException
+	 */
+	static long encrypt(SegmentedFileFormat format, FileChannel source, FileChannel target, Executor executor,
+			int parallelism, int mapWindowSize) throws IOException, GeneralSecurityException {
+
+		writeFully(target, ByteBuffer.wrap(format.getHeader()), 0);
+
+		SegmentedFileEngine engine = new SegmentedFileEngine(format, source, target, true, source.size(),
+				mapWindowSize);
+		long size = format.ciphertextSize(engine.plainSize);
+		engine.run(executor, parallelism, size);
+		return size;
+	}
+
+	/**
+	 * Method which will decrypt the whole of the source channel, which starts
+	 * with the header of the format, into the target channel.
+	 * 
+	 * @param format
+	 * @param source
+	 * @param target
+	 * @param executor
+	 *            Executor the extra workers run on.
+	 * @param parallelism
+	 *            Number of threads to use, the calling thread included.
+	 * @param mapWindowSize
+	 *            Size of the windows the files are mapped in, rounded down to
+	 *            whole segments, or 0 to use positional reads and writes. The
+	 *            target must be open for reading too when mapped.
+	 * @return Number of bytes written.
+	 * @throws IOException
+	 * @throws GeneralSecurityException
+	 *             If the file is truncated or any segment fails
+	 *             authentication.
+	 */
+	static long decrypt(SegmentedFileFormat format, FileChannel source, FileChannel target, Executor executor,
+			int parallelism, int mapWindowSize) throws IOException, GeneralSecurityException {
+
+		SegmentedFileEngine engine = new SegmentedFileEngine(format, source, target, false,
+				format.plaintextSize(source.size()), mapWindowSize);
+		engine.run(executor, parallelism, engine.plainSize);
+		return engine.plainSize;
+	}
+
+	private void run(Executor executor, int parallelism, long targetSize) throws IOException, GeneralSecurityException {
+
+		if (windowSegments > 0 && targetSize > target.size()) {
+			// Pre-size the target once rather than have each mapping grow it.
+			writeFully(target, ByteBuffer.allocate(1), targetSize - 1);
+		}
+
+		long units = windowSegments > 0 ? (segmentCount + windowSegments - 1) / windowSegments : segmentCount;
+		long workers = Math.min(parallelism, units);
+		for (long i = 1; i < workers; i++) {
+			try {
+				executor.execute(this::work);
+			} catch (RejectedExecutionException e) {
+				// The workers already started and the calling thread cover it.
+				break;
+			}
+		}
+
+		work();
+
+		boolean interrupted = false;
+		synchronized (lock) {
+			closed = true;
+			// Every segment is claimed, so the wait is for at most one segment per worker.
+			while (running > 0) {
+				try {
+					lock.wait();
+				} catch (InterruptedException e) {
+					interrupted = true;
+				}
+			}
+		}
+		if (interrupted) {
+			Thread.currentThread().interrupt();
+		}
+
+		Throwable failed = failure;
+		if (failed instanceof Error) {
+			throw (Error) failed;
+		}
+		if (failed instanceof IOException) {
+			throw (IOException) failed;
+		}
+		if (failed instanceof GeneralSecurityException) {
+			throw (GeneralSecurityException) failed;
+		}
+		if (failed != null) {
+			throw (RuntimeException) failed;
+		}
+	}
+
+	private void work() {
+
+		synchronized (lock) {
+			if (closed) {
+				return;
+			}
+			running++;
+		}
+
+		ByteBuffer plain = null;
+		try {
+			Cipher cipher = SegmentedFileFormat.newCipher();
+			int plainSegmentSize = format.getPlainSegmentSize();
+			plain = ByteBuffer.allocate(plainSegmentSize);
+			ByteBuffer cipherText = ByteBuffer.allocate(format.getSegmentSize());
+			long headerSize = format.getHeaderSize();
+
+			long index;
+			if (windowSegments > 0) {
+				while (failure == null && (index = nextSegment.getAndAdd(windowSegments)) < segmentCount) {
+					processWindow(cipher, index, (int) Math.min(windowSegments, segmentCount - index));
+				}
+			}
+			while (failure == null && (index = nextSegment.getAndIncrement()) < segmentCount) {
+
+				boolean last = index == segmentCount - 1;
+				long plainPosition = index * plainSegmentSize;
+				long cipherPosition = headerSize + index * format.getSegmentSize();
+				int plainLength = (int) Math.min(plainSegmentSize, plainSize - plainPosition);
+
+				plain.clear();
+				cipherText.clear();
+				if (encrypt) {
+					plain.limit(plainLength);
+					readFully(source, plain, plainPosition);
+					plain.flip();
+					format.encryptSegment(cipher, index, last, plain, cipherText);
+					cipherText.flip();
+					writeFully(target, cipherText, cipherPosition);
+				} else {
+					cipherText.limit(plainLength + SegmentedFileFormat.TAG_SIZE);
+					readFully(source, cipherText, cipherPosition);
+					cipherText.flip();
+					format.decryptSegment(cipher, index, last, cipherText, plain);
+					plain.flip();
+					writeFully(target, plain, plainPosition);
+				}
+			}
+		} catch (Throwable e) {
+			// Errors too, or the other workers would leave a hole where this one failed.
+			synchronized (lock) {
+				if (failure == null) {
+					failure = e;
+				}
+			}
+		} finally {
+			if (plain != null) {
+				Arrays.fill(plain.array(), (byte) 0);
+			}
+			synchronized (lock) {
+				running--;
+				lock.notifyAll();
+			}
+		}
+	}
+
+	/**
+	 * Method which will map a window of whole segments of both files and
+	 * process its segments between the mappings.
+	 * 
+	 * @param cipher
+	 * @param first
+	 *            Index of the first segment of the window.
+	 * @param count
+	 *            Number of segments in the window.
+	 * @throws IOException
+	 * @throws GeneralSecurityException
+	 */
+	private void processWindow(Cipher cipher, long first, int count) throws IOException, GeneralSecurityException {
+
+		int plainSegmentSize = format.getPlainSegmentSize();
+		int segmentSize = format.getSegmentSize();
+		long plainPosition = first * plainSegmentSize;
+		long cipherPosition = format.getHeaderSize() + first * segmentSize;
+		// Windows hold at most mapWindowSize bytes, so the lengths fit an int.
+		int plainLength = (int) Math.min((long) count * plainSegmentSize, plainSize - plainPosition);
+		int cipherLength = plainLength + count * SegmentedFileFormat.TAG_SIZE;
+
+		MappedByteBuffer plainWindow = null;
+		MappedByteBuffer cipherWindow = null;
+		try {
+			if (encrypt) {
+				plainWindow = source.map(MapMode.READ_ONLY, plainPosition, plainLength);
+				cipherWindow = target.map(MapMode.READ_WRITE, cipherPosition, cipherLength);
+			} else {
+				cipherWindow = source.map(MapMode.READ_ONLY, cipherPosition, cipherLength);
+				plainWindow = target.map(MapMode.READ_WRITE, plainPosition, plainLength);
+			}
+
+			for (int i = 0; i < count; i++) {
+				long index = first + i;
+				int offset = i * plainSegmentSize;
+				int length = Math.min(plainSegmentSize, plainLength - offset);
+
+				ByteBuffer plain = plainWindow.duplicate();
+				plain.limit(offset + length).position(offset);
+				ByteBuffer cipherText = cipherWindow.duplicate();
+				cipherText.limit(i * segmentSize + length + SegmentedFileFormat.TAG_SIZE).position(i * segmentSize);
+
+				if (encrypt) {
+					format.encryptSegment(cipher, index, index == segmentCount - 1, plain, cipherText);
+				} else {
+					format.decryptSegment(cipher, index, index == segmentCount - 1, cipherText, plain);
+				}
+			}
+		} finally {
+			Unmapper.unmap(plainWindow);
+			Unmapper.unmap(cipherWindow);
+		}
+	}
+
+	/**
+	 * Method which will fill a buffer from a channel at a position.
+	 * 
+	 * @param channel
+	 * @param buffer
+	 * @param position
+	 * @throws IOException
+	 *             If the channel ends first.
+	 */
+	static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+		while (buffer.hasRemaining()) {
+			int read = channel.read(buffer, position);
+			if (read < 0) {
+				throw new IOException("File changed while being processed.");
+			}
+			position += read;
+		}
+	}
+
+	private static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+		while (buffer.hasRemaining()) {
+			position += channel.write(buffer, position);
+		}
+	}
+
+	/**
+	 * Releases mappings as soon as a window is done, where the runtime
+	 * allows it. Otherwise they are released by the garbage collector, which
+	 * for large files can leave many windows mapped and, on Windows, keeps the
+	 * files from being moved.
+	 */
+	private static final class Unmapper {
+
+		private static final Object UNSAFE;
+		private static final Method INVOKE_CLEANER;
+
+		static {
+			Object unsafe = null;
+			Method invokeCleaner = null;
+			try {
+				Class<?> type = Class.forName("sun.misc.Unsafe");
+				invokeCleaner = type.getMethod("invokeCleaner", ByteBuffer.class);
+				Field field = type.getDeclaredField("theUnsafe");
+				field.setAccessible(true);
+				unsafe = field.get(null);
+			} catch (ReflectiveOperationException | RuntimeException e) {
+				// Java 8, left to the garbage collector.
+				invokeCleaner = null;
+			}
+			UNSAFE = unsafe;
+			INVOKE_CLEANER = invokeCleaner;
+		}
+
+		/**
+		 * Method which will unmap a buffer. The buffer and any duplicate of it
+		 * must not be used afterwards.
+		 * 
+		 * @param buffer
+		 *            Buffer to unmap, may be null.
+		 */
+		static void unmap(MappedByteBuffer buffer) {
+			if (buffer == null || INVOKE_CLEANER == null) {
+				return;
+			}
+			try {
+				INVOKE_CLEANER.invoke(UNSAFE, buffer);
+			} catch (ReflectiveOperationException | RuntimeException e) {
+				// Left to the garbage collector.
+			}
+		}
+
+	}
+
+}
@@ -0,0 +1,405 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 Seamus Minogue
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.theblackchamber.crypto.implementations;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+import java.util.Arrays;
+
+import javax.crypto.Cipher;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.apache.commons.io.IOUtils;
+
+import net.theblackchamber.crypto.constants.SupportedFileFormats;
+import net.theblackchamber.crypto.exceptions.MissingParameterException;
+import net.theblackchamber.crypto.providers.EncryptionProvider2;
+import net.theblackchamber.crypto.util.StripedSecureRandom;
+
+/**
+ * Reader and writer of the {@link SupportedFileFormats#SEGMENTED} file
+ * format. Layout:
+ * 
+ * <pre>
+ * magic         4 bytes  0xCE 'S' 'E' 'G'
+ * version       1 byte   1
+ * segment size  4 bytes  ciphertext segment size, big endian
+ * nonce prefix  7 bytes  random per file
+ * wrapped size  2 bytes  big endian
+ * wrapped key   n bytes  per file AES-256 key encrypted by the encryption provider
+ * segments               AES-GCM ciphertext and tag of each plaintext segment
+ * </pre>
+ * 
+ * Every segment but the last holds exactly segment size - 16 bytes of
+ * plaintext, so segment i starts at header + i * segment size in the file
+ * and at i * (segment size - 16) in the plaintext, and segments can be
+ * encrypted and decrypted independently and in any order. The nonce of
+ * segment i is the nonce prefix, i as 4 bytes big endian and a byte which is
+ * 1 for the last segment and 0 otherwise, and the whole header is associated
+ * data of every segment. Reordered, swapped in or dropped segments, including
+ * truncation at a segment boundary, therefore fail authentication. An empty
+ * file is a single empty last segment. <br>
+ * An instance holds the unwrapped key of one file and is safe for use by
+ * several threads, each with its own {@link Cipher}.
+ * 
+ * @author sminogue
+ * 
+ */
+final class SegmentedFileFormat {
+
+	static final byte[] MAGIC = { (byte) 0xCE, 'S', 'E', 'G' };
+
+	static final byte VERSION = 1;
+
+	static final int NONCE_PREFIX_SIZE = 7;
+
+	static final int FIXED_HEADER_SIZE = MAGIC.length + 1 + 4 + NONCE_PREFIX_SIZE + 2;
+
+	static final int TAG_SIZE = 16;
+
+	private static final int KEY_SIZE = 32;
+
+	private static final int NONCE_SIZE = 12;
+
+	private static final long MAX_SEGMENTS = 1L << 32;
+
+	private static final String TRANSFORMATION = "AES/GCM/NoPadding";
+
+	private final byte[] header;
+	private final int segmentSize;
+	private final byte[] noncePrefix;
+	private final SecretKeySpec key;
+
+	private SegmentedFileFormat(byte[] header, int segmentSize, byte[] noncePrefix, byte[] key) {
+		this.header = header;
+		this.segmentSize = segmentSize;
+		this.noncePrefix = noncePrefix;
+		this.key = new SecretKeySpec(key, "AES");
+	}
+
+	/**
+	 * Method which will create the header of a new file with a random key and
+	 * nonce prefix.
+	 * 
+	 * @param provider
+	 *            Provider the per file key is wrapped with.
+	 * @param segmentSize
+	 *            Ciphertext segment size.
+	 * @return
+	 * @throws MissingParameterException
+	 * @throws GeneralSecurityException
+	 */
+	static SegmentedFileFormat create(EncryptionProvider2 provider, int segmentSize)
+			throws MissingParameterException, GeneralSecurityException {
+
+		byte[] fileKey = StripedSecureRandom.randBytes(KEY_SIZE);
+		try {
+			byte[] noncePrefix = StripedSecureRandom.randBytes(NONCE_PREFIX_SIZE);
+
+			ByteBuffer fixed = ByteBuffer.allocate(FIXED_HEADER_SIZE);
+			fixed.put(MAGIC).put(VERSION).putInt(segmentSize).put(noncePrefix);
+			byte[] wrapped = provider.encrypt(fileKey, Arrays.copyOf(fixed.array(), FIXED_HEADER_SIZE - 2));
+			if (wrapped.length > 0xFFFF) {
+				throw new GeneralSecurityException("Wrapped file key too large: " + wrapped.length);
+			}
+			fixed.putShort((short) wrapped.length);
+
+			byte[] header = Arrays.copyOf(fixed.array(), FIXED_HEADER_SIZE + wrapped.length);
+			System.arraycopy(wrapped, 0, header, FIXED_HEADER_SIZE, wrapped.length);
+
+			return new SegmentedFileFormat(header, segmentSize, noncePrefix, fileKey);
+		} finally {
+			Arrays.fill(fileKey, (byte) 0);
+		}
+	}
+
+	/**
+	 * Method which will read the header of a file and unwrap its key.
+	 * 
+	 * @param provider
+	 *            Provider the per file key was wrapped with.
+	 * @param in
+	 *            Input positioned after the magic.
+	 * @return
+	 * @throws IOException
+	 * @throws MissingParameterException
+	 * @throws GeneralSecurityException
+	 */
+	static SegmentedFileFormat read(EncryptionProvider2 provider, InputStream in)
+			throws IOException, MissingParameterException, GeneralSecurityException {
+
+		DataInputStream data = new DataInputStream(in);
+		byte version = data.readByte();
+		if (version != VERSION) {
+			throw new GeneralSecurityException("Unsupported segmented file version: " + version);
+		}
+		int segmentSize = data.readInt();
+		if (segmentSize <= TAG_SIZE) {
+			throw new GeneralSecurityException("Invalid segment size: " + segmentSize);
+		}
+		byte[] noncePrefix = new byte[NONCE_PREFIX_SIZE];
+		data.readFully(noncePrefix);
+		int wrappedLength = data.readUnsignedShort();
+
+		byte[] header = new byte[FIXED_HEADER_SIZE + wrappedLength];
+		ByteBuffer.wrap(header).put(MAGIC).put(version).putInt(segmentSize).put(noncePrefix)
+				.putShort((short) wrappedLength);
+		data.readFully(header, FIXED_HEADER_SIZE, wrappedLength);
+
+		byte[] fileKey = provider.decrypt(Arrays.copyOfRange(header, FIXED_HEADER_SIZE, header.length),
+				Arrays.copyOf(header, FIXED_HEADER_SIZE - 2));
+		try {
+			if (fileKey.length != KEY_SIZE) {
+				throw new GeneralSecurityException("Invalid file key");
+			}
+			return new SegmentedFileFormat(header, segmentSize, noncePrefix, fileKey);
+		} finally {
+			Arrays.fill(fileKey, (byte) 0);
+		}
+	}
+
+	/**
+	 * Method which will return a copy of the header, magic included.
+	 * 
+	 * @return
+	 */
+	byte[] getHeader() {
+		return header.clone();
+	}
+
+	int getHeaderSize() {
+		return header.length;
+	}
+
+	int getSegmentSize() {
+		return segmentSize;
+	}
+
+	int getPlainSegmentSize() {
+		return segmentSize - TAG_SIZE;
+	}
+
+	/**
+	 * Method which will return the number of segments a plaintext of the
+	 * given size is split into.
+	 * 
+	 * @param plainSize
+	 * @return
+	 * @throws GeneralSecurityException
+	 *             If there would be more segments than can be numbered.
+	 */
+	long segmentCount(long plainSize) throws GeneralSecurityException {
+		long plainSegmentSize = getPlainSegmentSize();
+		long count = plainSize == 0 ? 1 : (plainSize + plainSegmentSize - 1) / plainSegmentSize;
+		if (count > MAX_SEGMENTS) {
+			throw new GeneralSecurityException("File too large for segment size " + segmentSize);
+		}
+		return count;
+	}
+
+	/**
+	 * Method which will return the size of the encrypted file, header
+	 * included, for a plaintext of the given size.
+	 * 
+	 * @param plainSize
+	 * @return
+	 * @throws GeneralSecurityException
+	 */
+	long ciphertextSize(long plainSize) throws GeneralSecurityException {
+		return header.length + plainSize + segmentCount(plainSize) * TAG_SIZE;
+	}
+
+	/**
+	 * Method which will return the size of the plaintext of an encrypted file
+	 * of the given size, header included.
+	 * 
+	 * @param cipherSize
+	 * @return
+	 * @throws GeneralSecurityException
+	 *             If no file of this format has that size.
+	 */
+	long plaintextSize(long cipherSize) throws GeneralSecurityException {
+		long body = cipherSize - header.length;
+		if (body < TAG_SIZE) {
+			throw new GeneralSecurityException("Segmented file truncated");
+		}
+		long count = (body + segmentSize - 1) / segmentSize;
+		long last = body - (count - 1) * segmentSize;
+		if (count > MAX_SEGMENTS || (last == TAG_SIZE && count > 1) || last < TAG_SIZE) {
+			throw new GeneralSecurityException("Segmented file truncated");
+		}
+		return body - count * TAG_SIZE;
+	}
+
+	/**
+	 * Method which will create a cipher for use with this format. Ciphers are
+	 * not thread safe, so each thread needs its own.
+	 * 
+	 * @return
+	 * @throws GeneralSecurityException
+	 */
+	static Cipher newCipher() throws GeneralSecurityException {
+		return Cipher.getInstance(TRANSFORMATION);
+	}
+
+	/**
+	 * Method which will encrypt one segment.
+	 * 
+	 * @param cipher
+	 * @param index
+	 *            Index of the segment.
+	 * @param last
+	 *            True for the last segment of the file.
+	 * @param src
+	 *            Plaintext of the segment, at most the plain segment size.
+	 * @param dst
+	 *            Buffer the ciphertext is written to, 16 bytes more than the
+	 *            plaintext.
+	 * @return Number of bytes written.
+	 * @throws GeneralSecurityException
+	 */
+	int encryptSegment(Cipher cipher, long index, boolean last, ByteBuffer src, ByteBuffer dst)
+			throws GeneralSecurityException {
+		cipher.init(Cipher.ENCRYPT_MODE, key, nonce(index, last));
+		cipher.updateAAD(header);
+		return cipher.doFinal(src, dst);
+	}
+
+	/**
+	 * Method which will decrypt one segment.
+	 * 
+	 * @param cipher
+	 * @param index
+	 *            Index of the segment.
+	 * @param last
+	 *            True for the last segment of the file.
+	 * @param src
+	 *            Ciphertext of the segment.
+	 * @param dst
+	 *            Buffer the plaintext is written to.
+	 * @return Number of bytes written.
+	 * @throws GeneralSecurityException
+	 *             If the segment fails authentication.
+	 */
+	int decryptSegment(Cipher cipher, long index, boolean last, ByteBuffer src, ByteBuffer dst)
+			throws GeneralSecurityException {
+		cipher.init(Cipher.DECRYPT_MODE, key, nonce(index, last));
+		cipher.updateAAD(header);
+		return cipher.doFinal(src, dst);
+	}
+
+	private GCMParameterSpec nonce(long index, boolean last) {
+		byte[] nonce = Arrays.copyOf(noncePrefix, NONCE_SIZE);
+		ByteBuffer.wrap(nonce, NONCE_PREFIX_SIZE, 5).putInt((int) index).put((byte) (last ? 1 : 0));
+		return new GCMParameterSpec(TAG_SIZE * 8, nonce);
+	}
+
+	/**
+	 * Method which will encrypt a stream on the calling thread. Use
+	 * {@link SegmentedFileEngine} to encrypt files in parallel.
+	 * 
+	 * @param in
+	 * @param out
+	 * @throws IOException
+	 * @throws GeneralSecurityException
+	 */
+	void encrypt(InputStream in, OutputStream out) throws IOException, GeneralSecurityException {
+
+		out.write(header);
+
+		Cipher cipher = newCipher();
+		int plainSegmentSize = getPlainSegmentSize();
+		byte[] current = new byte[plainSegmentSize];
+		byte[] next = new byte[plainSegmentSize];
+		ByteBuffer cipherBuffer = ByteBuffer.allocate(segmentSize);
+
+		int currentLength = IOUtils.read(in, current);
+		for (long index = 0;; index++) {
+			// A full segment is the last one only if nothing follows it.
+			int nextLength = currentLength == plainSegmentSize ? IOUtils.read(in, next) : 0;
+			boolean last = nextLength == 0;
+
+			cipherBuffer.clear();
+			encryptSegment(cipher, index, last, ByteBuffer.wrap(current, 0, currentLength), cipherBuffer);
+			out.write(cipherBuffer.array(), 0, cipherBuffer.position());
+
+			if (last) {
+				break;
+			}
+			byte[] swap = current;
+			current = next;
+			next = swap;
+			currentLength = nextLength;
+		}
+		Arrays.fill(current, (byte) 0);
+		Arrays.fill(next, (byte) 0);
+	}
+
+	/**
+	 * Method which will decrypt a stream on the calling thread. Segments are
+	 * written as they are authenticated, so output written before a failure
+	 * must be discarded by the caller.
+	 * 
+	 * @param in
+	 *            Input positioned after the header.
+	 * @param out
+	 * @throws IOException
+	 * @throws GeneralSecurityException
+	 */
+	void decrypt(InputStream in, OutputStream out) throws IOException, GeneralSecurityException {
+
+		Cipher cipher = newCipher();
+		byte[] current = new byte[segmentSize];
+		byte[] next = new byte[segmentSize];
+		ByteBuffer plainBuffer = ByteBuffer.allocate(getPlainSegmentSize());
+
+		int currentLength = IOUtils.read(in, current);
+		for (long index = 0;; index++) {
+			int nextLength = currentLength == segmentSize ? IOUtils.read(in, next) : 0;
+			boolean last = nextLength == 0;
+			if (currentLength < TAG_SIZE || index >= MAX_SEGMENTS) {
+				throw new GeneralSecurityException("Segmented file truncated");
+			}
+
+			plainBuffer.clear();
+			decryptSegment(cipher, index, last, ByteBuffer.wrap(current, 0, currentLength), plainBuffer);
+			out.write(plainBuffer.array(), 0, plainBuffer.position());
+
+			if (last) {
+				break;
+			}
+			byte[] swap = current;
+			current = next;
+			next = swap;
+			currentLength = nextLength;
+		}
+		Arrays.fill(plainBuffer.array(), (byte) 0);
+	}
+
+}
@@ -0,0 +1,217 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 Seamus Minogue
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.theblackchamber.crypto.implementations;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+import java.util.Arrays;
+
+import com.google.crypto.tink.StreamingAead;
+import com.google.crypto.tink.subtle.AesGcmHkdfStreaming;
+
+import net.theblackchamber.crypto.constants.SupportedFileFormats;
+import net.theblackchamber.crypto.exceptions.MissingParameterException;
+import net.theblackchamber.crypto.providers.EncryptionProvider2;
+import net.theblackchamber.crypto.util.StripedSecureRandom;
+
+/**
+ * Reader and writer of the {@link SupportedFileFormats#STREAMING} file
+ * format. Layout:
+ * 
+ * <pre>
+ * magic         4 bytes  0xCE 'S' 'T' 'R'
+ * version       1 byte   1
+ * segment size  4 bytes  ciphertext segment size, big endian
+ * wrapped size  2 bytes  big endian
+ * wrapped key   n bytes  per file key encrypted by the encryption provider
+ * body                   Tink AES-GCM-HKDF streaming ciphertext
+ * </pre>
+ * 
+ * The per file key is encrypted with the fixed part of the header as
+ * associated data and the body with the whole header, so no field can be
+ * changed without detection. Tink ciphertexts of prefixed keys start with
+ * 0x01 or 0x00 and never match the magic, but those of RAW keys start with a
+ * random IV, so about one {@link SupportedFileFormats#SINGLE_SHOT} file in 2^32
+ * does. For keysets with an enabled RAW key, readers therefore fall back to
+ * single shot when the header of a small file does not parse or its key does
+ * not unwrap.
+ * 
+ * @author sminogue
+ * 
+ */
+final class StreamingFileFormat {
+
+	static final byte[] MAGIC = { (byte) 0xCE, 'S', 'T', 'R' };
+
+	static final byte VERSION = 1;
+
+	static final int FIXED_HEADER_SIZE = MAGIC.length + 1 + 4 + 2;
+
+	private static final int KEY_SIZE = 32;
+
+	private static final String HKDF_ALGORITHM = "HmacSha256";
+
+	private final byte[] header;
+	private final int segmentSize;
+	private final byte[] fileKey;
+
+	private StreamingFileFormat(byte[] header, int segmentSize, byte[] fileKey) {
+		this.header = header;
+		this.segmentSize = segmentSize;
+		this.fileKey = fileKey;
+	}
+
+	/**
+	 * Method which will encrypt a stream segment by segment. The output stream
+	 * is closed.
+	 * 
+	 * @param provider
+	 *            Provider the per file key is wrapped with.
+	 * @param segmentSize
+	 *            Ciphertext segment size.
+	 * @param in
+	 * @param out
+	 * @throws IOException
+	 * @throws MissingParameterException
+	 * @throws GeneralSecurityException
+	 */
+	static void encrypt(EncryptionProvider2 provider, int segmentSize, InputStream in, OutputStream out)
+			throws IOException, MissingParameterException, GeneralSecurityException {
+
+		byte[] fileKey = StripedSecureRandom.randBytes(KEY_SIZE);
+		try {
+			StreamingAead aead = new AesGcmHkdfStreaming(fileKey, HKDF_ALGORITHM, KEY_SIZE, segmentSize, 0);
+
+			ByteBuffer header = ByteBuffer.allocate(FIXED_HEADER_SIZE);
+			header.put(MAGIC).put(VERSION).putInt(segmentSize);
+			byte[] wrapped = provider.encrypt(fileKey, Arrays.copyOf(header.array(), FIXED_HEADER_SIZE - 2));
+			if (wrapped.length > 0xFFFF) {
+				throw new GeneralSecurityException("Wrapped file key too large: " + wrapped.length);
+			}
+			header.putShort((short) wrapped.length);
+
+			byte[] fullHeader = Arrays.copyOf(header.array(), FIXED_HEADER_SIZE + wrapped.length);
+			System.arraycopy(wrapped, 0, fullHeader, FIXED_HEADER_SIZE, wrapped.length);
+			out.write(fullHeader);
+
+			byte[] buffer = new byte[segmentSize];
+			try (OutputStream encrypting = aead.newEncryptingStream(out, fullHeader)) {
+				int read;
+				while ((read = in.read(buffer)) != -1) {
+					encrypting.write(buffer, 0, read);
+				}
+			}
+		} finally {
+			Arrays.fill(fileKey, (byte) 0);
+		}
+	}
+
+	/**
+	 * Method which will read the header of a stream written by
+	 * {@link #encrypt(EncryptionProvider2, int, InputStream, OutputStream)} and
+	 * unwrap its key.
+	 * 
+	 * @param provider
+	 *            Provider the per file key was wrapped with.
+	 * @param in
+	 *            Input positioned after the magic.
+	 * @return
+	 * @throws IOException
+	 * @throws MissingParameterException
+	 * @throws GeneralSecurityException
+	 *             If the header is invalid or the key does not unwrap.
+	 */
+	static StreamingFileFormat read(EncryptionProvider2 provider, InputStream in)
+			throws IOException, MissingParameterException, GeneralSecurityException {
+
+		DataInputStream data = new DataInputStream(in);
+		byte version = data.readByte();
+		if (version != VERSION) {
+			throw new GeneralSecurityException("Unsupported streaming file version: " + version);
+		}
+		int segmentSize = data.readInt();
+		if (segmentSize < 1024) {
+			throw new GeneralSecurityException("Invalid segment size: " + segmentSize);
+		}
+		int wrappedLength = data.readUnsignedShort();
+
+		byte[] header = new byte[FIXED_HEADER_SIZE + wrappedLength];
+		ByteBuffer.wrap(header).put(MAGIC).put(version).putInt(segmentSize).putShort((short) wrappedLength);
+		data.readFully(header, FIXED_HEADER_SIZE, wrappedLength);
+
+		byte[] fileKey = provider.decrypt(Arrays.copyOfRange(header, FIXED_HEADER_SIZE, header.length),
+				Arrays.copyOf(header, FIXED_HEADER_SIZE - 2));
+		if (fileKey.length != KEY_SIZE) {
+			Arrays.fill(fileKey, (byte) 0);
+			throw new GeneralSecurityException("Invalid file key");
+		}
+		return new StreamingFileFormat(header, segmentSize, fileKey);
+	}
+
+	/**
+	 * Method which will decrypt the body segment by segment and wipe the key.
+	 * Tampering with the body is reported by Tink as an IOException once the
+	 * affected segment is read, so output written before it must be discarded
+	 * by the caller.
+	 * 
+	 * @param in
+	 *            Input positioned after the header.
+	 * @param out
+	 * @throws IOException
+	 * @throws GeneralSecurityException
+	 */
+	void decrypt(InputStream in, OutputStream out) throws IOException, GeneralSecurityException {
+		try {
+			StreamingAead aead = new AesGcmHkdfStreaming(fileKey, HKDF_ALGORITHM, KEY_SIZE, segmentSize, 0);
+
+			byte[] buffer = new byte[segmentSize];
+			try (InputStream decrypting = aead.newDecryptingStream(in, header)) {
+				int read;
+				while ((read = decrypting.read(buffer)) != -1) {
+					out.write(buffer, 0, read);
+				}
+			}
+		} finally {
+			Arrays.fill(fileKey, (byte) 0);
+		}
+	}
+
+	/**
+	 * Method which will validate a segment size.
+	 * 
+	 * @param segmentSize
+	 * @return
+	 */
+	static int checkSegmentSize(int segmentSize) {
+		if (segmentSize < 1024) {
+			throw new IllegalArgumentException("Segment size must be at least 1024 bytes: " + segmentSize);
+		}
+		return segmentSize;
+	}
+
+}
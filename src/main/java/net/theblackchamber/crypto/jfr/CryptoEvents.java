@@ -0,0 +1,160 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 Seamus Minogue
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.theblackchamber.crypto.jfr;
+
+import com.google.crypto.tink.KeysetHandle;
+
+/**
+ * Entry point for emitting Java Flight Recorder events. Each operation calls a
+ * begin method, which returns null unless a recording has the event enabled,
+ * and passes a non null result to the matching end method. Events have
+ * thresholds, so only slow operations are committed unless the recording
+ * settings say otherwise. <br>
+ * Events are named <code>net.theblackchamber.crypto.*</code>, for example:
+ * <code>
+ * java -XX:StartFlightRecording:settings=profile,filename=crypto.jfr ...
+ * jfr print --events net.theblackchamber.crypto.KeyLoad crypto.jfr
+ * </code> <br>
+ * Where the runtime has no JFR every method is a no-op.
+ * 
+ * @author sminogue
+ * 
+ */
+public final class CryptoEvents {
+
+	public static final String EVENT_PREFIX = "net.theblackchamber.crypto.";
+
+	public static final String CATEGORY = "Commons Encryption";
+
+	private static final boolean AVAILABLE = detect();
+
+	private CryptoEvents() {
+	}
+
+	/**
+	 * Method which will indicate whether the runtime supports JFR events.
+	 * 
+	 * @return
+	 */
+	public static boolean isAvailable() {
+		return AVAILABLE;
+	}
+
+	public static Object beginProviderOperation() {
+		return AVAILABLE ? JfrEvents.beginProviderOperation() : null;
+	}
+
+	/**
+	 * @param event
+	 *            Result of {@link #beginProviderOperation()}.
+	 * @param operation
+	 *            Name of the operation.
+	 * @param provider
+	 *            Class of the provider.
+	 * @param key
+	 *            Keyset of the provider.
+	 * @param prefixKeyId
+	 *            Key ID read from the ciphertext prefix when decrypting, 0
+	 *            otherwise.
+	 * @param bytesIn
+	 * @param bytesOut
+	 * @param failure
+	 *            Exception the operation failed with, null on success.
+	 */
+	public static void endProviderOperation(Object event, String operation, Class<?> provider, KeysetHandle key,
+			int prefixKeyId, long bytesIn, long bytesOut, Throwable failure) {
+		if (event != null) {
+			JfrEvents.endProviderOperation(event, operation, provider, key, prefixKeyId, bytesIn, bytesOut, failure);
+		}
+	}
+
+	public static Object beginFileOperation() {
+		return AVAILABLE ? JfrEvents.beginFileOperation() : null;
+	}
+
+	/**
+	 * @param event
+	 *            Result of {@link #beginFileOperation()}.
+	 * @param operation
+	 * @param path
+	 *            Path of the file, null for streams.
+	 * @param bytesIn
+	 * @param bytesOut
+	 * @param failure
+	 */
+	public static void endFileOperation(Object event, String operation, String path, long bytesIn, long bytesOut,
+			Throwable failure) {
+		if (event != null) {
+			JfrEvents.endFileOperation(event, operation, path, bytesIn, bytesOut, failure);
+		}
+	}
+
+	public static Object beginPropertyDecrypt() {
+		return AVAILABLE ? JfrEvents.beginPropertyDecrypt() : null;
+	}
+
+	/**
+	 * @param event
+	 *            Result of {@link #beginPropertyDecrypt()}.
+	 * @param key
+	 *            Property key. Never pass the value.
+	 * @param length
+	 * @param failure
+	 */
+	public static void endPropertyDecrypt(Object event, String key, long length, Throwable failure) {
+		if (event != null) {
+			JfrEvents.endPropertyDecrypt(event, key, length, failure);
+		}
+	}
+
+	public static Object beginKeyLoad() {
+		return AVAILABLE ? JfrEvents.beginKeyLoad() : null;
+	}
+
+	/**
+	 * @param event
+	 *            Result of {@link #beginKeyLoad()}.
+	 * @param path
+	 * @param kdfNanos
+	 *            Time spent deriving the keystore key.
+	 * @param parseNanos
+	 *            Time spent decrypting and parsing the keyset.
+	 * @param failure
+	 */
+	public static void endKeyLoad(Object event, String path, long kdfNanos, long parseNanos, Throwable failure) {
+		if (event != null) {
+			JfrEvents.endKeyLoad(event, path, kdfNanos, parseNanos, failure);
+		}
+	}
+
+	private static boolean detect() {
+		try {
+			Class.forName("jdk.jfr.Event", false, CryptoEvents.class.getClassLoader());
+			return true;
+		} catch (ClassNotFoundException | LinkageError e) {
+			return false;
+		}
+	}
+
+}
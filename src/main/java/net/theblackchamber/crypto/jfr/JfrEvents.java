@@ -0,0 +1,151 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 Seamus Minogue
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.theblackchamber.crypto.jfr;
+
+import com.google.crypto.tink.KeysetHandle;
+import com.google.crypto.tink.proto.KeysetInfo;
+import com.google.crypto.tink.proto.KeysetInfo.KeyInfo;
+
+/**
+ * Code touching the JFR API. Only loaded once {@link CryptoEvents} has found
+ * JFR present, so the library still runs where it is not.
+ * 
+ * @author sminogue
+ * 
+ */
+final class JfrEvents {
+
+	private JfrEvents() {
+	}
+
+	static Object beginProviderOperation() {
+		ProviderOperationEvent event = new ProviderOperationEvent();
+		if (!event.isEnabled()) {
+			return null;
+		}
+		event.begin();
+		return event;
+	}
+
+	static void endProviderOperation(Object token, String operation, Class<?> provider, KeysetHandle key,
+			int prefixKeyId, long bytesIn, long bytesOut, Throwable failure) {
+		ProviderOperationEvent event = (ProviderOperationEvent) token;
+		event.end();
+		if (event.shouldCommit()) {
+			event.operation = operation;
+			event.provider = provider.getSimpleName();
+			event.keyId = keyId(key, prefixKeyId);
+			event.bytesIn = bytesIn;
+			event.bytesOut = bytesOut;
+			event.failure = failureName(failure);
+			event.commit();
+		}
+	}
+
+	static Object beginFileOperation() {
+		FileOperationEvent event = new FileOperationEvent();
+		if (!event.isEnabled()) {
+			return null;
+		}
+		event.begin();
+		return event;
+	}
+
+	static void endFileOperation(Object token, String operation, String path, long bytesIn, long bytesOut,
+			Throwable failure) {
+		FileOperationEvent event = (FileOperationEvent) token;
+		event.end();
+		if (event.shouldCommit()) {
+			event.operation = operation;
+			event.path = path;
+			event.bytesIn = bytesIn;
+			event.bytesOut = bytesOut;
+			event.failure = failureName(failure);
+			event.commit();
+		}
+	}
+
+	static Object beginPropertyDecrypt() {
+		PropertyDecryptEvent event = new PropertyDecryptEvent();
+		if (!event.isEnabled()) {
+			return null;
+		}
+		event.begin();
+		return event;
+	}
+
+	static void endPropertyDecrypt(Object token, String key, long length, Throwable failure) {
+		PropertyDecryptEvent event = (PropertyDecryptEvent) token;
+		event.end();
+		if (event.shouldCommit()) {
+			event.key = key;
+			event.length = length;
+			event.failure = failureName(failure);
+			event.commit();
+		}
+	}
+
+	static Object beginKeyLoad() {
+		KeyLoadEvent event = new KeyLoadEvent();
+		if (!event.isEnabled()) {
+			return null;
+		}
+		event.begin();
+		return event;
+	}
+
+	static void endKeyLoad(Object token, String path, long kdfNanos, long parseNanos, Throwable failure) {
+		KeyLoadEvent event = (KeyLoadEvent) token;
+		event.end();
+		if (event.shouldCommit()) {
+			event.path = path;
+			event.kdfDuration = kdfNanos;
+			event.parseDuration = parseNanos;
+			event.failure = failureName(failure);
+			event.commit();
+		}
+	}
+
+	/**
+	 * Method which will return the ID of the key an operation used: the key
+	 * named by the ciphertext prefix if the keyset has it, otherwise the
+	 * primary. Unsigned, as Tink prints it.
+	 */
+	private static long keyId(KeysetHandle key, int prefixKeyId) {
+		KeysetInfo info = key.getKeysetInfo();
+		if (prefixKeyId != 0) {
+			for (KeyInfo keyInfo : info.getKeyInfoList()) {
+				if (keyInfo.getKeyId() == prefixKeyId) {
+					return prefixKeyId & 0xFFFFFFFFL;
+				}
+			}
+		}
+		return info.getPrimaryKeyId() & 0xFFFFFFFFL;
+	}
+
+	private static String failureName(Throwable failure) {
+		return failure == null ? null : failure.getClass().getName();
+	}
+
+}
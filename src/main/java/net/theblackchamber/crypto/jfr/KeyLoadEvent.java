@@ -0,0 +1,62 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 Seamus Minogue
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.theblackchamber.crypto.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Threshold;
+import jdk.jfr.Timespan;
+
+/**
+ * Loading of a keyset by
+ * {@link net.theblackchamber.crypto.util.KeystoreUtils2#getSecretKey(net.theblackchamber.crypto.model.KeyConfig2)}.
+ * 
+ * @author sminogue
+ * 
+ */
+@Name(CryptoEvents.EVENT_PREFIX + "KeyLoad")
+@Label("Key Load")
+@Category({ CryptoEvents.CATEGORY, "Key" })
+@Description("Derivation of the keystore key and decryption and parsing of a keyset")
+@Threshold("0 ms")
+final class KeyLoadEvent extends jdk.jfr.Event {
+
+	@Label("Keystore File")
+	String path;
+
+	@Label("Key Derivation Time")
+	@Timespan(Timespan.NANOSECONDS)
+	long kdfDuration;
+
+	@Label("Keyset Parse Time")
+	@Description("Time to decrypt and parse the keyset once read from disk")
+	@Timespan(Timespan.NANOSECONDS)
+	long parseDuration;
+
+	@Label("Failure")
+	String failure;
+
+}
@@ -0,0 +1,59 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 Seamus Minogue
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.theblackchamber.crypto.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+/**
+ * Decryption of a property by
+ * {@link net.theblackchamber.crypto.implementations.SecureProperties2}. The
+ * property key is recorded, never its value.
+ * 
+ * @author sminogue
+ * 
+ */
+@Name(CryptoEvents.EVENT_PREFIX + "PropertyDecrypt")
+@Label("Secure Property Decrypt")
+@Category({ CryptoEvents.CATEGORY, "Properties" })
+@Description("Decryption of an encrypted property value")
+@Threshold("10 ms")
+@StackTrace(false)
+final class PropertyDecryptEvent extends jdk.jfr.Event {
+
+	@Label("Property Key")
+	String key;
+
+	@Label("Length")
+	@Description("Length of the encrypted value in characters")
+	long length;
+
+	@Label("Failure")
+	String failure;
+
+}
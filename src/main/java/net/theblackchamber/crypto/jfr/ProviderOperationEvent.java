@@ -0,0 +1,72 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 Seamus Minogue
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.theblackchamber.crypto.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+/**
+ * Encryption or decryption by an
+ * {@link net.theblackchamber.crypto.providers.EncryptionProvider2}. Sizes
+ * only, never data.
+ * 
+ * @author sminogue
+ * 
+ */
+@Name(CryptoEvents.EVENT_PREFIX + "ProviderOperation")
+@Label("Encryption Provider Operation")
+@Category({ CryptoEvents.CATEGORY, "Provider" })
+@Description("Encryption or decryption of a single value by an encryption provider")
+@Threshold("10 ms")
+@StackTrace(false)
+final class ProviderOperationEvent extends jdk.jfr.Event {
+
+	@Label("Operation")
+	String operation;
+
+	@Label("Provider")
+	String provider;
+
+	@Label("Key ID")
+	@Description("Primary key ID for encryption, key ID from the ciphertext prefix for decryption")
+	long keyId;
+
+	@Label("Bytes In")
+	@DataAmount
+	long bytesIn;
+
+	@Label("Bytes Out")
+	@DataAmount
+	long bytesOut;
+
+	@Label("Failure")
+	@Description("Class of the exception the operation failed with, if any")
+	String failure;
+
+}
@@ -0,0 +1,69 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 Seamus Minogue
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.theblackchamber.crypto.metrics;
+
+/**
+ * Service provider interface for instrumenting encryption. Implementations
+ * are called on the hot path so must be thread safe and cheap, and must not
+ * throw. <br>
+ * Callers check {@link #isEnabled()} before taking any timings, so a disabled
+ * implementation costs nothing beyond that check. The default is
+ * {@link NoOpCryptoMetrics}, see {@link CryptoMetricsRegistry}.
+ * 
+ * @author sminogue
+ * 
+ */
+public interface CryptoMetrics {
+
+	/**
+	 * Method which will indicate whether operations should be timed and
+	 * recorded.
+	 * 
+	 * @return
+	 */
+	boolean isEnabled();
+
+	/**
+	 * Method which will record a successful operation.
+	 * 
+	 * @param operation
+	 * @param nanos
+	 *            Elapsed time in nanoseconds.
+	 * @param bytesIn
+	 *            Size of the input.
+	 * @param bytesOut
+	 *            Size of the output.
+	 */
+	void record(CryptoOperation operation, long nanos, long bytesIn, long bytesOut);
+
+	/**
+	 * Method which will record a failed operation.
+	 * 
+	 * @param operation
+	 * @param cause
+	 *            Exception the operation failed with.
+	 */
+	void recordFailure(CryptoOperation operation, Throwable cause);
+
+}
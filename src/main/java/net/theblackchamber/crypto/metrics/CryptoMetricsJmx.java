@@ -0,0 +1,179 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 Seamus Minogue
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.theblackchamber.crypto.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Exporter which will publish a {@link DefaultCryptoMetrics} over JMX, one
+ * MXBean per {@link CryptoOperation} named
+ * <code>net.theblackchamber.crypto:type=CryptoMetrics,operation=ENCRYPT</code>
+ * and so on. Values are read from the metrics when JMX asks for them.
+ * 
+ * @author sminogue
+ * 
+ */
+public final class CryptoMetricsJmx {
+
+	public static final String DOMAIN = "net.theblackchamber.crypto";
+
+	private CryptoMetricsJmx() {
+	}
+
+	/**
+	 * Method which will register metrics with the platform MBean server.
+	 * 
+	 * @param metrics
+	 * @return Names registered, for {@link #unregister(List, MBeanServer)}.
+	 * @throws JMException
+	 */
+	public static List<ObjectName> register(DefaultCryptoMetrics metrics) throws JMException {
+		return register(metrics, ManagementFactory.getPlatformMBeanServer());
+	}
+
+	/**
+	 * Method which will register metrics with an MBean server. Existing beans
+	 * with the same names are replaced.
+	 * 
+	 * @param metrics
+	 * @param server
+	 * @return Names registered.
+	 * @throws JMException
+	 */
+	public static List<ObjectName> register(DefaultCryptoMetrics metrics, MBeanServer server) throws JMException {
+		List<ObjectName> names = new ArrayList<ObjectName>();
+		for (CryptoOperation operation : CryptoOperation.values()) {
+			ObjectName name = objectName(operation);
+			if (server.isRegistered(name)) {
+				server.unregisterMBean(name);
+			}
+			server.registerMBean(new OperationMetrics(metrics, operation), name);
+			names.add(name);
+		}
+		return names;
+	}
+
+	/**
+	 * Method which will unregister beans registered by this class.
+	 * 
+	 * @param names
+	 * @param server
+	 * @throws JMException
+	 */
+	public static void unregister(List<ObjectName> names, MBeanServer server) throws JMException {
+		for (ObjectName name : names) {
+			if (server.isRegistered(name)) {
+				server.unregisterMBean(name);
+			}
+		}
+	}
+
+	public static ObjectName objectName(CryptoOperation operation) throws JMException {
+		return new ObjectName(DOMAIN + ":type=CryptoMetrics,operation=" + operation.name());
+	}
+
+	private static final class OperationMetrics implements OperationMetricsMXBean {
+
+		private final DefaultCryptoMetrics metrics;
+		private final CryptoOperation operation;
+
+		private OperationMetrics(DefaultCryptoMetrics metrics, CryptoOperation operation) {
+			this.metrics = metrics;
+			this.operation = operation;
+		}
+
+		private OperationSnapshot snapshot() {
+			return metrics.snapshot(operation);
+		}
+
+		@Override
+		public String getOperation() {
+			return operation.name();
+		}
+
+		@Override
+		public long getCount() {
+			return snapshot().getCount();
+		}
+
+		@Override
+		public long getFailures() {
+			return snapshot().getFailures();
+		}
+
+		@Override
+		public Map<String, Long> getFailuresByCause() {
+			return snapshot().getFailuresByCause();
+		}
+
+		@Override
+		public long getBytesIn() {
+			return snapshot().getBytesIn();
+		}
+
+		@Override
+		public long getBytesOut() {
+			return snapshot().getBytesOut();
+		}
+
+		@Override
+		public double getMeanLatencyNanos() {
+			return snapshot().getMeanLatencyNanos();
+		}
+
+		@Override
+		public long getMaxLatencyNanos() {
+			return snapshot().getMaxLatencyNanos();
+		}
+
+		@Override
+		public long getLatency50thPercentileNanos() {
+			return snapshot().getLatencyPercentileNanos(50);
+		}
+
+		@Override
+		public long getLatency90thPercentileNanos() {
+			return snapshot().getLatencyPercentileNanos(90);
+		}
+
+		@Override
+		public long getLatency99thPercentileNanos() {
+			return snapshot().getLatencyPercentileNanos(99);
+		}
+
+		@Override
+		public long getLatency999thPercentileNanos() {
+			return snapshot().getLatencyPercentileNanos(99.9);
+		}
+
+	}
+
+}
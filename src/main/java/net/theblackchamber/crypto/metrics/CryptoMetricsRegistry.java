@@ -0,0 +1,60 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 Seamus Minogue
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.theblackchamber.crypto.metrics;
+
+/**
+ * Holder of the {@link CryptoMetrics} used by providers, file encryptors and
+ * secure properties which have not been given their own. Defaults to
+ * {@link NoOpCryptoMetrics}. <br>
+ * Usage: <code>
+ * DefaultCryptoMetrics metrics = new DefaultCryptoMetrics();
+ * CryptoMetricsRegistry.setMetrics(metrics);
+ * CryptoMetricsJmx.register(metrics);
+ * </code>
+ * 
+ * @author sminogue
+ * 
+ */
+public final class CryptoMetricsRegistry {
+
+	private static volatile CryptoMetrics metrics = NoOpCryptoMetrics.INSTANCE;
+
+	private CryptoMetricsRegistry() {
+	}
+
+	public static CryptoMetrics getMetrics() {
+		return metrics;
+	}
+
+	/**
+	 * Method which will set the default {@link CryptoMetrics}.
+	 * 
+	 * @param metrics
+	 *            Null to disable metrics.
+	 */
+	public static void setMetrics(CryptoMetrics metrics) {
+		CryptoMetricsRegistry.metrics = metrics == null ? NoOpCryptoMetrics.INSTANCE : metrics;
+	}
+
+}
@@ -0,0 +1,74 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 Seamus Minogue
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.theblackchamber.crypto.metrics;
+
+/**
+ * Operations recorded through {@link CryptoMetrics}.
+ * 
+ * @author sminogue
+ * 
+ */
+public enum CryptoOperation {
+
+	/**
+	 * Encryption by an
+	 * {@link net.theblackchamber.crypto.providers.EncryptionProvider2}.
+	 */
+	ENCRYPT,
+
+	/**
+	 * Decryption by an
+	 * {@link net.theblackchamber.crypto.providers.EncryptionProvider2}.
+	 */
+	DECRYPT,
+
+	/**
+	 * File or stream encryption by a
+	 * {@link net.theblackchamber.crypto.implementations.FileEncryptor2},
+	 * including I/O.
+	 */
+	ENCRYPT_FILE,
+
+	/**
+	 * File or stream decryption by a
+	 * {@link net.theblackchamber.crypto.implementations.FileEncryptor2},
+	 * including I/O.
+	 */
+	DECRYPT_FILE,
+
+	/**
+	 * Property encryption by
+	 * {@link net.theblackchamber.crypto.implementations.SecureProperties2}.
+	 * Sizes are in characters.
+	 */
+	ENCRYPT_PROPERTY,
+
+	/**
+	 * Property decryption by
+	 * {@link net.theblackchamber.crypto.implementations.SecureProperties2}.
+	 * Sizes are in characters.
+	 */
+	DECRYPT_PROPERTY
+
+}
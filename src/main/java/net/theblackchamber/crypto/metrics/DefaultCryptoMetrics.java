@@ -0,0 +1,115 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 Seamus Minogue
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.theblackchamber.crypto.metrics;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * In memory {@link CryptoMetrics} keeping, per {@link CryptoOperation}, the
+ * count, bytes in and out, failures by cause and a {@link LatencyHistogram}.
+ * Counters are {@link LongAdder}s so recording from many threads does not
+ * contend. Read with {@link #snapshot(CryptoOperation)} or export with
+ * {@link CryptoMetricsJmx}.
+ * 
+ * @author sminogue
+ * 
+ */
+public class DefaultCryptoMetrics implements CryptoMetrics {
+
+	private final OperationStats[] stats;
+
+	public DefaultCryptoMetrics() {
+		CryptoOperation[] operations = CryptoOperation.values();
+		stats = new OperationStats[operations.length];
+		for (CryptoOperation operation : operations) {
+			stats[operation.ordinal()] = new OperationStats();
+		}
+	}
+
+	@Override
+	public boolean isEnabled() {
+		return true;
+	}
+
+	@Override
+	public void record(CryptoOperation operation, long nanos, long bytesIn, long bytesOut) {
+		OperationStats operationStats = stats[operation.ordinal()];
+		operationStats.count.increment();
+		operationStats.bytesIn.add(bytesIn);
+		operationStats.bytesOut.add(bytesOut);
+		operationStats.totalNanos.add(nanos);
+		operationStats.maxNanos.accumulate(nanos);
+		operationStats.latencies.record(nanos);
+	}
+
+	@Override
+	public void recordFailure(CryptoOperation operation, Throwable cause) {
+		OperationStats operationStats = stats[operation.ordinal()];
+		operationStats.failures.increment();
+		String name = cause == null ? "Unknown" : cause.getClass().getSimpleName();
+		LongAdder byCause = operationStats.failuresByCause.get(name);
+		if (byCause == null) {
+			byCause = operationStats.failuresByCause.computeIfAbsent(name, k -> new LongAdder());
+		}
+		byCause.increment();
+	}
+
+	/**
+	 * Method which will return the current metrics of an operation.
+	 * 
+	 * @param operation
+	 * @return
+	 */
+	public OperationSnapshot snapshot(CryptoOperation operation) {
+		OperationStats operationStats = stats[operation.ordinal()];
+		Map<String, Long> failuresByCause = new HashMap<String, Long>();
+		for (Map.Entry<String, LongAdder> entry : operationStats.failuresByCause.entrySet()) {
+			failuresByCause.put(entry.getKey(), entry.getValue().sum());
+		}
+		return new OperationSnapshot(operation, operationStats.count.sum(), operationStats.failures.sum(),
+				failuresByCause, operationStats.bytesIn.sum(), operationStats.bytesOut.sum(),
+				operationStats.totalNanos.sum(), operationStats.maxNanos.get(), operationStats.latencies.snapshot());
+	}
+
+	/**
+	 * Counters of one operation.
+	 */
+	private static final class OperationStats {
+
+		private final LongAdder count = new LongAdder();
+		private final LongAdder failures = new LongAdder();
+		private final LongAdder bytesIn = new LongAdder();
+		private final LongAdder bytesOut = new LongAdder();
+		private final LongAdder totalNanos = new LongAdder();
+		private final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0);
+		private final LatencyHistogram latencies = new LatencyHistogram();
+		private final ConcurrentHashMap<String, LongAdder> failuresByCause = new ConcurrentHashMap<String, LongAdder>();
+
+	}
+
+}
@@ -0,0 +1,112 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 Seamus Minogue
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.theblackchamber.crypto.metrics;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * Point in time view of the metrics of one {@link CryptoOperation}.
+ * 
+ * @author sminogue
+ * 
+ */
+public final class OperationSnapshot {
+
+	private final CryptoOperation operation;
+	private final long count;
+	private final long failures;
+	private final Map<String, Long> failuresByCause;
+	private final long bytesIn;
+	private final long bytesOut;
+	private final long totalNanos;
+	private final long maxNanos;
+	private final long[] latencies;
+
+	OperationSnapshot(CryptoOperation operation, long count, long failures, Map<String, Long> failuresByCause,
+			long bytesIn, long bytesOut, long totalNanos, long maxNanos, long[] latencies) {
+		this.operation = operation;
+		this.count = count;
+		this.failures = failures;
+		this.failuresByCause = Collections.unmodifiableMap(failuresByCause);
+		this.bytesIn = bytesIn;
+		this.bytesOut = bytesOut;
+		this.totalNanos = totalNanos;
+		this.maxNanos = maxNanos;
+		this.latencies = latencies;
+	}
+
+	public CryptoOperation getOperation() {
+		return operation;
+	}
+
+	/**
+	 * @return Number of successful operations.
+	 */
+	public long getCount() {
+		return count;
+	}
+
+	/**
+	 * @return Number of failed operations.
+	 */
+	public long getFailures() {
+		return failures;
+	}
+
+	/**
+	 * @return Failed operations by simple class name of the exception.
+	 */
+	public Map<String, Long> getFailuresByCause() {
+		return failuresByCause;
+	}
+
+	public long getBytesIn() {
+		return bytesIn;
+	}
+
+	public long getBytesOut() {
+		return bytesOut;
+	}
+
+	public double getMeanLatencyNanos() {
+		return count == 0 ? 0 : (double) totalNanos / count;
+	}
+
+	public long getMaxLatencyNanos() {
+		return maxNanos;
+	}
+
+	/**
+	 * Method which will return a latency percentile of successful operations.
+	 * 
+	 * @param percentile
+	 *            From 0 to 100, for example 99.9.
+	 * @return Latency in nanoseconds, accurate to 12.5%.
+	 */
+	public long getLatencyPercentileNanos(double percentile) {
+		return LatencyHistogram.percentile(latencies, percentile);
+	}
+
+}
@@ -27,6 +27,7 @@ import java.io.File;
 
 import lombok.AllArgsConstructor;
 import lombok.Getter;
+import net.theblackchamber.crypto.constants.SupportedKeyTemplates;
 
 /**
  * Class used to configure key generation. 
@@ -38,4 +39,15 @@ import lombok.Getter;
 public class KeyConfig2 {
 	private File keyStoreFile = null;
 	private String keyPass;
+	private SupportedKeyTemplates keyTemplate = SupportedKeyTemplates.AES256_GCM;
+
+	/**
+	 * Constructor for an AES-256-GCM key.
+	 * 
+	 * @param keyStoreFile File the key will be written to.
+	 * @param keyPass Password used to secure the key.
+	 */
+	public KeyConfig2(File keyStoreFile, String keyPass) {
+		this(keyStoreFile, keyPass, SupportedKeyTemplates.AES256_GCM);
+	}
 }
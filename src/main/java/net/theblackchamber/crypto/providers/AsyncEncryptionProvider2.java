@@ -0,0 +1,167 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 Seamus Minogue
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package net.theblackchamber.crypto.providers;
+
+import java.security.GeneralSecurityException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+import net.theblackchamber.crypto.exceptions.MissingParameterException;
+import net.theblackchamber.crypto.util.AsyncExecutors;
+
+/**
+ * Asynchronous facade over an {@link EncryptionProvider2}. Each operation runs
+ * on an {@link Executor} and returns a {@link CompletableFuture} so callers are
+ * not parked while large payloads are processed.<br>
+ * Futures complete exceptionally with the same {@link MissingParameterException}
+ * or {@link GeneralSecurityException} the blocking call would have thrown.
+ * {@link #await(CompletableFuture)} rethrows them as such.<br>
+ * Usage: <code>
+ * AsyncEncryptionProvider2 async = new AsyncEncryptionProvider2(EncryptionProviderFactory2.getProvider(key));
+ * async.encrypt("clear text").thenAccept(cipherText -&gt; store(cipherText));
+ * </code>
+ * 
+ * @author sminogue
+ * 
+ */
+public class AsyncEncryptionProvider2 {
+
+	private final EncryptionProvider2 encryptionProvider;
+	private final Executor executor;
+
+	/**
+	 * Constructor which will run operations on the default executor. See
+	 * {@link AsyncExecutors#defaultExecutor()}.
+	 * 
+	 * @param provider
+	 * @throws MissingParameterException
+	 */
+	public AsyncEncryptionProvider2(EncryptionProvider2 provider) throws MissingParameterException {
+		this(provider, AsyncExecutors.defaultExecutor());
+	}
+
+	/**
+	 * Constructor which will run operations on the specified executor.
+	 * 
+	 * @param provider
+	 * @param executor
+	 * @throws MissingParameterException
+	 */
+	public AsyncEncryptionProvider2(EncryptionProvider2 provider, Executor executor) throws MissingParameterException {
+		if (provider == null || executor == null) {
+			throw new MissingParameterException();
+		}
+		this.encryptionProvider = provider;
+		this.executor = executor;
+	}
+
+	/**
+	 * Gets the wrapped encryption provider.
+	 * 
+	 * @return
+	 */
+	public EncryptionProvider2 getEncryptionProvider() {
+		return encryptionProvider;
+	}
+
+	/**
+	 * @see EncryptionProvider2#encrypt(byte[])
+	 */
+	public CompletableFuture<byte[]> encrypt(byte[] clearText) {
+		return AsyncExecutors.supplyAsync(() -> encryptionProvider.encrypt(clearText), executor);
+	}
+
+	/**
+	 * @see EncryptionProvider2#encrypt(byte[], byte[])
+	 */
+	public CompletableFuture<byte[]> encrypt(byte[] clearText, byte[] associated) {
+		return AsyncExecutors.supplyAsync(() -> encryptionProvider.encrypt(clearText, associated), executor);
+	}
+
+	/**
+	 * @see EncryptionProvider2#decrypt(byte[])
+	 */
+	public CompletableFuture<byte[]> decrypt(byte[] cipherText) {
+		return AsyncExecutors.supplyAsync(() -> encryptionProvider.decrypt(cipherText), executor);
+	}
+
+	/**
+	 * @see EncryptionProvider2#decrypt(byte[], byte[])
+	 */
+	public CompletableFuture<byte[]> decrypt(byte[] cipherText, byte[] associated) {
+		return AsyncExecutors.supplyAsync(() -> encryptionProvider.decrypt(cipherText, associated), executor);
+	}
+
+	/**
+	 * @see EncryptionProvider2#encrypt(String)
+	 */
+	public CompletableFuture<String> encrypt(String clearText) {
+		return AsyncExecutors.supplyAsync(() -> encryptionProvider.encrypt(clearText), executor);
+	}
+
+	/**
+	 * @see EncryptionProvider2#encrypt(String, String)
+	 */
+	public CompletableFuture<String> encrypt(String clearText, String associated) {
+		return AsyncExecutors.supplyAsync(() -> encryptionProvider.encrypt(clearText, associated), executor);
+	}
+
+	/**
+	 * @see EncryptionProvider2#decrypt(String)
+	 */
+	public CompletableFuture<String> decrypt(String cipherText) {
+		return AsyncExecutors.supplyAsync(() -> encryptionProvider.decrypt(cipherText), executor);
+	}
+
+	/**
+	 * @see EncryptionProvider2#decrypt(String, String)
+	 */
+	public CompletableFuture<String> decrypt(String cipherText, String associated) {
+		return AsyncExecutors.supplyAsync(() -> encryptionProvider.decrypt(cipherText, associated), executor);
+	}
+
+	/**
+	 * Method which will wait for an operation started by this facade and
+	 * return its result. Failures are rethrown as the checked exception of the
+	 * blocking API. A cancelled or interrupted wait is reported as a
+	 * {@link GeneralSecurityException}.
+	 * 
+	 * @param future
+	 * @return
+	 * @throws MissingParameterException
+	 * @throws GeneralSecurityException
+	 */
+	public static <T> T await(CompletableFuture<T> future) throws MissingParameterException, GeneralSecurityException {
+		try {
+			return AsyncExecutors.await(future, MissingParameterException.class);
+		} catch (MissingParameterException | GeneralSecurityException | RuntimeException e) {
+			throw e;
+		} catch (Exception e) {
+			// Unreachable, AsyncExecutors only rethrows the listed types.
+			throw new GeneralSecurityException(e.getMessage(), e);
+		}
+	}
+
+}
@@ -0,0 +1,131 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 Seamus Minogue
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package net.theblackchamber.crypto.providers;
+
+import java.security.GeneralSecurityException;
+import java.util.concurrent.RecursiveAction;
+
+import net.theblackchamber.crypto.exceptions.MissingParameterException;
+
+/**
+ * Fork join task which will apply an encryption operation to a range of a
+ * batch, splitting the range until it is no larger than the grain size.
+ * Results are written at the index of their input so batch order is kept.
+ * 
+ * @author sminogue
+ * 
+ */
+final class BatchTask extends RecursiveAction {
+
+	private static final long serialVersionUID = -3720189469541165243L;
+
+	/**
+	 * Operation applied to each item of a batch.
+	 */
+	interface Operation {
+		byte[] apply(byte[] input, byte[] associated) throws MissingParameterException, GeneralSecurityException;
+	}
+
+	private final Operation operation;
+	private final byte[][] inputs;
+	private final byte[][] associated;
+	private final byte[][] results;
+	private final int from;
+	private final int to;
+	private final int grain;
+
+	BatchTask(Operation operation, byte[][] inputs, byte[][] associated, byte[][] results, int from, int to,
+			int grain) {
+		this.operation = operation;
+		this.inputs = inputs;
+		this.associated = associated;
+		this.results = results;
+		this.from = from;
+		this.to = to;
+		this.grain = grain;
+	}
+
+	@Override
+	protected void compute() {
+		if (to - from <= grain) {
+			try {
+				apply(operation, inputs, associated, results, from, to);
+			} catch (MissingParameterException | GeneralSecurityException e) {
+				throw new Failure(e);
+			}
+			return;
+		}
+		int middle = (from + to) >>> 1;
+		invokeAll(new BatchTask(operation, inputs, associated, results, from, middle, grain),
+				new BatchTask(operation, inputs, associated, results, middle, to, grain));
+	}
+
+	/**
+	 * Method which will apply the operation to a range of a batch on the
+	 * calling thread.
+	 */
+	static void apply(Operation operation, byte[][] inputs, byte[][] associated, byte[][] results, int from, int to)
+			throws MissingParameterException, GeneralSecurityException {
+		for (int i = from; i < to; i++) {
+			results[i] = operation.apply(inputs[i], associated == null ? null : associated[i]);
+		}
+	}
+
+	/**
+	 * Method which will rethrow the checked exception carried by a failed
+	 * batch. Fork join may wrap the original failure when it crosses threads
+	 * so the whole cause chain is searched.
+	 * 
+	 * @param failure
+	 * @throws MissingParameterException
+	 * @throws GeneralSecurityException
+	 */
+	static void rethrow(RuntimeException failure) throws MissingParameterException, GeneralSecurityException {
+		for (Throwable t = failure; t != null; t = t.getCause()) {
+			if (t instanceof MissingParameterException) {
+				throw (MissingParameterException) t;
+			}
+			if (t instanceof GeneralSecurityException) {
+				throw (GeneralSecurityException) t;
+			}
+		}
+		throw failure;
+	}
+
+	/**
+	 * Carries a checked exception out of the fork join pool. No stack trace is
+	 * captured, the cause already has one.
+	 */
+	static final class Failure extends RuntimeException {
+
+		private static final long serialVersionUID = 4413905346017796452L;
+
+		Failure(Throwable cause) {
+			super(cause.getMessage(), cause, false, false);
+		}
+
+	}
+
+}
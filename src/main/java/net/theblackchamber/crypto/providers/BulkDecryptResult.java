@@ -0,0 +1,163 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 Seamus Minogue
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.theblackchamber.crypto.providers;
+
+/**
+ * Result of {@link EncryptionProvider2#decryptEach(byte[][], byte[][])}: the
+ * clear text and a status code for each ciphertext of a batch, in input
+ * order. Failed items have a null clear text and are reported by status only.
+ * MISSING, MALFORMED and UNKNOWN_KEY items are classified without decrypting.
+ * For AUTH_FAILED items the AEAD providers build no exception of their own,
+ * but the JCE still raises one for each key whose tag check fails, since it
+ * reports failed authentication no other way. Other providers decrypt through
+ * their throwing path.
+ * 
+ * @author sminogue
+ * 
+ */
+public final class BulkDecryptResult {
+
+	/**
+	 * Decrypted successfully.
+	 */
+	public static final byte OK = 0;
+
+	/**
+	 * Ciphertext was null or empty.
+	 */
+	public static final byte MISSING = 1;
+
+	/**
+	 * Ciphertext is too short or not in a format the keyset can produce.
+	 */
+	public static final byte MALFORMED = 2;
+
+	/**
+	 * Ciphertext names a key which is not in the keyset, for example one
+	 * removed by rotation.
+	 */
+	public static final byte UNKNOWN_KEY = 3;
+
+	/**
+	 * Ciphertext failed authentication: it was tampered with, the associated
+	 * data differs or it was encrypted with another key.
+	 */
+	public static final byte AUTH_FAILED = 4;
+
+	final byte[][] clearTexts;
+	final byte[] statuses;
+
+	BulkDecryptResult(int size) {
+		this.clearTexts = new byte[size][];
+		this.statuses = new byte[size];
+	}
+
+	/**
+	 * @return Number of items in the batch.
+	 */
+	public int size() {
+		return statuses.length;
+	}
+
+	/**
+	 * Method which will return the status of an item.
+	 * 
+	 * @param index
+	 * @return One of the status constants of this class.
+	 */
+	public byte getStatus(int index) {
+		return statuses[index];
+	}
+
+	/**
+	 * Method which will return the clear text of an item.
+	 * 
+	 * @param index
+	 * @return Clear text, or null if the item did not decrypt.
+	 */
+	public byte[] getClearText(int index) {
+		return clearTexts[index];
+	}
+
+	public boolean isOk(int index) {
+		return statuses[index] == OK;
+	}
+
+	/**
+	 * Method which will return the clear texts of the batch. The array is not
+	 * copied.
+	 * 
+	 * @return
+	 */
+	public byte[][] getClearTexts() {
+		return clearTexts;
+	}
+
+	/**
+	 * Method which will return the status codes of the batch. The array is not
+	 * copied.
+	 * 
+	 * @return
+	 */
+	public byte[] getStatuses() {
+		return statuses;
+	}
+
+	/**
+	 * @return Number of items which did not decrypt.
+	 */
+	public int getFailureCount() {
+		int failures = 0;
+		for (byte status : statuses) {
+			if (status != OK) {
+				failures++;
+			}
+		}
+		return failures;
+	}
+
+	/**
+	 * Method which will return the name of a status code, for logging.
+	 * 
+	 * @param status
+	 * @return
+	 */
+	public static String getStatusName(byte status) {
+		switch (status) {
+		case OK:
+			return "OK";
+		case MISSING:
+			return "MISSING";
+		case MALFORMED:
+			return "MALFORMED";
+		case UNKNOWN_KEY:
+			return "UNKNOWN_KEY";
+		case AUTH_FAILED:
+			return "AUTH_FAILED";
+		default:
+			return "UNKNOWN_STATUS_" + status;
+		}
+	}
+
+}
@@ -0,0 +1,77 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 Seamus Minogue
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.theblackchamber.crypto.providers;
+
+import java.security.GeneralSecurityException;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Fork join task which will decrypt a range of a batch with status codes,
+ * splitting the range until it is no larger than the grain size. See
+ * {@link BatchTask}.
+ * 
+ * @author sminogue
+ * 
+ */
+final class BulkDecryptTask extends RecursiveAction {
+
+	private static final long serialVersionUID = 6630412805728377529L;
+
+	private final EncryptionProvider2 provider;
+	private final byte[][] cipherTexts;
+	private final byte[][] associated;
+	private final BulkDecryptResult result;
+	private final int minimumLength;
+	private final int from;
+	private final int to;
+	private final int grain;
+
+	BulkDecryptTask(EncryptionProvider2 provider, byte[][] cipherTexts, byte[][] associated, BulkDecryptResult result,
+			int minimumLength, int from, int to, int grain) {
+		this.provider = provider;
+		this.cipherTexts = cipherTexts;
+		this.associated = associated;
+		this.result = result;
+		this.minimumLength = minimumLength;
+		this.from = from;
+		this.to = to;
+		this.grain = grain;
+	}
+
+	@Override
+	protected void compute() {
+		if (to - from <= grain) {
+			try {
+				provider.decryptItems(cipherTexts, associated, result, minimumLength, from, to);
+			} catch (GeneralSecurityException e) {
+				throw new BatchTask.Failure(e);
+			}
+			return;
+		}
+		int middle = (from + to) >>> 1;
+		invokeAll(new BulkDecryptTask(provider, cipherTexts, associated, result, minimumLength, from, middle, grain),
+				new BulkDecryptTask(provider, cipherTexts, associated, result, minimumLength, middle, to, grain));
+	}
+
+}
@@ -0,0 +1,197 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 Seamus Minogue
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.theblackchamber.crypto.providers;
+
+import java.security.GeneralSecurityException;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.commons.lang3.StringUtils;
+import org.jasypt.exceptions.EncryptionOperationNotPossibleException;
+
+import net.theblackchamber.crypto.constants.CiphertextFormat;
+import net.theblackchamber.crypto.exceptions.MissingParameterException;
+import net.theblackchamber.crypto.providers.codec.Base64CiphertextCodec;
+
+/**
+ * Decrypter for stores holding a mix of 1.x and 2.x ciphertext, for use while
+ * migrating. Each value is classified from its encoding and header and sent
+ * to the provider which produced it, rather than tried against one provider
+ * and retried against the other. <br>
+ * 1.x values are upper case hexadecimal. 2.x values are Base64 whose first
+ * byte is the Tink output prefix (0x01, or 0x00 for legacy keys), so they
+ * start with <code>A</code> followed by a character in <code>A-Za-f</code>.
+ * Only the first {@value #SAMPLE_LENGTH} characters are examined. Values
+ * matching neither, such as those of RAW Tink keys, are tried against the 2.x
+ * provider and then the 1.x provider. A 2.x value can also be upper case
+ * hexadecimal by chance, so values the 1.x provider fails to decrypt are
+ * retried against the 2.x provider. <br>
+ * Counts per format are kept to track migration progress. <br>
+ * Usage: <code>
+ * CiphertextFormatRouter router = new CiphertextFormatRouter(legacyProvider, encryptionProvider);
+ * String clearText = router.decrypt(storedValue);
+ * long remaining = router.getCount(CiphertextFormat.V1_HEX);
+ * </code>
+ * 
+ * @author sminogue
+ * 
+ */
+public class CiphertextFormatRouter {
+
+	/**
+	 * Number of leading characters examined when classifying.
+	 */
+	public static final int SAMPLE_LENGTH = 16;
+
+	private final EncryptionProvider legacyProvider;
+	private final EncryptionProvider2 encryptionProvider;
+	private final LongAdder[] counts;
+
+	/**
+	 * @param legacyProvider
+	 *            Provider for 1.x ciphertext.
+	 * @param encryptionProvider
+	 *            Provider for 2.x ciphertext. Must use a Base64 codec, which
+	 *            is the default.
+	 * @throws MissingParameterException
+	 */
+	public CiphertextFormatRouter(EncryptionProvider legacyProvider, EncryptionProvider2 encryptionProvider)
+			throws MissingParameterException {
+
+		if (legacyProvider == null || encryptionProvider == null) {
+			throw new MissingParameterException("Missing parameter: provider");
+		}
+		if (!(encryptionProvider.getCodec() instanceof Base64CiphertextCodec)) {
+			throw new IllegalArgumentException("Routing requires a Base64 codec on the 2.x provider");
+		}
+
+		this.legacyProvider = legacyProvider;
+		this.encryptionProvider = encryptionProvider;
+		this.counts = new LongAdder[CiphertextFormat.values().length];
+		for (int i = 0; i < counts.length; i++) {
+			counts[i] = new LongAdder();
+		}
+	}
+
+	/**
+	 * Method which will classify a ciphertext without decrypting it.
+	 * 
+	 * @param cipherText
+	 * @return
+	 */
+	public static CiphertextFormat classify(CharSequence cipherText) {
+
+		if (cipherText == null || cipherText.length() == 0) {
+			return CiphertextFormat.UNKNOWN;
+		}
+
+		int length = cipherText.length();
+		int sample = Math.min(length, SAMPLE_LENGTH);
+		boolean hex = (length & 1) == 0;
+		for (int i = 0; i < sample && hex; i++) {
+			char c = cipherText.charAt(i);
+			hex = (c >= '0' && c <= '9') || (c >= 'A' && c <= 'F');
+		}
+		if (hex) {
+			return CiphertextFormat.V1_HEX;
+		}
+
+		if (length >= 2 && cipherText.charAt(0) == 'A') {
+			char c = cipherText.charAt(1);
+			// Second sextet holds the low bits of the prefix byte, so is 0-31.
+			if ((c >= 'A' && c <= 'Z') || (c >= 'a' && c <= 'f')) {
+				return CiphertextFormat.V2_TINK;
+			}
+		}
+
+		return CiphertextFormat.UNKNOWN;
+	}
+
+	/**
+	 * Method which will decrypt a ciphertext with the provider matching its
+	 * format.
+	 * 
+	 * @param cipherText
+	 * @return Clear text.
+	 * @throws MissingParameterException
+	 * @throws GeneralSecurityException
+	 *             If the 2.x provider fails to decrypt a value not classified
+	 *             as {@link CiphertextFormat#V1_HEX}.
+	 * @throws EncryptionOperationNotPossibleException
+	 *             If neither provider decrypts a value classified as
+	 *             {@link CiphertextFormat#V1_HEX}.
+	 */
+	public String decrypt(String cipherText) throws MissingParameterException, GeneralSecurityException {
+
+		if (StringUtils.isBlank(cipherText)) {
+			throw new MissingParameterException("Missing parameter: cipherText");
+		}
+
+		CiphertextFormat format = classify(cipherText);
+		counts[format.ordinal()].increment();
+
+		switch (format) {
+		case V1_HEX:
+			try {
+				return legacyProvider.decrypt(cipherText);
+			} catch (EncryptionOperationNotPossibleException e) {
+				try {
+					return encryptionProvider.decrypt(cipherText);
+				} catch (GeneralSecurityException | IllegalArgumentException e2) {
+					throw e;
+				}
+			}
+
+		case V2_TINK:
+			return encryptionProvider.decrypt(cipherText);
+
+		default:
+			try {
+				return encryptionProvider.decrypt(cipherText);
+			} catch (GeneralSecurityException | IllegalArgumentException e) {
+				return legacyProvider.decrypt(cipherText);
+			}
+		}
+	}
+
+	/**
+	 * Method which will return the number of values of a format decrypted by
+	 * this router.
+	 * 
+	 * @param format
+	 * @return
+	 */
+	public long getCount(CiphertextFormat format) {
+		return counts[format.ordinal()].sum();
+	}
+
+	/**
+	 * Method which will reset the counts.
+	 */
+	public void resetCounts() {
+		for (LongAdder count : counts) {
+			count.reset();
+		}
+	}
+
+}
@@ -24,19 +24,35 @@
  */
 package net.theblackchamber.crypto.providers;
 
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.security.GeneralSecurityException;
-import java.util.Base64;
-import java.util.Base64.Decoder;
-import java.util.Base64.Encoder;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import javax.crypto.ShortBufferException;
 
 import org.apache.commons.lang3.StringUtils;
 
+import com.google.crypto.tink.CryptoFormat;
 import com.google.crypto.tink.KeysetHandle;
+import com.google.crypto.tink.proto.KeyStatusType;
+import com.google.crypto.tink.proto.KeysetInfo.KeyInfo;
+import com.google.crypto.tink.proto.OutputPrefixType;
 
+import lombok.AccessLevel;
 import lombok.Getter;
 import lombok.NonNull;
 import lombok.RequiredArgsConstructor;
+import net.theblackchamber.crypto.constants.SupportedCiphertextCodecs;
+import net.theblackchamber.crypto.constants.SupportedKeyTemplates;
 import net.theblackchamber.crypto.exceptions.MissingParameterException;
+import net.theblackchamber.crypto.jfr.CryptoEvents;
+import net.theblackchamber.crypto.metrics.CryptoMetrics;
+import net.theblackchamber.crypto.metrics.CryptoMetricsRegistry;
+import net.theblackchamber.crypto.metrics.CryptoOperation;
+import net.theblackchamber.crypto.providers.codec.CiphertextCodec;
 
 /**
  * Abstract class which will be the base for all Encryption providers. This is
@@ -50,21 +66,140 @@ import net.theblackchamber.crypto.exceptions.MissingParameterException;
 @RequiredArgsConstructor
 public abstract class EncryptionProvider2 {
 
+	/**
+	 * Default batch size below which batch operations run on the calling
+	 * thread.
+	 */
+	public static final int DEFAULT_PARALLEL_THRESHOLD = 64;
+
 	/**
 	 * Encryption {@link KeysetHandle} to be used for encryption and decryption
 	 * options.
 	 */
 	@NonNull
-	private KeysetHandle key;
+	private volatile KeysetHandle key;
+
+	/**
+	 * Codec converting ciphertext to and from text in the string methods.
+	 */
+	private volatile CiphertextCodec codec = SupportedCiphertextCodecs.BASE64.getCodec();
+
+	/**
+	 * Ciphertext sizing measured for the key currently in use.
+	 */
+	@Getter(AccessLevel.NONE)
+	private volatile Sizing sizing;
+
+	/**
+	 * Pool used by batch operations. Null to use the common pool.
+	 */
+	@Getter(AccessLevel.NONE)
+	private volatile ForkJoinPool batchPool;
+
+	/**
+	 * Batch size from which batch operations are split across the pool.
+	 */
+	private volatile int parallelThreshold = DEFAULT_PARALLEL_THRESHOLD;
+
+	/**
+	 * Metrics operations are recorded to. Null to use
+	 * {@link CryptoMetricsRegistry#getMetrics()}.
+	 */
+	@Getter(AccessLevel.NONE)
+	private volatile CryptoMetrics metrics;
 
-	Encoder encoder = Base64.getEncoder();
-	Decoder decoder = Base64.getDecoder();
+	/**
+	 * True for providers returned by
+	 * {@link EncryptionProviderFactory2#getSharedProvider(KeysetHandle)}, whose
+	 * settings can not be changed since every user of the keyset would see
+	 * the change.
+	 */
+	private volatile boolean shared;
 	
+	/**
+	 * Method which will set the {@link KeysetHandle} to be used by the instance
+	 * of this provider. Implementations which cache primitives resolved from the
+	 * key are expected to detect the change and resolve them again.
+	 * 
+	 * @param key
+	 *            {@link KeysetHandle} to be used for encryption and decryption.
+	 */
+	protected void setKey(@NonNull KeysetHandle key) {
+		this.key = key;
+	}
+
+	/**
+	 * Method which will make the settings of this provider read only. Called
+	 * by {@link EncryptionProviderFactory2} before sharing it.
+	 */
+	void markShared() {
+		this.shared = true;
+	}
+
+	private void checkNotShared() {
+		if (shared) {
+			throw new UnsupportedOperationException(
+					"Settings of a shared provider can not be changed, use EncryptionProviderFactory2.getProvider for a private instance");
+		}
+	}
+
+	/**
+	 * Method which will set the codec used by the string methods to convert
+	 * ciphertext to and from text. Defaults to
+	 * {@link SupportedCiphertextCodecs#BASE64}. Text must be decrypted with the
+	 * codec it was encrypted with.
+	 * 
+	 * @param codec
+	 * @throws UnsupportedOperationException
+	 *             If the provider is shared.
+	 */
+	public void setCodec(@NonNull CiphertextCodec codec) {
+		checkNotShared();
+		this.codec = codec;
+	}
+
+	/**
+	 * Method which will set the codec used by the string methods.
+	 * 
+	 * @param codec
+	 * @throws UnsupportedOperationException
+	 *             If the provider is shared.
+	 */
+	public void setCodec(@NonNull SupportedCiphertextCodecs codec) {
+		checkNotShared();
+		this.codec = codec.getCodec();
+	}
+
+	/**
+	 * Method which will set the {@link CryptoMetrics} this provider records
+	 * encryption and decryption to.
+	 * 
+	 * @param metrics
+	 *            Null to use {@link CryptoMetricsRegistry#getMetrics()}.
+	 * @throws UnsupportedOperationException
+	 *             If the provider is shared.
+	 */
+	public void setMetrics(CryptoMetrics metrics) {
+		checkNotShared();
+		this.metrics = metrics;
+	}
+
+	/**
+	 * Method which will return the {@link CryptoMetrics} this provider records
+	 * to.
+	 * 
+	 * @return
+	 */
+	public CryptoMetrics getMetrics() {
+		CryptoMetrics current = metrics;
+		return current == null ? CryptoMetricsRegistry.getMetrics() : current;
+	}
+
 	protected abstract byte[] performEncryption(byte[] data, byte[] associated) throws GeneralSecurityException;
 	protected abstract byte[] performDecryption(byte[] data, byte[] associated) throws GeneralSecurityException;
 
 	/**
-	 * Method which will decrypt a string.
+	 * Method which will decrypt a string. The clear text is decoded as UTF-8.
 	 * 
 	 * @param cipherText Encrypted text to be decrypted.
 	 * @return
@@ -73,11 +208,7 @@ public abstract class EncryptionProvider2 {
 	 */
 	public String decrypt(String cipherText, String associated)
 			throws MissingParameterException, GeneralSecurityException {
-
-		if (StringUtils.isBlank(cipherText)) {
-			throw new MissingParameterException("Missing parameter: cipherText");
-		}
-		return new String(performDecryption(decoder.decode(cipherText), associated.getBytes()));
+		return decrypt((CharSequence) cipherText, (CharSequence) associated);
 	}
 
 	/**
@@ -93,7 +224,7 @@ public abstract class EncryptionProvider2 {
 	}
 
 	/**
-	 * Method which will encrypt a string.
+	 * Method which will encrypt a string. The clear text is encoded as UTF-8.
 	 * 
 	 * @param clearText Clear text to be encrypted.
 	 * @return Encrypted text.
@@ -102,13 +233,116 @@ public abstract class EncryptionProvider2 {
 	 */
 	public String encrypt(String clearText, String associated)
 			throws MissingParameterException, GeneralSecurityException {
+		return encrypt((CharSequence) clearText, (CharSequence) associated);
+	}
+
+	/**
+	 * Method which will encrypt text. The text and associated data are
+	 * encoded as UTF-8 through per thread scratch buffers, so the result does
+	 * not depend on the default charset of the host and no intermediate
+	 * arrays are allocated for them.
+	 * 
+	 * @param clearText
+	 *            Clear text to be encrypted.
+	 * @param associated
+	 *            Associated data. May be null.
+	 * @return Ciphertext encoded with the codec of this provider.
+	 * @throws MissingParameterException
+	 * @throws GeneralSecurityException
+	 */
+	public String encrypt(CharSequence clearText, CharSequence associated)
+			throws MissingParameterException, GeneralSecurityException {
 
 		if (StringUtils.isBlank(clearText)) {
 			throw new MissingParameterException("Missing parameter: clearText");
 		}
 
-		return encoder.encodeToString(performEncryption(clearText.getBytes(), associated.getBytes()));
+		Utf8Scratch scratch = Utf8Scratch.acquire();
+		try {
+			ByteBuffer src = scratch.encodeClearText(clearText);
+			ByteBuffer ad = scratch.encodeAssociated(associated);
+
+			byte[] cipherText = new byte[ciphertextLength(src.remaining())];
+			int written = encryptBuffer(src, ad, ByteBuffer.wrap(cipherText));
+			if (written != cipherText.length) {
+				cipherText = Arrays.copyOf(cipherText, written);
+			}
+
+			CiphertextCodec textCodec = codec;
+			byte[] encoded = scratch.encoded(textCodec.encodedLength(cipherText.length));
+			int length = textCodec.encode(cipherText, 0, cipherText.length, encoded, 0);
+			return new String(encoded, 0, length, StandardCharsets.ISO_8859_1);
+		} finally {
+			scratch.release();
+		}
+	}
+
+	/**
+	 * Method which will decrypt text. See
+	 * {@link #encrypt(CharSequence, CharSequence)}.
+	 * 
+	 * @param cipherText
+	 *            Ciphertext encoded with the codec of this provider.
+	 * @param associated
+	 *            Associated data. May be null.
+	 * @return Clear text.
+	 * @throws MissingParameterException
+	 * @throws GeneralSecurityException
+	 */
+	public String decrypt(CharSequence cipherText, CharSequence associated)
+			throws MissingParameterException, GeneralSecurityException {
 
+		if (StringUtils.isBlank(cipherText)) {
+			throw new MissingParameterException("Missing parameter: cipherText");
+		}
+
+		Utf8Scratch scratch = Utf8Scratch.acquire();
+		try {
+			return scratch.decodeToString(decryptToScratch(scratch, cipherText, associated));
+		} finally {
+			scratch.release();
+		}
+	}
+
+	/**
+	 * Method which will decrypt text into a char array rather than a
+	 * {@link String}, so secrets such as passwords can be zeroed by the caller
+	 * once used. No other copy of the clear text outlives the call.
+	 * 
+	 * @param cipherText
+	 *            Ciphertext encoded with the codec of this provider.
+	 * @param associated
+	 *            Associated data. May be null.
+	 * @return Clear text.
+	 * @throws MissingParameterException
+	 * @throws GeneralSecurityException
+	 */
+	public char[] decryptToChars(CharSequence cipherText, CharSequence associated)
+			throws MissingParameterException, GeneralSecurityException {
+
+		if (StringUtils.isBlank(cipherText)) {
+			throw new MissingParameterException("Missing parameter: cipherText");
+		}
+
+		Utf8Scratch scratch = Utf8Scratch.acquire();
+		try {
+			return scratch.decodeToChars(decryptToScratch(scratch, cipherText, associated));
+		} finally {
+			scratch.release();
+		}
+	}
+
+	/**
+	 * Method which will decrypt text into a char array.
+	 * 
+	 * @param cipherText
+	 *            Ciphertext encoded with the codec of this provider.
+	 * @return Clear text.
+	 * @throws MissingParameterException
+	 * @throws GeneralSecurityException
+	 */
+	public char[] decryptToChars(CharSequence cipherText) throws MissingParameterException, GeneralSecurityException {
+		return decryptToChars(cipherText, null);
 	}
 
 	public byte[] encrypt(byte[] clearText, byte[] associated)
@@ -122,7 +356,7 @@ public abstract class EncryptionProvider2 {
 			associated = new byte[0];
 		}
 		
-		return performEncryption(clearText, associated);
+		return encryptBytes(clearText, associated);
 
 	}
 	
@@ -133,7 +367,7 @@ public abstract class EncryptionProvider2 {
 			throw new MissingParameterException("Missing parameter: clearText");
 		}
 
-		return performEncryption(clearText, null);
+		return encryptBytes(clearText, null);
 
 	}
 	
@@ -148,7 +382,7 @@ public abstract class EncryptionProvider2 {
 			associated = new byte[0];
 		}
 		
-		return performDecryption(cipherText, associated);
+		return decryptBytes(cipherText, associated);
 
 	}
 	
@@ -159,7 +393,7 @@ public abstract class EncryptionProvider2 {
 			throw new MissingParameterException("Missing parameter: cipherText");
 		}
 
-		return performDecryption(cipherText, null);
+		return decryptBytes(cipherText, null);
 
 	}
 	
@@ -177,4 +411,784 @@ public abstract class EncryptionProvider2 {
 
 	}
 
+	/**
+	 * Method which will encrypt a range of an array into a caller supplied
+	 * output array. Together with {@link #ciphertextLength(int)} this allows
+	 * callers to reuse their buffers rather than allocate per operation.
+	 * 
+	 * @param clearText
+	 *            Array containing the clear text to be encrypted.
+	 * @param offset
+	 *            Offset of the clear text within the array.
+	 * @param length
+	 *            Length of the clear text.
+	 * @param associated
+	 *            Associated data. May be null.
+	 * @param output
+	 *            Array the ciphertext will be written to.
+	 * @param outputOffset
+	 *            Offset within output to start writing at. At least
+	 *            {@link #ciphertextLength(int)} bytes must be available.
+	 * @return Number of bytes written to output.
+	 * @throws MissingParameterException
+	 * @throws GeneralSecurityException
+	 *             ShortBufferException if output is too small.
+	 */
+	public int encrypt(byte[] clearText, int offset, int length, byte[] associated, byte[] output,
+			int outputOffset) throws MissingParameterException, GeneralSecurityException {
+
+		if (clearText == null || length == 0) {
+			throw new MissingParameterException("Missing parameter: clearText");
+		}
+		if (output == null) {
+			throw new MissingParameterException("Missing parameter: output");
+		}
+
+		return encrypt(ByteBuffer.wrap(clearText, offset, length), associated == null ? null : ByteBuffer.wrap(associated),
+				ByteBuffer.wrap(output, outputOffset, output.length - outputOffset));
+	}
+
+	/**
+	 * Method which will decrypt a range of an array into a caller supplied
+	 * output array. Together with {@link #plaintextLength(int)} this allows
+	 * callers to reuse their buffers rather than allocate per operation.
+	 * 
+	 * @param cipherText
+	 *            Array containing the ciphertext to be decrypted.
+	 * @param offset
+	 *            Offset of the ciphertext within the array.
+	 * @param length
+	 *            Length of the ciphertext.
+	 * @param associated
+	 *            Associated data. May be null.
+	 * @param output
+	 *            Array the clear text will be written to.
+	 * @param outputOffset
+	 *            Offset within output to start writing at. At least
+	 *            {@link #plaintextLength(int)} bytes must be available.
+	 * @return Number of bytes written to output.
+	 * @throws MissingParameterException
+	 * @throws GeneralSecurityException
+	 *             ShortBufferException if output is too small.
+	 */
+	public int decrypt(byte[] cipherText, int offset, int length, byte[] associated, byte[] output,
+			int outputOffset) throws MissingParameterException, GeneralSecurityException {
+
+		if (cipherText == null || length == 0) {
+			throw new MissingParameterException("Missing parameter: cipherText");
+		}
+		if (output == null) {
+			throw new MissingParameterException("Missing parameter: output");
+		}
+
+		return decrypt(ByteBuffer.wrap(cipherText, offset, length), associated == null ? null : ByteBuffer.wrap(associated),
+				ByteBuffer.wrap(output, outputOffset, output.length - outputOffset));
+	}
+
+	/**
+	 * Method which will return the {@link ForkJoinPool} batch operations are
+	 * split across. Defaults to the common pool.
+	 * 
+	 * @return
+	 */
+	public ForkJoinPool getBatchPool() {
+		ForkJoinPool pool = batchPool;
+		return pool == null ? ForkJoinPool.commonPool() : pool;
+	}
+
+	/**
+	 * Method which will set the {@link ForkJoinPool} batch operations are split
+	 * across.
+	 * 
+	 * @param batchPool
+	 *            Pool to use, or null for the common pool.
+	 * @throws UnsupportedOperationException
+	 *             If the provider is shared.
+	 */
+	public void setBatchPool(ForkJoinPool batchPool) {
+		checkNotShared();
+		this.batchPool = batchPool;
+	}
+
+	/**
+	 * Method which will set the batch size from which batch operations are
+	 * split across the batch pool. Smaller batches run on the calling thread.
+	 * 
+	 * @param parallelThreshold
+	 *            Minimum batch size to parallelize.
+	 * @throws UnsupportedOperationException
+	 *             If the provider is shared.
+	 */
+	public void setParallelThreshold(int parallelThreshold) {
+		checkNotShared();
+		if (parallelThreshold < 1) {
+			throw new IllegalArgumentException("Parallel threshold must be positive: " + parallelThreshold);
+		}
+		this.parallelThreshold = parallelThreshold;
+	}
+
+	/**
+	 * Method which will encrypt a batch of independent values. Results are
+	 * returned in input order.
+	 * 
+	 * @param clearTexts
+	 *            Values to be encrypted.
+	 * @return Encrypted values.
+	 * @throws MissingParameterException
+	 * @throws GeneralSecurityException
+	 */
+	public byte[][] encryptAll(byte[][] clearTexts) throws MissingParameterException, GeneralSecurityException {
+		return encryptAll(clearTexts, null);
+	}
+
+	/**
+	 * Method which will encrypt a batch of independent values, each with its
+	 * own associated data. Batches of at least the parallel threshold are split
+	 * across the batch pool. Results are returned in input order.
+	 * 
+	 * @param clearTexts
+	 *            Values to be encrypted.
+	 * @param associated
+	 *            Associated data per value, same length as clearTexts. May be
+	 *            null, as may individual entries.
+	 * @return Encrypted values.
+	 * @throws MissingParameterException
+	 *             If any value is missing.
+	 * @throws GeneralSecurityException
+	 */
+	public byte[][] encryptAll(byte[][] clearTexts, byte[][] associated)
+			throws MissingParameterException, GeneralSecurityException {
+		return processAll(this::encrypt, clearTexts, associated);
+	}
+
+	/**
+	 * Method which will encrypt a batch of independent values, each with its
+	 * own associated data. See {@link #encryptAll(byte[][], byte[][])}.
+	 * 
+	 * @param clearTexts
+	 * @param associated
+	 *            May be null.
+	 * @return Encrypted values in input order.
+	 * @throws MissingParameterException
+	 * @throws GeneralSecurityException
+	 */
+	public List<byte[]> encryptAll(List<byte[]> clearTexts, List<byte[]> associated)
+			throws MissingParameterException, GeneralSecurityException {
+		if (clearTexts == null) {
+			throw new MissingParameterException("Missing parameter: clearTexts");
+		}
+		return Arrays.asList(encryptAll(clearTexts.toArray(new byte[0][]),
+				associated == null ? null : associated.toArray(new byte[0][])));
+	}
+
+	/**
+	 * Method which will decrypt a batch of independent values. Results are
+	 * returned in input order.
+	 * 
+	 * @param cipherTexts
+	 *            Values to be decrypted.
+	 * @return Decrypted values.
+	 * @throws MissingParameterException
+	 * @throws GeneralSecurityException
+	 */
+	public byte[][] decryptAll(byte[][] cipherTexts) throws MissingParameterException, GeneralSecurityException {
+		return decryptAll(cipherTexts, null);
+	}
+
+	/**
+	 * Method which will decrypt a batch of independent values, each with its
+	 * own associated data. Batches of at least the parallel threshold are split
+	 * across the batch pool. Results are returned in input order.
+	 * 
+	 * @param cipherTexts
+	 *            Values to be decrypted.
+	 * @param associated
+	 *            Associated data per value, same length as cipherTexts. May be
+	 *            null, as may individual entries.
+	 * @return Decrypted values.
+	 * @throws MissingParameterException
+	 *             If any value is missing.
+	 * @throws GeneralSecurityException
+	 *             If any value fails to decrypt.
+	 */
+	public byte[][] decryptAll(byte[][] cipherTexts, byte[][] associated)
+			throws MissingParameterException, GeneralSecurityException {
+		return processAll(this::decrypt, cipherTexts, associated);
+	}
+
+	/**
+	 * Method which will decrypt a batch of independent values, each with its
+	 * own associated data. See {@link #decryptAll(byte[][], byte[][])}.
+	 * 
+	 * @param cipherTexts
+	 * @param associated
+	 *            May be null.
+	 * @return Decrypted values in input order.
+	 * @throws MissingParameterException
+	 * @throws GeneralSecurityException
+	 */
+	public List<byte[]> decryptAll(List<byte[]> cipherTexts, List<byte[]> associated)
+			throws MissingParameterException, GeneralSecurityException {
+		if (cipherTexts == null) {
+			throw new MissingParameterException("Missing parameter: cipherTexts");
+		}
+		return Arrays.asList(decryptAll(cipherTexts.toArray(new byte[0][]),
+				associated == null ? null : associated.toArray(new byte[0][])));
+	}
+
+	/**
+	 * Method which will decrypt a batch of independent values without throwing
+	 * for the ones which fail. Each item gets a status code, see
+	 * {@link BulkDecryptResult}. Missing, truncated and, for Tink keysets,
+	 * unknown key ciphertexts are detected without attempting decryption, so
+	 * a batch with many bad items costs little more than one with none.
+	 * Batches of at least the parallel threshold are split across the batch
+	 * pool.
+	 * 
+	 * @param cipherTexts
+	 *            Values to be decrypted. Individual entries may be null.
+	 * @return Clear texts and status codes in input order.
+	 * @throws MissingParameterException
+	 *             If cipherTexts is null.
+	 * @throws GeneralSecurityException
+	 *             If the keyset itself can not be used.
+	 */
+	public BulkDecryptResult decryptEach(byte[][] cipherTexts) throws MissingParameterException, GeneralSecurityException {
+		return decryptEach(cipherTexts, null);
+	}
+
+	/**
+	 * Method which will decrypt a batch of independent values, each with its
+	 * own associated data, without throwing for the ones which fail. See
+	 * {@link #decryptEach(byte[][])}.
+	 * 
+	 * @param cipherTexts
+	 * @param associated
+	 *            Associated data per value, same length as cipherTexts. May be
+	 *            null, as may individual entries.
+	 * @return Clear texts and status codes in input order.
+	 * @throws MissingParameterException
+	 * @throws GeneralSecurityException
+	 */
+	public BulkDecryptResult decryptEach(byte[][] cipherTexts, byte[][] associated)
+			throws MissingParameterException, GeneralSecurityException {
+
+		if (cipherTexts == null) {
+			throw new MissingParameterException("Missing parameter: cipherTexts");
+		}
+		if (associated != null && associated.length != cipherTexts.length) {
+			throw new IllegalArgumentException("Associated data count [" + associated.length
+					+ "] does not match input count [" + cipherTexts.length + "]");
+		}
+
+		BulkDecryptResult result = new BulkDecryptResult(cipherTexts.length);
+		int minimumLength = getSizing().minimumOverhead;
+		if (cipherTexts.length < parallelThreshold) {
+			decryptItems(cipherTexts, associated, result, minimumLength, 0, cipherTexts.length);
+			return result;
+		}
+
+		ForkJoinPool pool = getBatchPool();
+		int grain = Math.max(1, cipherTexts.length / (pool.getParallelism() * 4));
+		try {
+			pool.invoke(new BulkDecryptTask(this, cipherTexts, associated, result, minimumLength, 0,
+					cipherTexts.length, grain));
+		} catch (RuntimeException e) {
+			BatchTask.rethrow(e);
+		}
+		return result;
+	}
+
+	/**
+	 * Method which will decrypt one item of
+	 * {@link #decryptEach(byte[][], byte[][])} which is present and long
+	 * enough. Implementations able to tell malformed or unknown key
+	 * ciphertexts apart without decrypting should override this. The default
+	 * decrypts and reports any failure as
+	 * {@link BulkDecryptResult#AUTH_FAILED}.
+	 * 
+	 * @param cipherText
+	 * @param associated
+	 *            May be null.
+	 * @param clearTexts
+	 *            Array the clear text is stored to on success.
+	 * @param index
+	 *            Index to store the clear text at.
+	 * @return Status code.
+	 * @throws GeneralSecurityException
+	 *             Only if the keyset itself can not be used.
+	 */
+	protected byte decryptWithStatus(byte[] cipherText, byte[] associated, byte[][] clearTexts, int index)
+			throws GeneralSecurityException {
+		try {
+			clearTexts[index] = performDecryption(cipherText, associated);
+			return BulkDecryptResult.OK;
+		} catch (GeneralSecurityException e) {
+			return BulkDecryptResult.AUTH_FAILED;
+		}
+	}
+
+	/**
+	 * Method which will decrypt a range of a bulk decryption on the calling
+	 * thread.
+	 */
+	void decryptItems(byte[][] cipherTexts, byte[][] associated, BulkDecryptResult result, int minimumLength,
+			int from, int to) throws GeneralSecurityException {
+		CryptoMetrics recorder = getMetrics();
+		boolean metered = recorder.isEnabled();
+		for (int i = from; i < to; i++) {
+			byte[] cipherText = cipherTexts[i];
+			long start = metered ? System.nanoTime() : 0;
+			byte status;
+			if (cipherText == null || cipherText.length == 0) {
+				status = BulkDecryptResult.MISSING;
+			} else if (cipherText.length < minimumLength) {
+				status = BulkDecryptResult.MALFORMED;
+			} else {
+				status = decryptWithStatus(cipherText, associated == null ? null : associated[i], result.clearTexts, i);
+			}
+			result.statuses[i] = status;
+			if (metered) {
+				if (status == BulkDecryptResult.OK) {
+					recorder.record(CryptoOperation.DECRYPT, System.nanoTime() - start, cipherText.length,
+							result.clearTexts[i].length);
+				} else {
+					recorder.recordFailure(CryptoOperation.DECRYPT, null);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Method which will return the exact size of the ciphertext produced when
+	 * encrypting a plaintext of the given length with the primary key. Useful
+	 * for sizing output buffers up front.
+	 * 
+	 * @param plaintextLength
+	 *            Length in bytes of the plaintext.
+	 * @return Length in bytes of the resulting ciphertext.
+	 * @throws GeneralSecurityException
+	 */
+	public int ciphertextLength(int plaintextLength) throws GeneralSecurityException {
+		if (plaintextLength < 0) {
+			throw new IllegalArgumentException("Negative plaintext length: " + plaintextLength);
+		}
+		return plaintextLength + getSizing().overhead;
+	}
+
+	/**
+	 * Method which will return the largest plaintext which may result from
+	 * decrypting a ciphertext of the given length. Useful for sizing output
+	 * buffers up front.
+	 * 
+	 * @param ciphertextLength
+	 *            Length in bytes of the ciphertext.
+	 * @return Maximum length in bytes of the resulting plaintext.
+	 * @throws GeneralSecurityException
+	 */
+	public int plaintextLength(int ciphertextLength) throws GeneralSecurityException {
+		if (ciphertextLength < 0) {
+			throw new IllegalArgumentException("Negative ciphertext length: " + ciphertextLength);
+		}
+		return Math.max(0, ciphertextLength - getSizing().minimumOverhead);
+	}
+
+	/**
+	 * Method which will encrypt the remaining bytes of a buffer into another
+	 * buffer. Heap and direct buffers are both supported. On success the
+	 * position of src and associated are advanced to their limits and the
+	 * position of dst by the number of bytes written. On failure the positions
+	 * are left unchanged.
+	 * 
+	 * @param src
+	 *            Buffer containing the clear text to be encrypted.
+	 * @param associated
+	 *            Buffer containing associated data. May be null.
+	 * @param dst
+	 *            Buffer the ciphertext will be written to. Must have at least
+	 *            {@link #ciphertextLength(int)} bytes remaining.
+	 * @return Number of bytes written to dst.
+	 * @throws MissingParameterException
+	 * @throws GeneralSecurityException
+	 *             ShortBufferException if dst is too small.
+	 */
+	public int encrypt(ByteBuffer src, ByteBuffer associated, ByteBuffer dst)
+			throws MissingParameterException, GeneralSecurityException {
+
+		if (src == null || !src.hasRemaining()) {
+			throw new MissingParameterException("Missing parameter: clearText");
+		}
+		if (dst == null) {
+			throw new MissingParameterException("Missing parameter: dst");
+		}
+
+		int required = ciphertextLength(src.remaining());
+		if (dst.remaining() < required) {
+			throw new ShortBufferException("Output buffer requires " + required + " bytes, " + dst.remaining() + " remaining");
+		}
+
+		int srcPosition = src.position();
+		int associatedPosition = associated == null ? 0 : associated.position();
+		int dstPosition = dst.position();
+		try {
+			return encryptBuffer(src, associated, dst);
+		} catch (GeneralSecurityException | RuntimeException e) {
+			reset(src, srcPosition, associated, associatedPosition, dst, dstPosition);
+			throw e;
+		}
+	}
+
+	/**
+	 * Method which will decrypt the remaining bytes of a buffer into another
+	 * buffer. Heap and direct buffers are both supported. On success the
+	 * position of src and associated are advanced to their limits and the
+	 * position of dst by the number of bytes written. On failure the positions
+	 * are left unchanged.
+	 * 
+	 * @param src
+	 *            Buffer containing the ciphertext to be decrypted.
+	 * @param associated
+	 *            Buffer containing associated data. May be null.
+	 * @param dst
+	 *            Buffer the clear text will be written to. Must have at least
+	 *            {@link #plaintextLength(int)} bytes remaining.
+	 * @return Number of bytes written to dst.
+	 * @throws MissingParameterException
+	 * @throws GeneralSecurityException
+	 *             ShortBufferException if dst is too small.
+	 */
+	public int decrypt(ByteBuffer src, ByteBuffer associated, ByteBuffer dst)
+			throws MissingParameterException, GeneralSecurityException {
+
+		if (src == null || !src.hasRemaining()) {
+			throw new MissingParameterException("Missing parameter: cipherText");
+		}
+		if (dst == null) {
+			throw new MissingParameterException("Missing parameter: dst");
+		}
+
+		int required = plaintextLength(src.remaining());
+		if (dst.remaining() < required) {
+			throw new ShortBufferException("Output buffer requires " + required + " bytes, " + dst.remaining() + " remaining");
+		}
+
+		int srcPosition = src.position();
+		int associatedPosition = associated == null ? 0 : associated.position();
+		int dstPosition = dst.position();
+		try {
+			return decryptBuffer(src, associated, dst);
+		} catch (GeneralSecurityException | RuntimeException e) {
+			reset(src, srcPosition, associated, associatedPosition, dst, dstPosition);
+			throw e;
+		}
+	}
+
+	/**
+	 * Buffer based encryption. Implementations able to operate on buffers
+	 * directly should override this, the default stages the data through
+	 * {@link #performEncryption(byte[], byte[])}. A staging copy is skipped
+	 * when a heap buffer exactly covers its backing array.
+	 * 
+	 * @return Number of bytes written to dst.
+	 * @throws GeneralSecurityException
+	 */
+	protected int performEncryption(ByteBuffer src, ByteBuffer associated, ByteBuffer dst)
+			throws GeneralSecurityException {
+		byte[] cipherText = performEncryption(toArray(src), toArray(associated));
+		dst.put(cipherText);
+		return cipherText.length;
+	}
+
+	/**
+	 * Buffer based decryption. Implementations able to operate on buffers
+	 * directly should override this, the default stages the data through
+	 * {@link #performDecryption(byte[], byte[])}. A staging copy is skipped
+	 * when a heap buffer exactly covers its backing array.
+	 * 
+	 * @return Number of bytes written to dst.
+	 * @throws GeneralSecurityException
+	 */
+	protected int performDecryption(ByteBuffer src, ByteBuffer associated, ByteBuffer dst)
+			throws GeneralSecurityException {
+		byte[] clearText = performDecryption(toArray(src), toArray(associated));
+		if (dst.remaining() < clearText.length) {
+			throw new ShortBufferException("Output buffer requires " + clearText.length + " bytes, " + dst.remaining() + " remaining");
+		}
+		dst.put(clearText);
+		return clearText.length;
+	}
+
+	/**
+	 * Method which will indicate whether {@link #plaintextLength(int)} is an
+	 * upper bound on the clear text of a ciphertext. Providers which can
+	 * produce more clear text than that, such as compressing ones, return
+	 * false, and text is then decrypted through
+	 * {@link #performDecryption(byte[], byte[])} rather than into a buffer
+	 * sized up front.
+	 * 
+	 * @return
+	 */
+	protected boolean isPlaintextLengthBounded() {
+		return true;
+	}
+
+	/**
+	 * Method which will return the number of bytes the primary key adds to a
+	 * plaintext when encrypting. The default implementation measures it by
+	 * encrypting an empty plaintext.
+	 * 
+	 * @return
+	 * @throws GeneralSecurityException
+	 */
+	protected int getCiphertextOverhead() throws GeneralSecurityException {
+		return performEncryption(new byte[0], new byte[0]).length;
+	}
+
+	/**
+	 * Method which will return the smallest number of bytes any key of the
+	 * keyset adds to a plaintext. This differs from
+	 * {@link #getCiphertextOverhead()} when the keyset mixes keys with and
+	 * without an output prefix, or keys of several types such as an
+	 * XChaCha20-Poly1305 primary rotated in next to AES-GCM keys. The
+	 * overhead of each enabled key is taken from its
+	 * {@link SupportedKeyTemplates} type; a key of any other type may add
+	 * anything, so the result is then 0.
+	 * 
+	 * @param overhead
+	 *            Overhead of the primary key.
+	 * @return
+	 * @throws GeneralSecurityException
+	 */
+	protected int getMinimumCiphertextOverhead(int overhead) throws GeneralSecurityException {
+		int minimum = overhead;
+		for (KeyInfo keyInfo : getKey().getKeysetInfo().getKeyInfoList()) {
+			if (keyInfo.getStatus() != KeyStatusType.ENABLED) {
+				continue;
+			}
+			SupportedKeyTemplates template = SupportedKeyTemplates.getByTypeUrl(keyInfo.getTypeUrl());
+			if (template == null) {
+				return 0;
+			}
+			int keyOverhead = template.getCiphertextOverhead();
+			if (keyInfo.getOutputPrefixType() != OutputPrefixType.RAW) {
+				keyOverhead += CryptoFormat.NON_RAW_PREFIX_SIZE;
+			}
+			minimum = Math.min(minimum, keyOverhead);
+		}
+		return minimum;
+	}
+
+	private byte[][] processAll(BatchTask.Operation operation, byte[][] inputs, byte[][] associated)
+			throws MissingParameterException, GeneralSecurityException {
+
+		if (inputs == null) {
+			throw new MissingParameterException("Missing parameter: inputs");
+		}
+		if (associated != null && associated.length != inputs.length) {
+			throw new IllegalArgumentException(
+					"Associated data count [" + associated.length + "] does not match input count [" + inputs.length + "]");
+		}
+
+		byte[][] results = new byte[inputs.length][];
+		if (inputs.length < parallelThreshold) {
+			BatchTask.apply(operation, inputs, associated, results, 0, inputs.length);
+			return results;
+		}
+
+		ForkJoinPool pool = getBatchPool();
+		// A few chunks per worker keeps them busy when item costs vary.
+		int grain = Math.max(1, inputs.length / (pool.getParallelism() * 4));
+		try {
+			pool.invoke(new BatchTask(operation, inputs, associated, results, 0, inputs.length, grain));
+		} catch (RuntimeException e) {
+			BatchTask.rethrow(e);
+		}
+		return results;
+	}
+
+	private Sizing getSizing() throws GeneralSecurityException {
+		KeysetHandle current = getKey();
+		Sizing measured = sizing;
+		if (measured == null || measured.key != current) {
+			int overhead = getCiphertextOverhead();
+			measured = new Sizing(current, overhead, getMinimumCiphertextOverhead(overhead));
+			sizing = measured;
+		}
+		return measured;
+	}
+
+	private ByteBuffer decryptToScratch(Utf8Scratch scratch, CharSequence cipherText, CharSequence associated)
+			throws GeneralSecurityException {
+		CiphertextCodec textCodec = codec;
+		ByteBuffer src = scratch.cipherText(textCodec.maxDecodedLength(cipherText.length()));
+		src.limit(textCodec.decode(cipherText, src.array(), 0));
+		ByteBuffer ad = scratch.encodeAssociated(associated);
+		if (!isPlaintextLengthBounded()) {
+			// Size the scratch from the clear text itself, then leave no copy behind.
+			byte[] clearText = decryptBytes(toArray(src), toArray(ad));
+			ByteBuffer dst = scratch.clearText(clearText.length);
+			dst.put(clearText);
+			Arrays.fill(clearText, (byte) 0);
+			dst.flip();
+			return dst;
+		}
+		ByteBuffer dst = scratch.clearText(plaintextLength(src.remaining()));
+		decryptBuffer(src, ad, dst);
+		dst.flip();
+		return dst;
+	}
+
+	/*
+	 * Every public encrypt and decrypt goes through one of the following, which
+	 * only take timings when metrics or a JFR recording of the operation are
+	 * enabled.
+	 */
+
+	private byte[] encryptBytes(byte[] clearText, byte[] associated) throws GeneralSecurityException {
+		CryptoMetrics recorder = getMetrics();
+		Object event = CryptoEvents.beginProviderOperation();
+		if (!recorder.isEnabled() && event == null) {
+			return performEncryption(clearText, associated);
+		}
+		long start = System.nanoTime();
+		try {
+			byte[] cipherText = performEncryption(clearText, associated);
+			recordSuccess(recorder, event, CryptoOperation.ENCRYPT, start, 0, clearText.length, cipherText.length);
+			return cipherText;
+		} catch (GeneralSecurityException | RuntimeException e) {
+			recordFailure(recorder, event, CryptoOperation.ENCRYPT, 0, clearText.length, e);
+			throw e;
+		}
+	}
+
+	private byte[] decryptBytes(byte[] cipherText, byte[] associated) throws GeneralSecurityException {
+		CryptoMetrics recorder = getMetrics();
+		Object event = CryptoEvents.beginProviderOperation();
+		if (!recorder.isEnabled() && event == null) {
+			return performDecryption(cipherText, associated);
+		}
+		int prefixKeyId = event == null ? 0 : prefixKeyId(ByteBuffer.wrap(cipherText));
+		long start = System.nanoTime();
+		try {
+			byte[] clearText = performDecryption(cipherText, associated);
+			recordSuccess(recorder, event, CryptoOperation.DECRYPT, start, prefixKeyId, cipherText.length, clearText.length);
+			return clearText;
+		} catch (GeneralSecurityException | RuntimeException e) {
+			recordFailure(recorder, event, CryptoOperation.DECRYPT, prefixKeyId, cipherText.length, e);
+			throw e;
+		}
+	}
+
+	private int encryptBuffer(ByteBuffer src, ByteBuffer associated, ByteBuffer dst)
+			throws GeneralSecurityException {
+		CryptoMetrics recorder = getMetrics();
+		Object event = CryptoEvents.beginProviderOperation();
+		if (!recorder.isEnabled() && event == null) {
+			return performEncryption(src, associated, dst);
+		}
+		int length = src.remaining();
+		long start = System.nanoTime();
+		try {
+			int written = performEncryption(src, associated, dst);
+			recordSuccess(recorder, event, CryptoOperation.ENCRYPT, start, 0, length, written);
+			return written;
+		} catch (GeneralSecurityException | RuntimeException e) {
+			recordFailure(recorder, event, CryptoOperation.ENCRYPT, 0, length, e);
+			throw e;
+		}
+	}
+
+	private int decryptBuffer(ByteBuffer src, ByteBuffer associated, ByteBuffer dst)
+			throws GeneralSecurityException {
+		CryptoMetrics recorder = getMetrics();
+		Object event = CryptoEvents.beginProviderOperation();
+		if (!recorder.isEnabled() && event == null) {
+			return performDecryption(src, associated, dst);
+		}
+		int length = src.remaining();
+		int prefixKeyId = event == null ? 0 : prefixKeyId(src);
+		long start = System.nanoTime();
+		try {
+			int written = performDecryption(src, associated, dst);
+			recordSuccess(recorder, event, CryptoOperation.DECRYPT, start, prefixKeyId, length, written);
+			return written;
+		} catch (GeneralSecurityException | RuntimeException e) {
+			recordFailure(recorder, event, CryptoOperation.DECRYPT, prefixKeyId, length, e);
+			throw e;
+		}
+	}
+
+	private void recordSuccess(CryptoMetrics recorder, Object event, CryptoOperation operation, long start,
+			int prefixKeyId, long bytesIn, long bytesOut) {
+		if (recorder.isEnabled()) {
+			recorder.record(operation, System.nanoTime() - start, bytesIn, bytesOut);
+		}
+		CryptoEvents.endProviderOperation(event, operation.name(), getClass(), key, prefixKeyId, bytesIn, bytesOut, null);
+	}
+
+	private void recordFailure(CryptoMetrics recorder, Object event, CryptoOperation operation, int prefixKeyId,
+			long bytesIn, Throwable failure) {
+		if (recorder.isEnabled()) {
+			recorder.recordFailure(operation, failure);
+		}
+		CryptoEvents.endProviderOperation(event, operation.name(), getClass(), key, prefixKeyId, bytesIn, 0, failure);
+	}
+
+	/**
+	 * Method which will read the key ID from the Tink prefix of a ciphertext
+	 * without moving the buffer position. Returns 0 if there is no prefix.
+	 */
+	private static int prefixKeyId(ByteBuffer cipherText) {
+		int position = cipherText.position();
+		if (cipherText.remaining() <= CryptoFormat.NON_RAW_PREFIX_SIZE) {
+			return 0;
+		}
+		byte version = cipherText.get(position);
+		if (version != CryptoFormat.TINK_START_BYTE && version != CryptoFormat.LEGACY_START_BYTE) {
+			return 0;
+		}
+		return (cipherText.get(position + 1) & 0xFF) << 24 | (cipherText.get(position + 2) & 0xFF) << 16
+				| (cipherText.get(position + 3) & 0xFF) << 8 | cipherText.get(position + 4) & 0xFF;
+	}
+
+	private static byte[] toArray(ByteBuffer buffer) {
+		if (buffer == null) {
+			return null;
+		}
+		int length = buffer.remaining();
+		if (buffer.hasArray() && buffer.arrayOffset() + buffer.position() == 0 && buffer.array().length == length) {
+			buffer.position(buffer.limit());
+			return buffer.array();
+		}
+		byte[] array = new byte[length];
+		buffer.get(array);
+		return array;
+	}
+
+	private static void reset(ByteBuffer src, int srcPosition, ByteBuffer associated, int associatedPosition,
+			ByteBuffer dst, int dstPosition) {
+		src.position(srcPosition);
+		if (associated != null) {
+			associated.position(associatedPosition);
+		}
+		dst.position(dstPosition);
+	}
+
+	/**
+	 * Immutable ciphertext sizing of a keyset.
+	 */
+	private static final class Sizing {
+
+		private final KeysetHandle key;
+		private final int overhead;
+		private final int minimumOverhead;
+
+		private Sizing(KeysetHandle key, int overhead, int minimumOverhead) {
+			this.key = key;
+			this.overhead = overhead;
+			this.minimumOverhead = minimumOverhead;
+		}
+
+	}
+
 }
@@ -26,19 +26,31 @@ package net.theblackchamber.crypto.providers;
 
 import java.security.GeneralSecurityException;
 import java.security.Key;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.WeakHashMap;
 
 import javax.crypto.SecretKey;
 
+import com.google.crypto.tink.CleartextKeysetHandle;
 import com.google.crypto.tink.KeysetHandle;
-import com.google.crypto.tink.config.TinkConfig;
+import com.google.crypto.tink.proto.KeysetInfo;
+import com.google.crypto.tink.proto.KeysetInfo.KeyInfo;
 
 import static net.theblackchamber.crypto.constants.SupportedKeyGenAlgorithms.*;
 import net.theblackchamber.crypto.constants.SupportedKeyGenAlgorithms;
+import net.theblackchamber.crypto.constants.SupportedKeyTemplates;
+import net.theblackchamber.crypto.exceptions.MissingParameterException;
 import net.theblackchamber.crypto.exceptions.UnsupportedAlgorithmException;
 import net.theblackchamber.crypto.exceptions.UnsupportedKeySizeException;
 import net.theblackchamber.crypto.providers.symmetric.AESEncryptionProvider;
 import net.theblackchamber.crypto.providers.symmetric.AESEncryptionProvider2;
+import net.theblackchamber.crypto.providers.symmetric.AESSIVEncryptionProvider2;
+import net.theblackchamber.crypto.providers.symmetric.ChaCha20Poly1305EncryptionProvider2;
 import net.theblackchamber.crypto.providers.symmetric.DESEdeEncryptionProvider;
+import net.theblackchamber.crypto.util.TinkRegistration;
 
 /**
  * Factory which will create and return instances of {@link EncryptionProvider}
@@ -50,15 +62,193 @@ import net.theblackchamber.crypto.providers.symmetric.DESEdeEncryptionProvider;
 public class EncryptionProviderFactory2 {
 
 	/**
-	 * Method which will return a new instance of {@link EncryptionProvider}
+	 * Number of distinct keysets {@link #getSharedProvider(KeysetHandle)}
+	 * keeps providers for.
+	 */
+	public static final int SHARED_PROVIDER_CACHE_SIZE = 64;
+
+	private static final Object SHARED_LOCK = new Object();
+
+	/**
+	 * Fingerprints of the keysets seen by identity. Weak so handles the
+	 * application has dropped can be collected.
+	 */
+	private static final Map<KeysetHandle, String> FINGERPRINTS = new WeakHashMap<KeysetHandle, String>();
+
+	/**
+	 * Shared providers by keyset fingerprint, least recently used first.
+	 */
+	private static final Map<String, EncryptionProvider2> SHARED_PROVIDERS = new LinkedHashMap<String, EncryptionProvider2>(
+			16, 0.75f, true) {
+
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, EncryptionProvider2> eldest) {
+			return size() > SHARED_PROVIDER_CACHE_SIZE;
+		}
+
+	};
+
+	/**
+	 * Most recently returned shared provider, checked before taking the lock
+	 * since most applications only use one keyset.
+	 */
+	private static volatile SharedProvider lastShared;
+
+	/**
+	 * Method which will return a new instance of {@link EncryptionProvider2}
+	 * based on the type of the primary key of the keyset. AES-SIV keysets get
+	 * the deterministic {@link AESSIVEncryptionProvider2}, (X)ChaCha20-Poly1305
+	 * keysets the {@link ChaCha20Poly1305EncryptionProvider2} and all other
+	 * keysets the {@link AESEncryptionProvider2}.
 	 * @throws GeneralSecurityException 
 	 * 
 	 */
 	public static EncryptionProvider2 getProvider(KeysetHandle key) throws  GeneralSecurityException {
 
-		TinkConfig.register();
+		TinkRegistration.register();
+
+		SupportedKeyTemplates keyTemplate = SupportedKeyTemplates.getByTypeUrl(getPrimaryTypeUrl(key));
+
+		if (keyTemplate == null) {
+			return new AESEncryptionProvider2(key);
+		}
+
+		switch (keyTemplate) {
+		case AES256_SIV:
+			return new AESSIVEncryptionProvider2(key);
+
+		case CHACHA20_POLY1305:
+		case XCHACHA20_POLY1305:
+			return new ChaCha20Poly1305EncryptionProvider2(key);
+
+		default:
+			return new AESEncryptionProvider2(key);
+		}
+
+	}
+
+	/**
+	 * Method which will return a provider shared by every caller using the same
+	 * keyset, for code which would otherwise call
+	 * {@link #getProvider(KeysetHandle)} per request. Keysets are matched by
+	 * handle identity and then by primary key ID and a SHA-256 fingerprint of
+	 * the key material, so handles read separately from the same file share a
+	 * provider. Shared providers are thread safe and their settings are read
+	 * only: setting the codec, metrics or batch settings throws
+	 * {@link UnsupportedOperationException}, since the change would reach
+	 * every other user of the keyset. Use {@link #getProvider(KeysetHandle)}
+	 * for a private instance which can be configured.
+	 * 
+	 * @param key
+	 * @return
+	 * @throws MissingParameterException
+	 * @throws GeneralSecurityException
+	 */
+	public static EncryptionProvider2 getSharedProvider(KeysetHandle key)
+			throws MissingParameterException, GeneralSecurityException {
+
+		if (key == null) {
+			throw new MissingParameterException("Missing parameter: key");
+		}
+
+		SharedProvider last = lastShared;
+		if (last != null && last.handle == key) {
+			return last.provider;
+		}
+
+		EncryptionProvider2 provider;
+		synchronized (SHARED_LOCK) {
+			String fingerprint = FINGERPRINTS.get(key);
+			if (fingerprint == null) {
+				fingerprint = fingerprint(key);
+				FINGERPRINTS.put(key, fingerprint);
+			}
+			provider = SHARED_PROVIDERS.get(fingerprint);
+			if (provider == null) {
+				provider = getProvider(key);
+				provider.markShared();
+				SHARED_PROVIDERS.put(fingerprint, provider);
+			}
+			// Under the lock, so a concurrent clear can not be undone.
+			lastShared = new SharedProvider(key, provider);
+		}
+		return provider;
+
+	}
+
+	/**
+	 * Method which will drop all shared providers, for example after keys have
+	 * been destroyed.
+	 */
+	public static void clearSharedProviders() {
+		synchronized (SHARED_LOCK) {
+			lastShared = null;
+			FINGERPRINTS.clear();
+			SHARED_PROVIDERS.clear();
+		}
+	}
+
+	/**
+	 * Method which will return the primary key ID and a SHA-256 hash of the
+	 * serialized keyset. The key material is wiped once hashed.
+	 * 
+	 * @param key
+	 * @return
+	 * @throws GeneralSecurityException
+	 */
+	private static String fingerprint(KeysetHandle key) throws GeneralSecurityException {
+
+		byte[] material = CleartextKeysetHandle.getKeyset(key).toByteArray();
+		try {
+			byte[] hash = MessageDigest.getInstance("SHA-256").digest(material);
+			StringBuilder fingerprint = new StringBuilder(76);
+			fingerprint.append(Integer.toHexString(key.getKeysetInfo().getPrimaryKeyId())).append(':');
+			for (byte b : hash) {
+				fingerprint.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+			}
+			return fingerprint.toString();
+		} finally {
+			Arrays.fill(material, (byte) 0);
+		}
+
+	}
+
+	/**
+	 * Method which will return the type url of the primary key of a keyset.
+	 * 
+	 * @param key
+	 * @return
+	 * @throws GeneralSecurityException
+	 *             If the keyset has no primary key.
+	 */
+	private static String getPrimaryTypeUrl(KeysetHandle key) throws GeneralSecurityException {
+
+		KeysetInfo info = key.getKeysetInfo();
+
+		for (KeyInfo keyInfo : info.getKeyInfoList()) {
+			if (keyInfo.getKeyId() == info.getPrimaryKeyId()) {
+				return keyInfo.getTypeUrl();
+			}
+		}
+
+		throw new GeneralSecurityException("Keyset has no primary key.");
+
+	}
+
+	/**
+	 * Immutable pairing of a keyset with its shared provider.
+	 */
+	private static final class SharedProvider {
+
+		private final KeysetHandle handle;
+		private final EncryptionProvider2 provider;
 
-		return new AESEncryptionProvider2(key);
+		private SharedProvider(KeysetHandle handle, EncryptionProvider2 provider) {
+			this.handle = handle;
+			this.provider = provider;
+		}
 
 	}
 
@@ -0,0 +1,233 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 Seamus Minogue
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.theblackchamber.crypto.providers;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Per thread scratch buffers used by the string methods of
+ * {@link EncryptionProvider2}. Text is always encoded as UTF-8, whatever the
+ * default charset of the host, and the encoders, decoders and buffers are
+ * reused between calls rather than allocated for each one. <br>
+ * Buffers holding clear text are zeroed when released. Buffers which grew
+ * past {@link #MAX_RETAINED_SIZE} are dropped rather than kept for the life
+ * of the thread.
+ * 
+ * @author sminogue
+ * 
+ */
+final class Utf8Scratch {
+
+	static final int MAX_RETAINED_SIZE = 64 * 1024;
+
+	private static final int INITIAL_SIZE = 256;
+
+	private static final ThreadLocal<Utf8Scratch> CURRENT = new ThreadLocal<Utf8Scratch>() {
+		@Override
+		protected Utf8Scratch initialValue() {
+			return new Utf8Scratch();
+		}
+	};
+
+	private final CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder()
+			.onMalformedInput(CodingErrorAction.REPLACE).onUnmappableCharacter(CodingErrorAction.REPLACE);
+	private final CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+			.onMalformedInput(CodingErrorAction.REPLACE).onUnmappableCharacter(CodingErrorAction.REPLACE);
+
+	private ByteBuffer clearText = ByteBuffer.allocate(INITIAL_SIZE);
+	private ByteBuffer associated = ByteBuffer.allocate(INITIAL_SIZE);
+	private ByteBuffer cipherText = ByteBuffer.allocate(INITIAL_SIZE);
+	private CharBuffer chars = CharBuffer.allocate(INITIAL_SIZE);
+	private byte[] encoded = new byte[INITIAL_SIZE];
+
+	private boolean inUse;
+
+	/**
+	 * Method which will return the scratch of the calling thread. If it is
+	 * already in use further up the stack a temporary one is returned.
+	 * 
+	 * @return
+	 */
+	static Utf8Scratch acquire() {
+		Utf8Scratch scratch = CURRENT.get();
+		if (scratch.inUse) {
+			scratch = new Utf8Scratch();
+		}
+		scratch.inUse = true;
+		return scratch;
+	}
+
+	/**
+	 * Method which will zero any clear text held and make the scratch
+	 * available to the next call.
+	 */
+	void release() {
+		clearText = wipe(clearText);
+		chars = wipe(chars);
+		associated = shrink(associated);
+		cipherText = shrink(cipherText);
+		if (encoded.length > MAX_RETAINED_SIZE) {
+			encoded = new byte[INITIAL_SIZE];
+		}
+		inUse = false;
+	}
+
+	/**
+	 * Method which will encode clear text as UTF-8.
+	 * 
+	 * @param text
+	 * @return Buffer positioned at the start of the encoded bytes.
+	 */
+	ByteBuffer encodeClearText(CharSequence text) {
+		clearText = encode(text, clearText);
+		return clearText;
+	}
+
+	/**
+	 * Method which will encode associated data as UTF-8.
+	 * 
+	 * @param text
+	 *            May be null, which is encoded as no bytes.
+	 * @return Buffer positioned at the start of the encoded bytes.
+	 */
+	ByteBuffer encodeAssociated(CharSequence text) {
+		associated = encode(text == null ? "" : text, associated);
+		return associated;
+	}
+
+	/**
+	 * Method which will return an empty buffer to receive decoded ciphertext.
+	 * 
+	 * @param size
+	 * @return
+	 */
+	ByteBuffer cipherText(int size) {
+		cipherText = ensure(cipherText, size);
+		return cipherText;
+	}
+
+	/**
+	 * Method which will return an empty buffer to receive decrypted clear text.
+	 * 
+	 * @param size
+	 * @return
+	 */
+	ByteBuffer clearText(int size) {
+		clearText = ensure(clearText, size);
+		return clearText;
+	}
+
+	/**
+	 * Method which will return an array to receive encoded ciphertext.
+	 * 
+	 * @param size
+	 * @return
+	 */
+	byte[] encoded(int size) {
+		if (encoded.length < size) {
+			encoded = new byte[Math.max(size, encoded.length * 2)];
+		}
+		return encoded;
+	}
+
+	/**
+	 * Method which will decode UTF-8 clear text into a string.
+	 * 
+	 * @param bytes
+	 * @return
+	 */
+	String decodeToString(ByteBuffer bytes) {
+		CharBuffer decoded = decode(bytes);
+		return new String(decoded.array(), decoded.arrayOffset(), decoded.remaining());
+	}
+
+	/**
+	 * Method which will decode UTF-8 clear text into a char array. The caller
+	 * owns the array and can zero it when done.
+	 * 
+	 * @param bytes
+	 * @return
+	 */
+	char[] decodeToChars(ByteBuffer bytes) {
+		CharBuffer decoded = decode(bytes);
+		char[] result = new char[decoded.remaining()];
+		decoded.get(result);
+		return result;
+	}
+
+	private ByteBuffer encode(CharSequence text, ByteBuffer target) {
+		int maxLength = (int) Math.min(Integer.MAX_VALUE, (long) text.length() * (long) encoder.maxBytesPerChar());
+		target = ensure(target, maxLength);
+		encoder.reset();
+		CharBuffer in = CharBuffer.wrap(text);
+		encoder.encode(in, target, true);
+		encoder.flush(target);
+		target.flip();
+		return target;
+	}
+
+	private CharBuffer decode(ByteBuffer bytes) {
+		// UTF-8 never decodes to more chars than it has bytes
+		if (chars.capacity() < bytes.remaining()) {
+			chars = CharBuffer.allocate(Math.max(bytes.remaining(), chars.capacity() * 2));
+		}
+		chars.clear();
+		decoder.reset();
+		decoder.decode(bytes, chars, true);
+		decoder.flush(chars);
+		chars.flip();
+		return chars;
+	}
+
+	private static ByteBuffer ensure(ByteBuffer buffer, int size) {
+		if (buffer.capacity() < size) {
+			return ByteBuffer.allocate(Math.max(size, buffer.capacity() * 2));
+		}
+		buffer.clear();
+		return buffer;
+	}
+
+	private static ByteBuffer wipe(ByteBuffer buffer) {
+		// Clear text never extends past the limit set by the last use
+		Arrays.fill(buffer.array(), 0, buffer.limit(), (byte) 0);
+		return shrink(buffer);
+	}
+
+	private static CharBuffer wipe(CharBuffer buffer) {
+		Arrays.fill(buffer.array(), 0, buffer.limit(), (char) 0);
+		return buffer.capacity() > MAX_RETAINED_SIZE ? CharBuffer.allocate(INITIAL_SIZE) : buffer;
+	}
+
+	private static ByteBuffer shrink(ByteBuffer buffer) {
+		buffer.clear();
+		return buffer.capacity() > MAX_RETAINED_SIZE ? ByteBuffer.allocate(INITIAL_SIZE) : buffer;
+	}
+
+}
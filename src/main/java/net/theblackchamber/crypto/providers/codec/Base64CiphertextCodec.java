@@ -0,0 +1,174 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 Seamus Minogue
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.theblackchamber.crypto.providers.codec;
+
+import java.util.Arrays;
+
+/**
+ * Base64 codec (RFC 4648) using either the standard or the URL and filename
+ * safe alphabet, with or without padding. Decoding accepts text with or
+ * without padding.
+ * 
+ * @author sminogue
+ * 
+ */
+public final class Base64CiphertextCodec implements CiphertextCodec {
+
+	private static final char[] STANDARD = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/"
+			.toCharArray();
+	private static final char[] URL_SAFE = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789-_"
+			.toCharArray();
+
+	private final char[] alphabet;
+	private final int[] values;
+	private final boolean padded;
+
+	/**
+	 * @param urlSafe
+	 *            True to use the URL and filename safe alphabet.
+	 * @param padded
+	 *            True to pad the output to a multiple of 4 characters.
+	 */
+	public Base64CiphertextCodec(boolean urlSafe, boolean padded) {
+		this.alphabet = urlSafe ? URL_SAFE : STANDARD;
+		this.padded = padded;
+		this.values = new int[128];
+		Arrays.fill(values, -1);
+		for (int i = 0; i < alphabet.length; i++) {
+			values[alphabet[i]] = i;
+		}
+	}
+
+	@Override
+	public int encodedLength(int length) {
+		return padded ? 4 * ((length + 2) / 3) : (length * 4 + 2) / 3;
+	}
+
+	@Override
+	public int maxDecodedLength(int encodedLength) {
+		return (int) ((long) encodedLength * 3 / 4);
+	}
+
+	@Override
+	public int encode(byte[] src, int offset, int length, byte[] dst, int dstOffset) {
+		int end = offset + length - length % 3;
+		int out = dstOffset;
+		int in = offset;
+		while (in < end) {
+			int bits = (src[in++] & 0xff) << 16 | (src[in++] & 0xff) << 8 | (src[in++] & 0xff);
+			dst[out++] = (byte) alphabet[bits >>> 18];
+			dst[out++] = (byte) alphabet[(bits >>> 12) & 0x3f];
+			dst[out++] = (byte) alphabet[(bits >>> 6) & 0x3f];
+			dst[out++] = (byte) alphabet[bits & 0x3f];
+		}
+		int remaining = length % 3;
+		if (remaining > 0) {
+			int bits = (src[in] & 0xff) << 16 | (remaining == 2 ? (src[in + 1] & 0xff) << 8 : 0);
+			dst[out++] = (byte) alphabet[bits >>> 18];
+			dst[out++] = (byte) alphabet[(bits >>> 12) & 0x3f];
+			if (remaining == 2) {
+				dst[out++] = (byte) alphabet[(bits >>> 6) & 0x3f];
+			} else if (padded) {
+				dst[out++] = '=';
+			}
+			if (padded) {
+				dst[out++] = '=';
+			}
+		}
+		return out - dstOffset;
+	}
+
+	@Override
+	public int encode(byte[] src, int offset, int length, char[] dst, int dstOffset) {
+		int end = offset + length - length % 3;
+		int out = dstOffset;
+		int in = offset;
+		while (in < end) {
+			int bits = (src[in++] & 0xff) << 16 | (src[in++] & 0xff) << 8 | (src[in++] & 0xff);
+			dst[out++] = alphabet[bits >>> 18];
+			dst[out++] = alphabet[(bits >>> 12) & 0x3f];
+			dst[out++] = alphabet[(bits >>> 6) & 0x3f];
+			dst[out++] = alphabet[bits & 0x3f];
+		}
+		int remaining = length % 3;
+		if (remaining > 0) {
+			int bits = (src[in] & 0xff) << 16 | (remaining == 2 ? (src[in + 1] & 0xff) << 8 : 0);
+			dst[out++] = alphabet[bits >>> 18];
+			dst[out++] = alphabet[(bits >>> 12) & 0x3f];
+			if (remaining == 2) {
+				dst[out++] = alphabet[(bits >>> 6) & 0x3f];
+			} else if (padded) {
+				dst[out++] = '=';
+			}
+			if (padded) {
+				dst[out++] = '=';
+			}
+		}
+		return out - dstOffset;
+	}
+
+	@Override
+	public int decode(CharSequence src, byte[] dst, int dstOffset) {
+		int length = src.length();
+		while (length > 0 && src.length() - length < 2 && src.charAt(length - 1) == '=') {
+			length--;
+		}
+		if (length < src.length() && src.length() % 4 != 0) {
+			throw new IllegalArgumentException("Invalid Base64 padding");
+		}
+		if (length % 4 == 1) {
+			throw new IllegalArgumentException("Invalid Base64 length: " + src.length());
+		}
+
+		int end = length - length % 4;
+		int out = dstOffset;
+		int in = 0;
+		while (in < end) {
+			int bits = value(src, in) << 18 | value(src, in + 1) << 12 | value(src, in + 2) << 6 | value(src, in + 3);
+			in += 4;
+			dst[out++] = (byte) (bits >>> 16);
+			dst[out++] = (byte) (bits >>> 8);
+			dst[out++] = (byte) bits;
+		}
+		int remaining = length - end;
+		if (remaining > 0) {
+			int bits = value(src, in) << 18 | value(src, in + 1) << 12 | (remaining == 3 ? value(src, in + 2) << 6 : 0);
+			dst[out++] = (byte) (bits >>> 16);
+			if (remaining == 3) {
+				dst[out++] = (byte) (bits >>> 8);
+			}
+		}
+		return out - dstOffset;
+	}
+
+	private int value(CharSequence src, int index) {
+		char c = src.charAt(index);
+		int value = c < 128 ? values[c] : -1;
+		if (value < 0) {
+			throw new IllegalArgumentException("Illegal Base64 character at " + index);
+		}
+		return value;
+	}
+
+}
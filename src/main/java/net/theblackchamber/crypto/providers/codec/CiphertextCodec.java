@@ -0,0 +1,126 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 Seamus Minogue
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.theblackchamber.crypto.providers.codec;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Strategy which will convert binary ciphertext to and from text. Codecs
+ * encode straight from the ciphertext array into a caller sized
+ * <code>byte[]</code> (ASCII) or <code>char[]</code> and decode straight
+ * into a caller supplied array, so no intermediate copies are made. <br>
+ * Implementations are stateless and thread safe. Malformed text is reported
+ * with an {@link IllegalArgumentException}, as {@link java.util.Base64} does.
+ * 
+ * @author sminogue
+ * 
+ */
+public interface CiphertextCodec {
+
+	/**
+	 * Method which will return the number of characters produced when encoding
+	 * the given number of bytes.
+	 * 
+	 * @param length
+	 * @return
+	 */
+	int encodedLength(int length);
+
+	/**
+	 * Method which will return the largest number of bytes the given number
+	 * of characters can decode to.
+	 * 
+	 * @param encodedLength
+	 * @return
+	 */
+	int maxDecodedLength(int encodedLength);
+
+	/**
+	 * Method which will encode a range of bytes as ASCII into an array.
+	 * 
+	 * @param src
+	 * @param offset
+	 * @param length
+	 * @param dst
+	 *            Must have {@link #encodedLength(int)} bytes from dstOffset.
+	 * @param dstOffset
+	 * @return Number of bytes written.
+	 */
+	int encode(byte[] src, int offset, int length, byte[] dst, int dstOffset);
+
+	/**
+	 * Method which will encode a range of bytes into a char array.
+	 * 
+	 * @param src
+	 * @param offset
+	 * @param length
+	 * @param dst
+	 *            Must have {@link #encodedLength(int)} chars from dstOffset.
+	 * @param dstOffset
+	 * @return Number of chars written.
+	 */
+	int encode(byte[] src, int offset, int length, char[] dst, int dstOffset);
+
+	/**
+	 * Method which will decode text into an array.
+	 * 
+	 * @param src
+	 * @param dst
+	 *            Must have {@link #maxDecodedLength(int)} bytes from
+	 *            dstOffset.
+	 * @param dstOffset
+	 * @return Number of bytes written.
+	 * @throws IllegalArgumentException
+	 *             If the text is not valid for this codec.
+	 */
+	int decode(CharSequence src, byte[] dst, int dstOffset);
+
+	/**
+	 * Method which will encode bytes to a string.
+	 * 
+	 * @param src
+	 * @return
+	 */
+	default String encodeToString(byte[] src) {
+		byte[] encoded = new byte[encodedLength(src.length)];
+		int length = encode(src, 0, src.length, encoded, 0);
+		return new String(encoded, 0, length, StandardCharsets.ISO_8859_1);
+	}
+
+	/**
+	 * Method which will decode text to a new array.
+	 * 
+	 * @param src
+	 * @return
+	 * @throws IllegalArgumentException
+	 *             If the text is not valid for this codec.
+	 */
+	default byte[] decode(CharSequence src) {
+		byte[] decoded = new byte[maxDecodedLength(src.length())];
+		int length = decode(src, decoded, 0);
+		return length == decoded.length ? decoded : Arrays.copyOf(decoded, length);
+	}
+
+}
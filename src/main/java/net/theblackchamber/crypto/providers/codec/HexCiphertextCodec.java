@@ -0,0 +1,89 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 Seamus Minogue
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.theblackchamber.crypto.providers.codec;
+
+/**
+ * Hexadecimal codec. Encodes as upper case, matching the "hexadecimal" output
+ * of the legacy providers, and decodes either case. Doubles the size of the
+ * ciphertext so is mainly of use for compatibility.
+ * 
+ * @author sminogue
+ * 
+ */
+public final class HexCiphertextCodec implements CiphertextCodec {
+
+	private static final char[] DIGITS = "0123456789ABCDEF".toCharArray();
+
+	@Override
+	public int encodedLength(int length) {
+		return length * 2;
+	}
+
+	@Override
+	public int maxDecodedLength(int encodedLength) {
+		return encodedLength / 2;
+	}
+
+	@Override
+	public int encode(byte[] src, int offset, int length, byte[] dst, int dstOffset) {
+		int out = dstOffset;
+		for (int i = offset; i < offset + length; i++) {
+			dst[out++] = (byte) DIGITS[(src[i] >>> 4) & 0xf];
+			dst[out++] = (byte) DIGITS[src[i] & 0xf];
+		}
+		return out - dstOffset;
+	}
+
+	@Override
+	public int encode(byte[] src, int offset, int length, char[] dst, int dstOffset) {
+		int out = dstOffset;
+		for (int i = offset; i < offset + length; i++) {
+			dst[out++] = DIGITS[(src[i] >>> 4) & 0xf];
+			dst[out++] = DIGITS[src[i] & 0xf];
+		}
+		return out - dstOffset;
+	}
+
+	@Override
+	public int decode(CharSequence src, byte[] dst, int dstOffset) {
+		int length = src.length();
+		if (length % 2 != 0) {
+			throw new IllegalArgumentException("Invalid hexadecimal length: " + length);
+		}
+		int out = dstOffset;
+		for (int i = 0; i < length; i += 2) {
+			dst[out++] = (byte) (digit(src, i) << 4 | digit(src, i + 1));
+		}
+		return out - dstOffset;
+	}
+
+	private static int digit(CharSequence src, int index) {
+		int digit = Character.digit(src.charAt(index), 16);
+		if (digit < 0) {
+			throw new IllegalArgumentException("Illegal hexadecimal character at " + index);
+		}
+		return digit;
+	}
+
+}
@@ -0,0 +1,160 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 Seamus Minogue
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.theblackchamber.crypto.providers.codec;
+
+import java.util.Arrays;
+
+/**
+ * Z85 codec, the ZeroMQ variant of Base85 whose alphabet has no quotes or
+ * backslash, so it needs no escaping in JSON strings. It does hold
+ * <code>&lt; &gt; &amp;</code>, which must be escaped in XML, and
+ * <code>= : # !</code>, which are significant in properties files. Every 4
+ * bytes become 5 characters, 25% overhead against 33% for Base64. <br>
+ * The Z85 specification only covers multiples of 4 bytes. A final partial
+ * group of n bytes is encoded as n + 1 characters, the way Ascii85 does, so
+ * ciphertexts of any length can be encoded.
+ * 
+ * @author sminogue
+ * 
+ */
+public final class Z85CiphertextCodec implements CiphertextCodec {
+
+	private static final char[] ALPHABET = ("0123456789abcdefghijklmnopqrstuvwxyz"
+			+ "ABCDEFGHIJKLMNOPQRSTUVWXYZ.-:+=^!/*?&<>()[]{}@%$#").toCharArray();
+
+	private static final int[] VALUES = new int[128];
+
+	static {
+		Arrays.fill(VALUES, -1);
+		for (int i = 0; i < ALPHABET.length; i++) {
+			VALUES[ALPHABET[i]] = i;
+		}
+	}
+
+	@Override
+	public int encodedLength(int length) {
+		int remaining = length % 4;
+		return length / 4 * 5 + (remaining == 0 ? 0 : remaining + 1);
+	}
+
+	@Override
+	public int maxDecodedLength(int encodedLength) {
+		int remaining = encodedLength % 5;
+		return encodedLength / 5 * 4 + (remaining == 0 ? 0 : remaining - 1);
+	}
+
+	@Override
+	public int encode(byte[] src, int offset, int length, byte[] dst, int dstOffset) {
+		char[] digits = new char[5];
+		int out = dstOffset;
+		for (int in = offset; in < offset + length; in += 4) {
+			int count = encodeGroup(src, in, Math.min(4, offset + length - in), digits);
+			for (int i = 0; i < count; i++) {
+				dst[out++] = (byte) digits[i];
+			}
+		}
+		return out - dstOffset;
+	}
+
+	@Override
+	public int encode(byte[] src, int offset, int length, char[] dst, int dstOffset) {
+		int out = dstOffset;
+		int end = offset + length - length % 4;
+		for (int in = offset; in < end; in += 4) {
+			encodeGroup(src, in, 4, dst, out);
+			out += 5;
+		}
+		if (length % 4 != 0) {
+			char[] digits = new char[5];
+			int count = encodeGroup(src, end, length % 4, digits);
+			System.arraycopy(digits, 0, dst, out, count);
+			out += count;
+		}
+		return out - dstOffset;
+	}
+
+	@Override
+	public int decode(CharSequence src, byte[] dst, int dstOffset) {
+		int length = src.length();
+		int remaining = length % 5;
+		if (remaining == 1) {
+			throw new IllegalArgumentException("Invalid Z85 length: " + length);
+		}
+		int out = dstOffset;
+		int end = length - remaining;
+		for (int in = 0; in < end; in += 5) {
+			long value = 0;
+			for (int i = 0; i < 5; i++) {
+				value = value * 85 + value(src, in + i);
+			}
+			if (value > 0xffffffffL) {
+				throw new IllegalArgumentException("Invalid Z85 group at " + in);
+			}
+			dst[out++] = (byte) (value >>> 24);
+			dst[out++] = (byte) (value >>> 16);
+			dst[out++] = (byte) (value >>> 8);
+			dst[out++] = (byte) value;
+		}
+		if (remaining > 0) {
+			// Pad with the highest digit so truncation gives back the bytes
+			long value = 0;
+			for (int i = 0; i < 5; i++) {
+				value = value * 85 + (i < remaining ? value(src, end + i) : 84);
+			}
+			if (value > 0xffffffffL) {
+				throw new IllegalArgumentException("Invalid Z85 group at " + end);
+			}
+			for (int i = 0; i < remaining - 1; i++) {
+				dst[out++] = (byte) (value >>> (24 - 8 * i));
+			}
+		}
+		return out - dstOffset;
+	}
+
+	private static int encodeGroup(byte[] src, int offset, int count, char[] digits) {
+		encodeGroup(src, offset, count, digits, 0);
+		return count == 4 ? 5 : count + 1;
+	}
+
+	private static void encodeGroup(byte[] src, int offset, int count, char[] dst, int dstOffset) {
+		long value = 0;
+		for (int i = 0; i < 4; i++) {
+			value = value << 8 | (i < count ? src[offset + i] & 0xff : 0);
+		}
+		for (int i = 4; i >= 0; i--) {
+			dst[dstOffset + i] = ALPHABET[(int) (value % 85)];
+			value /= 85;
+		}
+	}
+
+	private static int value(CharSequence src, int index) {
+		char c = src.charAt(index);
+		int value = c < 128 ? VALUES[c] : -1;
+		if (value < 0) {
+			throw new IllegalArgumentException("Illegal Z85 character at " + index);
+		}
+		return value;
+	}
+
+}
@@ -0,0 +1,261 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 Seamus Minogue
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.theblackchamber.crypto.providers.compression;
+
+import java.io.IOException;
+import java.security.GeneralSecurityException;
+import java.util.Arrays;
+
+import net.theblackchamber.crypto.exceptions.MissingParameterException;
+import net.theblackchamber.crypto.providers.EncryptionProvider2;
+
+/**
+ * Provider which will compress data before encrypting it with another
+ * provider. Ciphertext does not compress, so text such as JSON or logs is
+ * much smaller stored or sent this way. <br>
+ * The clear text is framed before encryption. The first byte is 0 for data
+ * stored as is, otherwise the id of the {@link CompressionCodec} used,
+ * followed by the 4 byte uncompressed length and the compressed data. Data is
+ * stored as is when it is short, when a sample of it looks already
+ * compressed or random (high byte entropy), or when compressing did not make
+ * it smaller. Decryption uses whichever registered codec the frame names. <br>
+ * Compressed data can be many times larger than its ciphertext, so
+ * {@link #plaintextLength(int)} is not an upper bound for this provider.
+ * Text is decrypted into a buffer sized from the clear text, while callers of
+ * the buffer based decrypt must size dst from the data they expect. <br>
+ * Compression makes the length of the ciphertext depend on the content of
+ * the clear text. When a secret is compressed together with data an attacker
+ * can influence, as in the CRIME and BREACH attacks on TLS and HTTP, the
+ * attacker can recover the secret by varying their part and watching the
+ * ciphertext length. Do not use this provider for data which mixes secrets
+ * such as tokens, passwords or keys with attacker-influenced content; encrypt
+ * such data with the delegate directly.
+ * Usage: <code>
+ * EncryptionProvider2 encryptionProvider = new CompressingEncryptionProvider2(EncryptionProviderFactory2.getProvider(key));
+ * FileEncryptor2 fileEncryptor = new FileEncryptor2(encryptionProvider);
+ * </code>
+ * 
+ * @author sminogue
+ * 
+ */
+public class CompressingEncryptionProvider2 extends EncryptionProvider2 {
+
+	/**
+	 * Default size below which data is stored as is.
+	 */
+	public static final int DEFAULT_MINIMUM_SIZE = 128;
+
+	/**
+	 * Default sampled entropy, in bits per byte, above which data is stored as
+	 * is. Compressed or encrypted data samples at close to 8.
+	 */
+	public static final double DEFAULT_MAXIMUM_ENTROPY = 7.5;
+
+	/**
+	 * Largest uncompressed size accepted when decrypting.
+	 */
+	public static final int MAX_ORIGINAL_LENGTH = Integer.MAX_VALUE - 8;
+
+	private static final byte STORED = 0;
+	private static final int HEADER_SIZE = 5;
+	private static final int SAMPLE_WINDOWS = 16;
+	private static final int SAMPLE_WINDOW_SIZE = 256;
+
+	private final EncryptionProvider2 delegate;
+	private final CompressionCodec codec;
+	private final int minimumSize;
+	private final double maximumEntropy;
+
+	public CompressingEncryptionProvider2(EncryptionProvider2 delegate) {
+		this(delegate, CompressionCodecs.getCodec(DeflateCompressionCodec.ID), DEFAULT_MINIMUM_SIZE,
+				DEFAULT_MAXIMUM_ENTROPY);
+	}
+
+	/**
+	 * @param delegate
+	 *            Provider which encrypts the framed data.
+	 * @param codec
+	 *            Codec used to compress. Must be registered with
+	 *            {@link CompressionCodecs} for the data to be decrypted.
+	 * @param minimumSize
+	 *            Size below which data is stored as is.
+	 * @param maximumEntropy
+	 *            Sampled entropy in bits per byte above which data is stored
+	 *            as is. 8 or more to always try compressing.
+	 */
+	public CompressingEncryptionProvider2(EncryptionProvider2 delegate, CompressionCodec codec, int minimumSize,
+			double maximumEntropy) {
+		super(delegate.getKey());
+		if (codec == null || codec.getId() <= 0) {
+			throw new IllegalArgumentException("A compression codec with an id from 1 to 127 is required");
+		}
+		this.delegate = delegate;
+		this.codec = codec;
+		this.minimumSize = minimumSize;
+		this.maximumEntropy = maximumEntropy;
+	}
+
+	public EncryptionProvider2 getDelegate() {
+		return delegate;
+	}
+
+	public CompressionCodec getCompressionCodec() {
+		return codec;
+	}
+
+	@Override
+	protected byte[] performEncryption(byte[] data, byte[] associated) throws GeneralSecurityException {
+		try {
+			return delegate.encrypt(frame(data), associated);
+		} catch (MissingParameterException e) {
+			throw new GeneralSecurityException(e.getMessage(), e);
+		}
+	}
+
+	@Override
+	protected byte[] performDecryption(byte[] data, byte[] associated) throws GeneralSecurityException {
+
+		byte[] framed;
+		try {
+			framed = delegate.decrypt(data, associated);
+		} catch (MissingParameterException e) {
+			throw new GeneralSecurityException(e.getMessage(), e);
+		}
+
+		if (framed.length == 0) {
+			throw new GeneralSecurityException("Missing compression frame");
+		}
+
+		byte flag = framed[0];
+		if (flag == STORED) {
+			return Arrays.copyOfRange(framed, 1, framed.length);
+		}
+
+		CompressionCodec frameCodec = CompressionCodecs.getCodec(flag);
+		if (frameCodec == null) {
+			throw new GeneralSecurityException("Unknown compression codec id: " + flag);
+		}
+		if (framed.length < HEADER_SIZE) {
+			throw new GeneralSecurityException("Truncated compression frame");
+		}
+
+		int originalLength = (framed[1] & 0xff) << 24 | (framed[2] & 0xff) << 16 | (framed[3] & 0xff) << 8
+				| (framed[4] & 0xff);
+		if (originalLength < 0 || originalLength > MAX_ORIGINAL_LENGTH) {
+			throw new GeneralSecurityException("Invalid uncompressed length: " + originalLength);
+		}
+
+		byte[] clearText;
+		try {
+			clearText = frameCodec.decompress(framed, HEADER_SIZE, framed.length - HEADER_SIZE, originalLength);
+		} catch (IOException e) {
+			throw new GeneralSecurityException("Failed to decompress with " + frameCodec.getName() + ": " + e.getMessage(), e);
+		}
+		return clearText;
+	}
+
+	@Override
+	protected boolean isPlaintextLengthBounded() {
+		return false;
+	}
+
+	@Override
+	protected int getMinimumCiphertextOverhead(int overhead) throws GeneralSecurityException {
+		int delegateOverhead = delegate.ciphertextLength(0);
+		int delegateMinimumOverhead = delegateOverhead - delegate.plaintextLength(delegateOverhead);
+		return overhead - delegateOverhead + delegateMinimumOverhead;
+	}
+
+	/**
+	 * Method which will frame data, compressed if worthwhile.
+	 * 
+	 * @param data
+	 * @return
+	 */
+	byte[] frame(byte[] data) {
+
+		if (data.length >= minimumSize && sampleEntropy(data) <= maximumEntropy) {
+			// Only worth keeping if smaller than storing
+			byte[] framed = new byte[data.length + 1];
+			int compressed = codec.compress(data, 0, data.length, framed, HEADER_SIZE, data.length + 1 - HEADER_SIZE);
+			if (compressed >= 0) {
+				framed[0] = codec.getId();
+				framed[1] = (byte) (data.length >>> 24);
+				framed[2] = (byte) (data.length >>> 16);
+				framed[3] = (byte) (data.length >>> 8);
+				framed[4] = (byte) data.length;
+				return Arrays.copyOf(framed, HEADER_SIZE + compressed);
+			}
+		}
+
+		byte[] framed = new byte[data.length + 1];
+		framed[0] = STORED;
+		System.arraycopy(data, 0, framed, 1, data.length);
+		return framed;
+	}
+
+	/**
+	 * Method which will estimate the Shannon entropy of data in bits per byte
+	 * from up to {@value #SAMPLE_WINDOWS} evenly spaced windows of
+	 * {@value #SAMPLE_WINDOW_SIZE} bytes.
+	 * 
+	 * @param data
+	 * @return
+	 */
+	static double sampleEntropy(byte[] data) {
+
+		int[] counts = new int[256];
+		int sampled = 0;
+
+		if (data.length <= SAMPLE_WINDOWS * SAMPLE_WINDOW_SIZE) {
+			for (byte b : data) {
+				counts[b & 0xff]++;
+			}
+			sampled = data.length;
+		} else {
+			long span = data.length - SAMPLE_WINDOW_SIZE;
+			for (int window = 0; window < SAMPLE_WINDOWS; window++) {
+				int start = (int) (span * window / (SAMPLE_WINDOWS - 1));
+				for (int i = start; i < start + SAMPLE_WINDOW_SIZE; i++) {
+					counts[data[i] & 0xff]++;
+				}
+			}
+			sampled = SAMPLE_WINDOWS * SAMPLE_WINDOW_SIZE;
+		}
+
+		if (sampled == 0) {
+			return 0;
+		}
+
+		double entropy = 0;
+		for (int count : counts) {
+			if (count > 0) {
+				double p = (double) count / sampled;
+				entropy -= p * Math.log(p);
+			}
+		}
+		return entropy / Math.log(2);
+	}
+
+}
@@ -0,0 +1,121 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 Seamus Minogue
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.theblackchamber.crypto.providers.compression;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Service provider interface for the compression stage of
+ * {@link CompressingEncryptionProvider2}. Deflate is built in. Faster codecs
+ * (for example LZ4 or Zstandard) can be added by implementing this interface
+ * and listing the class in
+ * <code>META-INF/services/net.theblackchamber.crypto.providers.compression.CompressionCodec</code>.
+ * <br>
+ * The id is written into every frame so it must never change once data has
+ * been written with it. Implementations must be thread safe.
+ * 
+ * @author sminogue
+ * 
+ */
+public interface CompressionCodec {
+
+	/**
+	 * Method which will return the id written in the frame flag. Must be
+	 * between 1 and 127, 0 marks uncompressed data. Ids up to 15 are reserved
+	 * for codecs shipped with this library.
+	 * 
+	 * @return
+	 */
+	byte getId();
+
+	/**
+	 * Method which will return the name of the codec, for logging.
+	 * 
+	 * @return
+	 */
+	String getName();
+
+	/**
+	 * Method which will compress a range of bytes into an array, giving up if
+	 * the result would not fit.
+	 * 
+	 * @param src
+	 * @param offset
+	 * @param length
+	 * @param dst
+	 * @param dstOffset
+	 * @param maxLength
+	 *            Most bytes which may be written to dst.
+	 * @return Number of bytes written, or -1 if the compressed data would be
+	 *         longer than maxLength.
+	 */
+	int compress(byte[] src, int offset, int length, byte[] dst, int dstOffset, int maxLength);
+
+	/**
+	 * Method which will decompress a range of bytes into an array.
+	 * 
+	 * @param src
+	 * @param offset
+	 * @param length
+	 * @param dst
+	 * @param dstOffset
+	 * @param originalLength
+	 *            Exact number of bytes the data decompresses to.
+	 * @throws IOException
+	 *             If the data is corrupt or does not decompress to
+	 *             originalLength bytes.
+	 */
+	void decompress(byte[] src, int offset, int length, byte[] dst, int dstOffset, int originalLength)
+			throws IOException;
+
+	/**
+	 * Method which will decompress a range of bytes into a new array. The
+	 * length comes from the frame, so implementations should grow the output
+	 * as data is decompressed rather than allocate it up front. The default
+	 * implementation allocates originalLength bytes and calls
+	 * {@link #decompress(byte[], int, int, byte[], int, int)}.
+	 * 
+	 * @param src
+	 * @param offset
+	 * @param length
+	 * @param originalLength
+	 *            Exact number of bytes the data decompresses to.
+	 * @return The decompressed data, originalLength bytes.
+	 * @throws IOException
+	 *             If the data is corrupt or does not decompress to
+	 *             originalLength bytes.
+	 */
+	default byte[] decompress(byte[] src, int offset, int length, int originalLength) throws IOException {
+		byte[] dst = new byte[originalLength];
+		try {
+			decompress(src, offset, length, dst, 0, originalLength);
+		} catch (IOException | RuntimeException e) {
+			Arrays.fill(dst, (byte) 0);
+			throw e;
+		}
+		return dst;
+	}
+
+}
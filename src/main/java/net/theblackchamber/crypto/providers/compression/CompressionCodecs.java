@@ -0,0 +1,102 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 Seamus Minogue
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.theblackchamber.crypto.providers.compression;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.ServiceConfigurationError;
+import java.util.ServiceLoader;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Registry of the {@link CompressionCodec}s able to decompress frames: the
+ * built in Deflate codec plus any found with {@link ServiceLoader}. Loaded
+ * once, on first use.
+ * 
+ * @author sminogue
+ * 
+ */
+public final class CompressionCodecs {
+
+	private static final Log LOG = LogFactory.getLog(CompressionCodecs.class);
+
+	private static final CompressionCodec[] BY_ID = load();
+
+	private CompressionCodecs() {
+	}
+
+	/**
+	 * Method which will return the codec with an id.
+	 * 
+	 * @param id
+	 * @return The codec, or null if none is registered with that id.
+	 */
+	public static CompressionCodec getCodec(byte id) {
+		return id > 0 ? BY_ID[id] : null;
+	}
+
+	/**
+	 * Method which will return all registered codecs.
+	 * 
+	 * @return
+	 */
+	public static List<CompressionCodec> getCodecs() {
+		List<CompressionCodec> codecs = new ArrayList<CompressionCodec>();
+		for (CompressionCodec codec : BY_ID) {
+			if (codec != null) {
+				codecs.add(codec);
+			}
+		}
+		return Collections.unmodifiableList(codecs);
+	}
+
+	private static CompressionCodec[] load() {
+		CompressionCodec[] codecs = new CompressionCodec[128];
+		register(codecs, new DeflateCompressionCodec());
+		try {
+			for (CompressionCodec codec : ServiceLoader.load(CompressionCodec.class)) {
+				register(codecs, codec);
+			}
+		} catch (ServiceConfigurationError e) {
+			LOG.warn("Failed to load compression codecs: " + e.getMessage(), e);
+		}
+		return codecs;
+	}
+
+	private static void register(CompressionCodec[] codecs, CompressionCodec codec) {
+		byte id = codec.getId();
+		if (id <= 0) {
+			LOG.warn("Ignoring compression codec " + codec.getName() + " with invalid id " + id);
+		} else if (codecs[id] != null) {
+			LOG.warn("Ignoring compression codec " + codec.getName() + ", id " + id + " is already used by "
+					+ codecs[id].getName());
+		} else {
+			codecs[id] = codec;
+		}
+	}
+
+}
@@ -0,0 +1,178 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 Seamus Minogue
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.theblackchamber.crypto.providers.compression;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Built in Deflate codec (id 1). Raw Deflate is used, without the zlib header
+ * and checksum, as the encryption already authenticates the data. Each thread
+ * reuses its own {@link Deflater} and {@link Inflater}.
+ * 
+ * @author sminogue
+ * 
+ */
+public final class DeflateCompressionCodec implements CompressionCodec {
+
+	public static final byte ID = 1;
+
+	/**
+	 * Smallest initial output of {@link #decompress(byte[], int, int, int)}.
+	 */
+	private static final int MINIMUM_OUTPUT_SIZE = 4096;
+
+	private final int level;
+
+	private final ThreadLocal<Deflater> deflaters = new ThreadLocal<Deflater>();
+	private final ThreadLocal<Inflater> inflaters = new ThreadLocal<Inflater>();
+
+	public DeflateCompressionCodec() {
+		this(Deflater.DEFAULT_COMPRESSION);
+	}
+
+	/**
+	 * @param level
+	 *            Deflate level, 1 (fastest) to 9 (smallest), or
+	 *            {@link Deflater#DEFAULT_COMPRESSION}.
+	 */
+	public DeflateCompressionCodec(int level) {
+		if ((level < Deflater.BEST_SPEED || level > Deflater.BEST_COMPRESSION) && level != Deflater.DEFAULT_COMPRESSION) {
+			throw new IllegalArgumentException("Invalid deflate level: " + level);
+		}
+		this.level = level;
+	}
+
+	@Override
+	public byte getId() {
+		return ID;
+	}
+
+	@Override
+	public String getName() {
+		return "deflate";
+	}
+
+	public int getLevel() {
+		return level;
+	}
+
+	@Override
+	public int compress(byte[] src, int offset, int length, byte[] dst, int dstOffset, int maxLength) {
+		Deflater deflater = deflaters.get();
+		if (deflater == null) {
+			deflater = new Deflater(level, true);
+			deflaters.set(deflater);
+		}
+		try {
+			deflater.setInput(src, offset, length);
+			deflater.finish();
+			int written = 0;
+			while (!deflater.finished()) {
+				if (written == maxLength) {
+					return -1;
+				}
+				written += deflater.deflate(dst, dstOffset + written, maxLength - written);
+			}
+			return written;
+		} finally {
+			deflater.reset();
+		}
+	}
+
+	@Override
+	public void decompress(byte[] src, int offset, int length, byte[] dst, int dstOffset, int originalLength)
+			throws IOException {
+		Inflater inflater = getInflater();
+		try {
+			inflater.setInput(src, offset, length);
+			int written = 0;
+			while (written < originalLength) {
+				int read = inflater.inflate(dst, dstOffset + written, originalLength - written);
+				if (read == 0 && (inflater.finished() || inflater.needsInput() || inflater.needsDictionary())) {
+					break;
+				}
+				written += read;
+			}
+			if (written != originalLength) {
+				throw new IOException("Compressed data is truncated");
+			}
+		} catch (DataFormatException e) {
+			throw new IOException("Invalid compressed data: " + e.getMessage(), e);
+		} finally {
+			inflater.reset();
+		}
+	}
+
+	/**
+	 * Output starts at a few times the compressed size and doubles, up to
+	 * originalLength, as data is inflated. Outgrown buffers are wiped.
+	 */
+	@Override
+	public byte[] decompress(byte[] src, int offset, int length, int originalLength) throws IOException {
+		Inflater inflater = getInflater();
+		byte[] dst = new byte[(int) Math.min(originalLength, Math.max(MINIMUM_OUTPUT_SIZE, length * 4L))];
+		try {
+			inflater.setInput(src, offset, length);
+			int written = 0;
+			while (written < originalLength) {
+				if (written == dst.length) {
+					byte[] grown = Arrays.copyOf(dst, (int) Math.min(originalLength, dst.length * 2L));
+					Arrays.fill(dst, (byte) 0);
+					dst = grown;
+				}
+				int read = inflater.inflate(dst, written, dst.length - written);
+				if (read == 0 && (inflater.finished() || inflater.needsInput() || inflater.needsDictionary())) {
+					break;
+				}
+				written += read;
+			}
+			if (written != originalLength) {
+				throw new IOException("Compressed data is truncated");
+			}
+			return dst;
+		} catch (DataFormatException e) {
+			Arrays.fill(dst, (byte) 0);
+			throw new IOException("Invalid compressed data: " + e.getMessage(), e);
+		} catch (IOException e) {
+			Arrays.fill(dst, (byte) 0);
+			throw e;
+		} finally {
+			inflater.reset();
+		}
+	}
+
+	private Inflater getInflater() {
+		Inflater inflater = inflaters.get();
+		if (inflater == null) {
+			inflater = new Inflater(true);
+			inflaters.set(inflater);
+		}
+		return inflater;
+	}
+
+}
@@ -33,6 +33,7 @@ import net.theblackchamber.crypto.exceptions.MissingParameterException;
 import net.theblackchamber.crypto.exceptions.UnsupportedAlgorithmException;
 import net.theblackchamber.crypto.exceptions.UnsupportedKeySizeException;
 import net.theblackchamber.crypto.providers.EncryptionProvider;
+import net.theblackchamber.crypto.util.StripedSaltGenerator;
 
 import org.apache.commons.lang3.StringUtils;
 import org.bouncycastle.jce.provider.BouncyCastleProvider;
@@ -40,7 +41,6 @@ import org.bouncycastle.util.encoders.Hex;
 import org.jasypt.encryption.pbe.PooledPBEByteEncryptor;
 import org.jasypt.encryption.pbe.PooledPBEStringEncryptor;
 import org.jasypt.encryption.pbe.config.SimplePBEConfig;
-import org.jasypt.salt.RandomSaltGenerator;
 
 /**
  * Provider which will allow for encryption and decryption of strings using the
@@ -94,7 +94,7 @@ public class AESEncryptionProvider extends EncryptionProvider {
 		config.setKeyObtentionIterations(10);
 		config.setPassword(Hex.toHexString(key.getEncoded()));
 		config.setProvider(new BouncyCastleProvider());
-		config.setSaltGenerator(new RandomSaltGenerator());
+		config.setSaltGenerator(new StripedSaltGenerator());
 		
 		stringEncryptor = new PooledPBEStringEncryptor();
 		stringEncryptor.setPoolSize(ENCRYPTOR_POOL_SIZE);
@@ -1,32 +1,126 @@
 package net.theblackchamber.crypto.providers.symmetric;
 
+import java.nio.ByteBuffer;
 import java.security.GeneralSecurityException;
-import java.util.Base64;
-import java.util.Base64.Decoder;
-import java.util.Base64.Encoder;
 
-import com.google.crypto.tink.Aead;
 import com.google.crypto.tink.KeysetHandle;
 
-import net.theblackchamber.crypto.providers.EncryptionProvider2;
+/**
+ * Provider which will allow for encryption and decryption using the AES-GCM
+ * primitive of a Tink keyset. <br>
+ * Usage: <code>
+ * KeysetHandle key = KeystoreUtils2.getSecretKey(config);
+ * EncryptionProvider2 encryptionProvider = new AESEncryptionProvider2(key);
+ * String cipherText = encryptionProvider.encrypt("clear text");
+ * </code> <br>
+ * Optionally the provider can bypass the Tink primitive set and call the JCE
+ * directly, which is faster for small messages. Ciphertexts are identical in
+ * format either way. Keysets containing enabled keys other than AES-GCM keys
+ * always use Tink.
+ *
+ * @author sminogue
+ *
+ */
+public class AESEncryptionProvider2 extends AeadEncryptionProvider2{
 
-public class AESEncryptionProvider2 extends EncryptionProvider2{
+	private final boolean jceEngine;
+
+	/**
+	 * Engine built from the keyset currently in use. Null until it has been
+	 * built.
+	 */
+	private volatile ResolvedEngine resolvedEngine;
 
-	
-	
 	public AESEncryptionProvider2(KeysetHandle keysetHandle) {
+		this(keysetHandle, false);
+	}
+
+	/**
+	 * @param keysetHandle
+	 *            Keyset to encrypt and decrypt with.
+	 * @param jceEngine
+	 *            True to call the JCE directly rather than the Tink primitive.
+	 */
+	public AESEncryptionProvider2(KeysetHandle keysetHandle, boolean jceEngine) {
 		super(keysetHandle);
+		this.jceEngine = jceEngine;
+	}
+
+	/**
+	 * Method which will indicate whether this provider was asked to use the
+	 * JCE engine.
+	 *
+	 * @return
+	 */
+	public boolean isJceEngine() {
+		return jceEngine;
 	}
 
 	@Override
 	protected byte[] performEncryption(byte[] data, byte[] associated) throws GeneralSecurityException {
-		Aead aead = getKey().getPrimitive(Aead.class);
-		return aead.encrypt(data, associated);
+		JceAesGcmEngine engine = getEngine();
+		return engine == null ? super.performEncryption(data, associated) : engine.encrypt(data, associated);
 	}
 
 	@Override
 	protected byte[] performDecryption(byte[] data, byte[] associated) throws GeneralSecurityException {
-		Aead aead = getKey().getPrimitive(Aead.class);
-		return aead.decrypt(data, associated);
+		JceAesGcmEngine engine = getEngine();
+		return engine == null ? super.performDecryption(data, associated) : engine.decrypt(data, associated);
+	}
+
+	@Override
+	protected byte[] tryDecryption(byte[] data, byte[] associated) throws GeneralSecurityException {
+		JceAesGcmEngine engine = getEngine();
+		return engine == null ? super.tryDecryption(data, associated) : engine.tryDecrypt(data, associated);
+	}
+
+	@Override
+	protected int performEncryption(ByteBuffer src, ByteBuffer associated, ByteBuffer dst)
+			throws GeneralSecurityException {
+		JceAesGcmEngine engine = getEngine();
+		return engine == null ? super.performEncryption(src, associated, dst) : engine.encrypt(src, associated, dst);
 	}
+
+	@Override
+	protected int performDecryption(ByteBuffer src, ByteBuffer associated, ByteBuffer dst)
+			throws GeneralSecurityException {
+		JceAesGcmEngine engine = getEngine();
+		return engine == null ? super.performDecryption(src, associated, dst) : engine.decrypt(src, associated, dst);
+	}
+
+	/**
+	 * Method which will return the JCE engine for the current key, or null if
+	 * Tink should be used.
+	 *
+	 * @return
+	 * @throws GeneralSecurityException
+	 */
+	private JceAesGcmEngine getEngine() throws GeneralSecurityException {
+		if (!jceEngine) {
+			return null;
+		}
+		KeysetHandle key = getKey();
+		ResolvedEngine current = resolvedEngine;
+		if (current == null || current.handle != key) {
+			current = new ResolvedEngine(key, JceAesGcmEngine.create(key));
+			resolvedEngine = current;
+		}
+		return current.engine;
+	}
+
+	/**
+	 * Immutable pairing of a keyset with the engine built from it.
+	 */
+	private static final class ResolvedEngine {
+
+		private final KeysetHandle handle;
+		private final JceAesGcmEngine engine;
+
+		private ResolvedEngine(KeysetHandle handle, JceAesGcmEngine engine) {
+			this.handle = handle;
+			this.engine = engine;
+		}
+
+	}
+
 }
@@ -0,0 +1,112 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 Seamus Minogue
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package net.theblackchamber.crypto.providers.symmetric;
+
+import java.security.GeneralSecurityException;
+
+import com.google.crypto.tink.DeterministicAead;
+import com.google.crypto.tink.KeysetHandle;
+
+import net.theblackchamber.crypto.providers.EncryptionProvider2;
+
+/**
+ * Provider which will allow for deterministic encryption and decryption using
+ * the AES-SIV {@link DeterministicAead} primitive of a Tink keyset. <br>
+ * Encrypting the same clear text and associated data always yields the same
+ * ciphertext. This allows ciphertext to be stored in an indexed column and
+ * looked up by exact match, at the cost of revealing which values are equal.
+ * Prefer {@link AESEncryptionProvider2} unless lookups are required. <br>
+ * Usage: <code>
+ * KeystoreUtils2.generateSecretKey(new KeyConfig2(keyfile, "pass", SupportedKeyTemplates.AES256_SIV));
+ * EncryptionProvider2 encryptionProvider = EncryptionProviderFactory2.getProvider(KeystoreUtils2.getSecretKey(config));
+ * String cipherText = encryptionProvider.encrypt("clear text");
+ * </code>
+ * 
+ * @author sminogue
+ * 
+ */
+public class AESSIVEncryptionProvider2 extends EncryptionProvider2 {
+
+	/**
+	 * Primitive resolved from the keyset currently in use. Null until it has
+	 * been successfully resolved.
+	 */
+	private volatile ResolvedDeterministicAead resolved;
+
+	public AESSIVEncryptionProvider2(KeysetHandle keysetHandle) {
+		super(keysetHandle);
+		try {
+			resolved = new ResolvedDeterministicAead(keysetHandle);
+		} catch (GeneralSecurityException e) {
+			// Leave unresolved. The failure is reported on first use.
+			resolved = null;
+		}
+	}
+
+	@Override
+	protected byte[] performEncryption(byte[] data, byte[] associated) throws GeneralSecurityException {
+		return getDeterministicAead().encryptDeterministically(data, associated == null ? new byte[0] : associated);
+	}
+
+	@Override
+	protected byte[] performDecryption(byte[] data, byte[] associated) throws GeneralSecurityException {
+		return getDeterministicAead().decryptDeterministically(data, associated == null ? new byte[0] : associated);
+	}
+
+	/**
+	 * Method which will return the {@link DeterministicAead} primitive for the
+	 * current key, resolving it only if the key has changed since it was last
+	 * resolved.
+	 * 
+	 * @return
+	 * @throws GeneralSecurityException
+	 */
+	protected DeterministicAead getDeterministicAead() throws GeneralSecurityException {
+		KeysetHandle key = getKey();
+		ResolvedDeterministicAead current = resolved;
+		if (current == null || current.handle != key) {
+			// Racing threads may both resolve; either result is valid.
+			current = new ResolvedDeterministicAead(key);
+			resolved = current;
+		}
+		return current.daead;
+	}
+
+	/**
+	 * Immutable pairing of a keyset with the primitive resolved from it.
+	 */
+	private static final class ResolvedDeterministicAead {
+
+		private final KeysetHandle handle;
+		private final DeterministicAead daead;
+
+		private ResolvedDeterministicAead(KeysetHandle handle) throws GeneralSecurityException {
+			this.handle = handle;
+			this.daead = handle.getPrimitive(DeterministicAead.class);
+		}
+
+	}
+
+}
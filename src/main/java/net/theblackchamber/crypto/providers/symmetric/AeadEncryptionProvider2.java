@@ -0,0 +1,257 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 Seamus Minogue
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.theblackchamber.crypto.providers.symmetric;
+
+import java.security.GeneralSecurityException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import com.google.crypto.tink.Aead;
+import com.google.crypto.tink.CleartextKeysetHandle;
+import com.google.crypto.tink.CryptoFormat;
+import com.google.crypto.tink.KeysetHandle;
+import com.google.crypto.tink.Registry;
+import com.google.crypto.tink.proto.KeyStatusType;
+import com.google.crypto.tink.proto.Keyset;
+
+import net.theblackchamber.crypto.providers.BulkDecryptResult;
+import net.theblackchamber.crypto.providers.EncryptionProvider2;
+
+/**
+ * Base for providers which encrypt and decrypt using the {@link Aead} primitive
+ * of a Tink keyset. <br>
+ * The primitive is resolved from the keyset once and shared by all callers (Tink
+ * primitives are thread safe). It is only rebuilt if the {@link KeysetHandle}
+ * used by the provider is replaced. <br>
+ * Decryption does not go through the Tink primitive set. The output prefix of
+ * the ciphertext is looked up in a {@link KeyIdRoutingTable} and the
+ * primitive of that single key is used, so decryption cost does not grow as
+ * rotated keys accumulate in the keyset. Ciphertexts which do not match a
+ * prefixed key are tried against the RAW keys: the primary key first if it
+ * is RAW, then the others in keyset order.
+ * 
+ * @author sminogue
+ * 
+ */
+public abstract class AeadEncryptionProvider2 extends EncryptionProvider2{
+
+	/**
+	 * Primitive resolved from the keyset currently in use. Null until it has
+	 * been successfully resolved.
+	 */
+	private volatile ResolvedAead resolved;
+	
+	protected AeadEncryptionProvider2(KeysetHandle keysetHandle) {
+		super(keysetHandle);
+		try {
+			resolved = new ResolvedAead(keysetHandle);
+		} catch (GeneralSecurityException e) {
+			// Leave unresolved. The failure is reported on first use.
+			resolved = null;
+		}
+	}
+
+	@Override
+	protected byte[] performEncryption(byte[] data, byte[] associated) throws GeneralSecurityException {
+		return getAead().encrypt(data, associated);
+	}
+
+	@Override
+	protected byte[] performDecryption(byte[] data, byte[] associated) throws GeneralSecurityException {
+		byte[] clearText = tryDecryption(data, associated);
+		if (clearText == null) {
+			throw new GeneralSecurityException("decryption failed");
+		}
+		return clearText;
+	}
+
+	/**
+	 * Method which will decrypt with whichever key of the keyset
+	 * authenticates the ciphertext, returning null rather than building an
+	 * exception when none does. The underlying cipher still raises one for
+	 * each key it tries and rejects.
+	 * 
+	 * @param data
+	 * @param associated
+	 * @return The clear text, or null if no key authenticates the ciphertext.
+	 * @throws GeneralSecurityException
+	 *             Only if the keyset itself can not be used.
+	 */
+	protected byte[] tryDecryption(byte[] data, byte[] associated) throws GeneralSecurityException {
+		return getResolved().tryDecrypt(data, associated);
+	}
+
+	/**
+	 * Ciphertexts which match no prefixed key of the keyset are classified
+	 * without decrypting when the keyset has no RAW keys to try them against.
+	 * Authentication failures are reported without building an exception.
+	 */
+	@Override
+	protected byte decryptWithStatus(byte[] cipherText, byte[] associated, byte[][] clearTexts, int index)
+			throws GeneralSecurityException {
+		byte status = getResolved().classify(cipherText);
+		if (status != BulkDecryptResult.OK) {
+			return status;
+		}
+		byte[] clearText = tryDecryption(cipherText, associated);
+		if (clearText == null) {
+			return BulkDecryptResult.AUTH_FAILED;
+		}
+		clearTexts[index] = clearText;
+		return BulkDecryptResult.OK;
+	}
+
+	/**
+	 * Method which will return the {@link Aead} primitive for the current key,
+	 * resolving it only if the key has changed since it was last resolved.
+	 * 
+	 * @return
+	 * @throws GeneralSecurityException
+	 */
+	protected Aead getAead() throws GeneralSecurityException {
+		return getResolved().aead;
+	}
+
+	private ResolvedAead getResolved() throws GeneralSecurityException {
+		KeysetHandle key = getKey();
+		ResolvedAead current = resolved;
+		if (current == null || current.handle != key) {
+			// Racing threads may both resolve; either result is valid.
+			current = new ResolvedAead(key);
+			resolved = current;
+		}
+		return current;
+	}
+
+	/**
+	 * Immutable pairing of a keyset with the primitives resolved from it.
+	 */
+	private static final class ResolvedAead {
+
+		private final KeysetHandle handle;
+		private final Aead aead;
+
+		/**
+		 * Unwrapped primitives of the enabled prefixed keys. Null if the keyset
+		 * can not be routed by key id (duplicate ids), in which case Tink
+		 * decrypts.
+		 */
+		private final KeyIdRoutingTable<Aead> prefixed;
+
+		/**
+		 * Unwrapped primitives of the enabled RAW keys in fallback order.
+		 */
+		private final Aead[] raw;
+
+		private ResolvedAead(KeysetHandle handle) throws GeneralSecurityException {
+			this.handle = handle;
+			this.aead = handle.getPrimitive(Aead.class);
+
+			Keyset keyset = CleartextKeysetHandle.getKeyset(handle);
+			KeyIdRoutingTable<Aead> table = new KeyIdRoutingTable<Aead>(keyset.getKeyCount());
+			List<Aead> rawKeys = new ArrayList<Aead>();
+
+			for (Keyset.Key key : keyset.getKeyList()) {
+				if (key.getStatus() != KeyStatusType.ENABLED) {
+					continue;
+				}
+				Aead primitive = Registry.getPrimitive(key.getKeyData(), Aead.class);
+				byte[] prefix = CryptoFormat.getOutputPrefix(key);
+				if (prefix.length == 0) {
+					if (key.getKeyId() == keyset.getPrimaryKeyId()) {
+						rawKeys.add(0, primitive);
+					} else {
+						rawKeys.add(primitive);
+					}
+				} else if (table != null && !table.put(prefix, primitive)) {
+					table = null;
+				}
+			}
+
+			this.prefixed = table;
+			this.raw = rawKeys.toArray(new Aead[rawKeys.size()]);
+		}
+
+		/**
+		 * Method which will tell whether a ciphertext could belong to this
+		 * keyset from its prefix alone.
+		 * 
+		 * @return {@link BulkDecryptResult#OK} if it may, otherwise
+		 *         {@link BulkDecryptResult#MALFORMED} or
+		 *         {@link BulkDecryptResult#UNKNOWN_KEY}.
+		 */
+		private byte classify(byte[] data) {
+			if (prefixed == null || raw.length > 0) {
+				return BulkDecryptResult.OK;
+			}
+			if (data.length <= CryptoFormat.NON_RAW_PREFIX_SIZE
+					|| (data[0] != CryptoFormat.TINK_START_BYTE && data[0] != CryptoFormat.LEGACY_START_BYTE)) {
+				return BulkDecryptResult.MALFORMED;
+			}
+			return prefixed.route(data) == null ? BulkDecryptResult.UNKNOWN_KEY : BulkDecryptResult.OK;
+		}
+
+		/**
+		 * @return The clear text, or null if no key authenticates the
+		 *         ciphertext.
+		 */
+		private byte[] tryDecrypt(byte[] data, byte[] associated) {
+
+			if (prefixed == null) {
+				return tryDecrypt(aead, data, associated);
+			}
+
+			if (data.length > CryptoFormat.NON_RAW_PREFIX_SIZE) {
+				Aead primitive = prefixed.route(data);
+				if (primitive != null) {
+					// Null could still be a RAW ciphertext which happens to look prefixed.
+					byte[] clearText = tryDecrypt(primitive,
+							Arrays.copyOfRange(data, CryptoFormat.NON_RAW_PREFIX_SIZE, data.length), associated);
+					if (clearText != null) {
+						return clearText;
+					}
+				}
+			}
+
+			for (Aead primitive : raw) {
+				byte[] clearText = tryDecrypt(primitive, data, associated);
+				if (clearText != null) {
+					return clearText;
+				}
+			}
+
+			return null;
+		}
+
+		private static byte[] tryDecrypt(Aead primitive, byte[] data, byte[] associated) {
+			try {
+				return primitive.decrypt(data, associated);
+			} catch (GeneralSecurityException e) {
+				return null;
+			}
+		}
+
+	}
+}
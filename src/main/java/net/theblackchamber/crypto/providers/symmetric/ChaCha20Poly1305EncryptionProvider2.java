@@ -0,0 +1,49 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 Seamus Minogue
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.theblackchamber.crypto.providers.symmetric;
+
+import com.google.crypto.tink.KeysetHandle;
+
+/**
+ * Provider which will allow for encryption and decryption using the
+ * ChaCha20-Poly1305 or XChaCha20-Poly1305 primitive of a Tink keyset. <br>
+ * These run in software at a consistent speed and are considerably faster than
+ * AES-GCM on hosts without AES hardware support. XChaCha20-Poly1305 uses a 24
+ * byte random nonce and is preferred for new keys. <br>
+ * Usage: <code>
+ * KeystoreUtils2.generateSecretKey(new KeyConfig2(keyfile, "pass", SupportedKeyTemplates.XCHACHA20_POLY1305));
+ * EncryptionProvider2 encryptionProvider = EncryptionProviderFactory2.getProvider(KeystoreUtils2.getSecretKey(config));
+ * String cipherText = encryptionProvider.encrypt("clear text");
+ * </code>
+ * 
+ * @author sminogue
+ * 
+ */
+public class ChaCha20Poly1305EncryptionProvider2 extends AeadEncryptionProvider2 {
+
+	public ChaCha20Poly1305EncryptionProvider2(KeysetHandle keysetHandle) {
+		super(keysetHandle);
+	}
+
+}
@@ -30,13 +30,13 @@ import net.theblackchamber.crypto.constants.SupportedEncryptionAlgorithms;
 import net.theblackchamber.crypto.exceptions.UnsupportedAlgorithmException;
 import net.theblackchamber.crypto.exceptions.UnsupportedKeySizeException;
 import net.theblackchamber.crypto.providers.EncryptionProvider;
+import net.theblackchamber.crypto.util.StripedSaltGenerator;
 
 import org.bouncycastle.jce.provider.BouncyCastleProvider;
 import org.bouncycastle.util.encoders.Hex;
 import org.jasypt.encryption.pbe.PooledPBEByteEncryptor;
 import org.jasypt.encryption.pbe.PooledPBEStringEncryptor;
 import org.jasypt.encryption.pbe.config.SimplePBEConfig;
-import org.jasypt.salt.RandomSaltGenerator;
 
 /**
  * 
@@ -69,7 +69,7 @@ public class DESEdeEncryptionProvider extends EncryptionProvider {
 		config.setKeyObtentionIterations(10);
 		config.setPassword(Hex.toHexString(key.getEncoded()));
 		config.setProvider(new BouncyCastleProvider());
-		config.setSaltGenerator(new RandomSaltGenerator());
+		config.setSaltGenerator(new StripedSaltGenerator());
 
 		stringEncryptor = new PooledPBEStringEncryptor();
 		stringEncryptor.setPoolSize(ENCRYPTOR_POOL_SIZE);
@@ -0,0 +1,320 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 Seamus Minogue
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.theblackchamber.crypto.providers.symmetric;
+
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.google.crypto.tink.Aead;
+import com.google.crypto.tink.subtle.AesGcmJce;
+
+import net.theblackchamber.crypto.exceptions.MissingParameterException;
+import net.theblackchamber.crypto.providers.EncryptionProvider2;
+import net.theblackchamber.crypto.util.StripedSecureRandom;
+
+/**
+ * Provider which will encrypt using envelope encryption. Data is encrypted
+ * with a randomly generated AES-256-GCM data encryption key (DEK) and the DEK
+ * is encrypted ("wrapped") with a master provider, typically one built from
+ * the keyset loaded by KeystoreUtils2. <br>
+ * A DEK is reused for up to a configured number of messages or age, so the
+ * master key is only used once per DEK rather than once per message. On the
+ * decrypt side unwrapped DEKs are kept in a bounded LRU cache. This matters
+ * most when the master key is slow to use, for example when it is held by a
+ * key management service. <br>
+ * Ciphertext layout: <code>
+ * version (1 byte) | wrapped DEK length (2 bytes) | wrapped DEK | IV (12 bytes) | ciphertext | tag (16 bytes)
+ * </code> <br>
+ * Usage: <code>
+ * EncryptionProvider2 master = EncryptionProviderFactory2.getProvider(KeystoreUtils2.getSecretKey(config));
+ * EncryptionProvider2 encryptionProvider = new EnvelopeEncryptionProvider2(master);
+ * String cipherText = encryptionProvider.encrypt("clear text");
+ * </code>
+ * 
+ * @author sminogue
+ * 
+ */
+public class EnvelopeEncryptionProvider2 extends EncryptionProvider2 {
+
+	/**
+	 * Default number of messages encrypted with one DEK.
+	 */
+	public static final int DEFAULT_MAX_DEK_USES = 100000;
+
+	/**
+	 * Default age in milliseconds after which a DEK is no longer used to
+	 * encrypt.
+	 */
+	public static final long DEFAULT_MAX_DEK_AGE = TimeUnit.MINUTES.toMillis(5);
+
+	/**
+	 * Default number of unwrapped DEKs cached for decryption.
+	 */
+	public static final int DEFAULT_DEK_CACHE_SIZE = 1024;
+
+	private static final byte VERSION = 1;
+	private static final int DEK_SIZE = 32;
+	private static final int HEADER_SIZE = 3;
+	private static final int DEK_OVERHEAD = 12 + 16;
+	private static final int MAX_WRAPPED_SIZE = 0xffff;
+
+	private final EncryptionProvider2 master;
+	private final int maxDekUses;
+	private final long maxDekAge;
+	private final Map<ByteBuffer, Aead> dekCache;
+
+	/**
+	 * DEK currently used to encrypt. Null until the first encryption.
+	 */
+	private volatile ActiveDek active;
+
+	public EnvelopeEncryptionProvider2(EncryptionProvider2 master) {
+		this(master, DEFAULT_MAX_DEK_USES, DEFAULT_MAX_DEK_AGE, DEFAULT_DEK_CACHE_SIZE);
+	}
+
+	/**
+	 * @param master
+	 *            Provider used to wrap and unwrap DEKs.
+	 * @param maxDekUses
+	 *            Number of messages encrypted with one DEK before a new one is
+	 *            generated.
+	 * @param maxDekAge
+	 *            Age in milliseconds after which a new DEK is generated.
+	 * @param dekCacheSize
+	 *            Number of unwrapped DEKs cached for decryption.
+	 */
+	public EnvelopeEncryptionProvider2(EncryptionProvider2 master, int maxDekUses, long maxDekAge,
+			final int dekCacheSize) {
+		super(master.getKey());
+		if (maxDekUses < 1) {
+			throw new IllegalArgumentException("maxDekUses must be positive");
+		}
+		if (maxDekAge < 1) {
+			throw new IllegalArgumentException("maxDekAge must be positive");
+		}
+		if (dekCacheSize < 1) {
+			throw new IllegalArgumentException("dekCacheSize must be positive");
+		}
+		this.master = master;
+		this.maxDekUses = maxDekUses;
+		this.maxDekAge = maxDekAge;
+		this.dekCache = new LinkedHashMap<ByteBuffer, Aead>(16, 0.75f, true) {
+
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<ByteBuffer, Aead> eldest) {
+				return size() > dekCacheSize;
+			}
+
+		};
+	}
+
+	public EncryptionProvider2 getMaster() {
+		return master;
+	}
+
+	public int getMaxDekUses() {
+		return maxDekUses;
+	}
+
+	public long getMaxDekAge() {
+		return maxDekAge;
+	}
+
+	@Override
+	protected byte[] performEncryption(byte[] data, byte[] associated) throws GeneralSecurityException {
+
+		ActiveDek dek = acquire();
+		byte[] wrapped = dek.wrapped;
+		byte[] cipherText = dek.aead.encrypt(data, associated);
+
+		byte[] output = new byte[HEADER_SIZE + wrapped.length + cipherText.length];
+		output[0] = VERSION;
+		output[1] = (byte) (wrapped.length >>> 8);
+		output[2] = (byte) wrapped.length;
+		System.arraycopy(wrapped, 0, output, HEADER_SIZE, wrapped.length);
+		System.arraycopy(cipherText, 0, output, HEADER_SIZE + wrapped.length, cipherText.length);
+
+		return output;
+	}
+
+	@Override
+	protected byte[] performDecryption(byte[] data, byte[] associated) throws GeneralSecurityException {
+
+		if (data.length < HEADER_SIZE) {
+			throw new GeneralSecurityException("ciphertext too short");
+		}
+		if (data[0] != VERSION) {
+			throw new GeneralSecurityException("Unsupported envelope version: " + data[0]);
+		}
+		int wrappedLength = (data[1] & 0xff) << 8 | (data[2] & 0xff);
+		if (data.length < HEADER_SIZE + wrappedLength + DEK_OVERHEAD) {
+			throw new GeneralSecurityException("ciphertext too short");
+		}
+
+		Aead aead = unwrap(data, HEADER_SIZE, wrappedLength);
+
+		return aead.decrypt(Arrays.copyOfRange(data, HEADER_SIZE + wrappedLength, data.length), associated);
+	}
+
+	@Override
+	protected int getMinimumCiphertextOverhead(int overhead) throws GeneralSecurityException {
+		// The wrapped DEK can be shorter than the one just measured if the
+		// master keyset also holds keys without an output prefix.
+		int masterOverhead = master.ciphertextLength(DEK_SIZE) - DEK_SIZE;
+		int masterMinimumOverhead = masterOverhead + DEK_SIZE - master.plaintextLength(masterOverhead + DEK_SIZE);
+		return overhead - masterOverhead + masterMinimumOverhead;
+	}
+
+	/**
+	 * Method which will discard the DEK used to encrypt, so the next encryption
+	 * generates a new one.
+	 */
+	public void rotateDek() {
+		synchronized (this) {
+			active = null;
+		}
+	}
+
+	/**
+	 * Method which will return the DEK to encrypt with, generating and
+	 * wrapping a new one when the current one has been used up or is too old.
+	 * 
+	 * @return
+	 * @throws GeneralSecurityException
+	 */
+	private ActiveDek acquire() throws GeneralSecurityException {
+		ActiveDek dek = active;
+		if (dek != null && dek.tryUse(maxDekUses, maxDekAge)) {
+			return dek;
+		}
+		synchronized (this) {
+			dek = active;
+			if (dek != null && dek.tryUse(maxDekUses, maxDekAge)) {
+				return dek;
+			}
+			dek = generate();
+			dek.tryUse(maxDekUses, maxDekAge);
+			active = dek;
+			return dek;
+		}
+	}
+
+	private ActiveDek generate() throws GeneralSecurityException {
+		byte[] raw = StripedSecureRandom.randBytes(DEK_SIZE);
+		try {
+			Aead aead = new AesGcmJce(raw);
+			byte[] wrapped = wrap(raw);
+			if (wrapped.length > MAX_WRAPPED_SIZE) {
+				throw new GeneralSecurityException("Wrapped DEK of " + wrapped.length + " bytes is too large");
+			}
+			synchronized (dekCache) {
+				dekCache.put(ByteBuffer.wrap(wrapped), aead);
+			}
+			return new ActiveDek(wrapped, aead, System.currentTimeMillis());
+		} finally {
+			Arrays.fill(raw, (byte) 0);
+		}
+	}
+
+	private byte[] wrap(byte[] raw) throws GeneralSecurityException {
+		try {
+			return master.encrypt(raw);
+		} catch (MissingParameterException e) {
+			throw new GeneralSecurityException(e.getMessage(), e);
+		}
+	}
+
+	private Aead unwrap(byte[] data, int offset, int length) throws GeneralSecurityException {
+
+		ByteBuffer lookup = ByteBuffer.wrap(data, offset, length);
+		Aead aead;
+		synchronized (dekCache) {
+			aead = dekCache.get(lookup);
+		}
+		if (aead != null) {
+			return aead;
+		}
+
+		byte[] wrapped = Arrays.copyOfRange(data, offset, offset + length);
+		byte[] raw;
+		try {
+			raw = master.decrypt(wrapped);
+		} catch (MissingParameterException e) {
+			throw new GeneralSecurityException(e.getMessage(), e);
+		}
+		try {
+			if (raw.length != DEK_SIZE) {
+				throw new GeneralSecurityException("Invalid DEK size: " + raw.length);
+			}
+			aead = new AesGcmJce(raw);
+		} finally {
+			Arrays.fill(raw, (byte) 0);
+		}
+
+		synchronized (dekCache) {
+			dekCache.put(ByteBuffer.wrap(wrapped), aead);
+		}
+		return aead;
+	}
+
+	/**
+	 * DEK used to encrypt, with its usage count and creation time.
+	 */
+	private static final class ActiveDek {
+
+		private final byte[] wrapped;
+		private final Aead aead;
+		private final long created;
+		private final AtomicInteger uses = new AtomicInteger();
+
+		private ActiveDek(byte[] wrapped, Aead aead, long created) {
+			this.wrapped = wrapped;
+			this.aead = aead;
+			this.created = created;
+		}
+
+		private boolean tryUse(int maxUses, long maxAge) {
+			if (System.currentTimeMillis() - created >= maxAge) {
+				return false;
+			}
+			int used;
+			do {
+				used = uses.get();
+				if (used >= maxUses) {
+					return false;
+				}
+			} while (!uses.compareAndSet(used, used + 1));
+			return true;
+		}
+
+	}
+
+}
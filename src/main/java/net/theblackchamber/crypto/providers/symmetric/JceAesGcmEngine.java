@@ -0,0 +1,334 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 Seamus Minogue
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.theblackchamber.crypto.providers.symmetric;
+
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.crypto.Cipher;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+
+import com.google.crypto.tink.CleartextKeysetHandle;
+import com.google.crypto.tink.CryptoFormat;
+import com.google.crypto.tink.KeysetHandle;
+import com.google.crypto.tink.proto.AesGcmKey;
+import com.google.crypto.tink.proto.KeyStatusType;
+import com.google.crypto.tink.proto.Keyset;
+import com.google.protobuf.ExtensionRegistryLite;
+import com.google.protobuf.InvalidProtocolBufferException;
+
+import net.theblackchamber.crypto.util.StripedSecureRandom;
+
+/**
+ * AES-GCM engine which calls the JCE directly instead of going through the
+ * Tink primitive set. The raw key material is read from the keyset once and
+ * each thread reuses its own {@link Cipher}. <br>
+ * Ciphertexts are byte for byte the Tink format: the output prefix of the key
+ * (5 bytes, none for RAW keys), a 12 byte random IV, the encrypted data and a
+ * 16 byte tag. Either side can decrypt what the other produced.
+ * 
+ * @author sminogue
+ * 
+ */
+final class JceAesGcmEngine {
+
+	static final String TYPE_URL = "type.googleapis.com/google.crypto.tink.AesGcmKey";
+
+	private static final String TRANSFORMATION = "AES/GCM/NoPadding";
+	private static final int IV_SIZE = 12;
+	private static final int TAG_SIZE = 16;
+
+	private static final ThreadLocal<Cipher> CIPHERS = new ThreadLocal<Cipher>();
+
+	private final Entry primary;
+
+	/**
+	 * Enabled keys with an output prefix, routed by key id.
+	 */
+	private final KeyIdRoutingTable<Entry> prefixed;
+
+	/**
+	 * Enabled RAW keys in fallback order, tried when no prefixed key matches.
+	 */
+	private final Entry[] raw;
+
+	private JceAesGcmEngine(Entry primary, KeyIdRoutingTable<Entry> prefixed, Entry[] raw) {
+		this.primary = primary;
+		this.prefixed = prefixed;
+		this.raw = raw;
+	}
+
+	/**
+	 * Method which will build an engine for a keyset.
+	 * 
+	 * @param handle
+	 * @return The engine, or null if the keyset has enabled keys which are not
+	 *         AES-GCM keys, or duplicate key ids, and so must be left to Tink.
+	 * @throws GeneralSecurityException
+	 */
+	static JceAesGcmEngine create(KeysetHandle handle) throws GeneralSecurityException {
+
+		Keyset keyset = CleartextKeysetHandle.getKeyset(handle);
+
+		Entry primary = null;
+		KeyIdRoutingTable<Entry> prefixed = new KeyIdRoutingTable<Entry>(keyset.getKeyCount());
+		List<Entry> raw = new ArrayList<Entry>();
+
+		for (Keyset.Key key : keyset.getKeyList()) {
+			if (key.getStatus() != KeyStatusType.ENABLED) {
+				continue;
+			}
+			if (!TYPE_URL.equals(key.getKeyData().getTypeUrl())) {
+				return null;
+			}
+
+			AesGcmKey aesGcmKey;
+			try {
+				aesGcmKey = AesGcmKey.parseFrom(key.getKeyData().getValue(), ExtensionRegistryLite.getEmptyRegistry());
+			} catch (InvalidProtocolBufferException e) {
+				throw new GeneralSecurityException("Invalid AES-GCM key: " + e.getMessage(), e);
+			}
+
+			Entry entry = new Entry(CryptoFormat.getOutputPrefix(key),
+					new SecretKeySpec(aesGcmKey.getKeyValue().toByteArray(), "AES"));
+
+			boolean isPrimary = key.getKeyId() == keyset.getPrimaryKeyId();
+			if (entry.prefix.length == 0) {
+				if (isPrimary) {
+					raw.add(0, entry);
+				} else {
+					raw.add(entry);
+				}
+			} else if (!prefixed.put(entry.prefix, entry)) {
+				return null;
+			}
+			if (isPrimary) {
+				primary = entry;
+			}
+		}
+
+		if (primary == null) {
+			throw new GeneralSecurityException("Keyset has no enabled primary key");
+		}
+
+		return new JceAesGcmEngine(primary, prefixed, raw.toArray(new Entry[raw.size()]));
+	}
+
+	byte[] encrypt(byte[] data, byte[] associated) throws GeneralSecurityException {
+
+		byte[] prefix = primary.prefix;
+		byte[] output = new byte[prefix.length + IV_SIZE + data.length + TAG_SIZE];
+		System.arraycopy(prefix, 0, output, 0, prefix.length);
+		byte[] iv = StripedSecureRandom.randBytes(IV_SIZE);
+		System.arraycopy(iv, 0, output, prefix.length, IV_SIZE);
+
+		Cipher cipher = init(Cipher.ENCRYPT_MODE, primary, iv, 0);
+		if (associated != null) {
+			cipher.updateAAD(associated);
+		}
+		cipher.doFinal(data, 0, data.length, output, prefix.length + IV_SIZE);
+
+		return output;
+	}
+
+	byte[] decrypt(byte[] data, byte[] associated) throws GeneralSecurityException {
+		byte[] clearText = tryDecrypt(data, associated);
+		if (clearText == null) {
+			throw new GeneralSecurityException("decryption failed");
+		}
+		return clearText;
+	}
+
+	/**
+	 * Method which will decrypt with whichever key of the keyset
+	 * authenticates the ciphertext, without building an exception of its own
+	 * when none does. The JCE still raises one for each key whose tag check
+	 * fails, as it reports failures no other way.
+	 * 
+	 * @param data
+	 * @param associated
+	 * @return The clear text, or null if no key authenticates the ciphertext.
+	 */
+	byte[] tryDecrypt(byte[] data, byte[] associated) {
+
+		if (data.length > CryptoFormat.NON_RAW_PREFIX_SIZE) {
+			Entry entry = prefixed.route(data);
+			if (entry != null) {
+				// Null could still be a RAW ciphertext which happens to look prefixed.
+				byte[] clearText = tryDecrypt(entry, data, entry.prefix.length, associated);
+				if (clearText != null) {
+					return clearText;
+				}
+			}
+		}
+
+		for (Entry entry : raw) {
+			byte[] clearText = tryDecrypt(entry, data, 0, associated);
+			if (clearText != null) {
+				return clearText;
+			}
+		}
+
+		return null;
+	}
+
+	int encrypt(ByteBuffer src, ByteBuffer associated, ByteBuffer dst) throws GeneralSecurityException {
+
+		byte[] prefix = primary.prefix;
+		byte[] iv = StripedSecureRandom.randBytes(IV_SIZE);
+		dst.put(prefix);
+		dst.put(iv);
+
+		Cipher cipher = init(Cipher.ENCRYPT_MODE, primary, iv, 0);
+		if (associated != null) {
+			cipher.updateAAD(associated);
+		}
+
+		return prefix.length + IV_SIZE + cipher.doFinal(src, dst);
+	}
+
+	int decrypt(ByteBuffer src, ByteBuffer associated, ByteBuffer dst) throws GeneralSecurityException {
+
+		int srcPosition = src.position();
+		int associatedPosition = associated == null ? 0 : associated.position();
+		int dstPosition = dst.position();
+
+		if (src.remaining() > CryptoFormat.NON_RAW_PREFIX_SIZE) {
+			Entry entry = prefixed.route(src);
+			if (entry != null) {
+				src.position(srcPosition + entry.prefix.length);
+				int written = tryDecrypt(entry, src, associated, dst);
+				if (written >= 0) {
+					return written;
+				}
+				reset(src, srcPosition, associated, associatedPosition, dst, dstPosition);
+			}
+		}
+
+		for (Entry entry : raw) {
+			int written = tryDecrypt(entry, src, associated, dst);
+			if (written >= 0) {
+				return written;
+			}
+			reset(src, srcPosition, associated, associatedPosition, dst, dstPosition);
+		}
+
+		throw new GeneralSecurityException("decryption failed");
+	}
+
+	/**
+	 * Method which will decrypt with one key.
+	 * 
+	 * @return The clear text, or null if the ciphertext is too short or fails
+	 *         authentication.
+	 */
+	private static byte[] tryDecrypt(Entry entry, byte[] data, int offset, byte[] associated) {
+
+		if (data.length - offset < IV_SIZE + TAG_SIZE) {
+			return null;
+		}
+
+		try {
+			Cipher cipher = init(Cipher.DECRYPT_MODE, entry, data, offset);
+			if (associated != null) {
+				cipher.updateAAD(associated);
+			}
+			return cipher.doFinal(data, offset + IV_SIZE, data.length - offset - IV_SIZE);
+		} catch (GeneralSecurityException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Method which will decrypt with one key.
+	 * 
+	 * @return Number of bytes written, or -1 if the ciphertext is too short or
+	 *         fails authentication.
+	 */
+	private static int tryDecrypt(Entry entry, ByteBuffer src, ByteBuffer associated, ByteBuffer dst) {
+		if (src.remaining() < IV_SIZE + TAG_SIZE) {
+			return -1;
+		}
+		try {
+			return decrypt(entry, src, associated, dst);
+		} catch (GeneralSecurityException e) {
+			return -1;
+		}
+	}
+
+	private static int decrypt(Entry entry, ByteBuffer src, ByteBuffer associated, ByteBuffer dst)
+			throws GeneralSecurityException {
+
+		if (src.remaining() < IV_SIZE + TAG_SIZE) {
+			throw new GeneralSecurityException("ciphertext too short");
+		}
+
+		byte[] iv = new byte[IV_SIZE];
+		src.get(iv);
+
+		Cipher cipher = init(Cipher.DECRYPT_MODE, entry, iv, 0);
+		if (associated != null) {
+			cipher.updateAAD(associated);
+		}
+		return cipher.doFinal(src, dst);
+	}
+
+	private static Cipher init(int mode, Entry entry, byte[] iv, int ivOffset) throws GeneralSecurityException {
+		Cipher cipher = CIPHERS.get();
+		if (cipher == null) {
+			cipher = Cipher.getInstance(TRANSFORMATION);
+			CIPHERS.set(cipher);
+		}
+		cipher.init(mode, entry.key, new GCMParameterSpec(TAG_SIZE * 8, iv, ivOffset, IV_SIZE));
+		return cipher;
+	}
+
+	private static void reset(ByteBuffer src, int srcPosition, ByteBuffer associated, int associatedPosition,
+			ByteBuffer dst, int dstPosition) {
+		src.position(srcPosition);
+		if (associated != null) {
+			associated.position(associatedPosition);
+		}
+		dst.position(dstPosition);
+	}
+
+	/**
+	 * Key material and output prefix of one keyset key.
+	 */
+	private static final class Entry {
+
+		private final byte[] prefix;
+		private final SecretKeySpec key;
+
+		private Entry(byte[] prefix, SecretKeySpec key) {
+			this.prefix = prefix;
+			this.key = key;
+		}
+
+	}
+
+}
@@ -0,0 +1,148 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 Seamus Minogue
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.theblackchamber.crypto.providers.symmetric;
+
+import java.nio.ByteBuffer;
+
+import com.google.crypto.tink.CryptoFormat;
+
+/**
+ * Open addressing hash table which will route a ciphertext to the key that
+ * produced it using the 5 byte Tink output prefix (a start byte followed by
+ * the big endian key id). Key ids are kept as primitive ints so a lookup does
+ * not box or allocate, and lookups cost the same however many keys the
+ * keyset holds. <br>
+ * The table is filled once when a keyset is resolved and is read only
+ * afterwards, so it can be shared between threads without locking.
+ * 
+ * @author sminogue
+ * 
+ * @param <V>
+ *            Type routed to, for example the primitive of a single key.
+ */
+final class KeyIdRoutingTable<V> {
+
+	private final int[] keyIds;
+	private final byte[] startBytes;
+	private final Object[] values;
+	private final int mask;
+	private int size;
+
+	/**
+	 * @param expectedSize
+	 *            Number of keys which will be added. The table is sized to stay
+	 *            at most half full.
+	 */
+	KeyIdRoutingTable(int expectedSize) {
+		int capacity = Integer.highestOneBit(Math.max(2, expectedSize) * 2 - 1) << 1;
+		keyIds = new int[capacity];
+		startBytes = new byte[capacity];
+		values = new Object[capacity];
+		mask = capacity - 1;
+	}
+
+	/**
+	 * Method which will add the route for a prefixed key.
+	 * 
+	 * @param prefix
+	 *            The 5 byte output prefix of the key.
+	 * @param value
+	 * @return False if the table already holds a key with the same id, in
+	 *         which case the table is unchanged.
+	 */
+	boolean put(byte[] prefix, V value) {
+		if (prefix.length != CryptoFormat.NON_RAW_PREFIX_SIZE) {
+			throw new IllegalArgumentException("Output prefix must be " + CryptoFormat.NON_RAW_PREFIX_SIZE + " bytes");
+		}
+		if (size > mask >> 1) {
+			throw new IllegalStateException("Routing table is full");
+		}
+		int keyId = keyId(prefix[1], prefix[2], prefix[3], prefix[4]);
+		int slot = slot(keyId);
+		while (values[slot] != null) {
+			if (keyIds[slot] == keyId) {
+				return false;
+			}
+			slot = (slot + 1) & mask;
+		}
+		keyIds[slot] = keyId;
+		startBytes[slot] = prefix[0];
+		values[slot] = value;
+		size++;
+		return true;
+	}
+
+	/**
+	 * Method which will return the value routed to by the prefix of a
+	 * ciphertext.
+	 * 
+	 * @param data
+	 *            Ciphertext, longer than the prefix.
+	 * @return The value, or null if no key has that prefix.
+	 */
+	V route(byte[] data) {
+		return get(data[0], keyId(data[1], data[2], data[3], data[4]));
+	}
+
+	/**
+	 * Method which will return the value routed to by the prefix at the
+	 * position of a buffer. The position is not changed.
+	 * 
+	 * @param data
+	 *            Ciphertext, with more remaining bytes than the prefix.
+	 * @return The value, or null if no key has that prefix.
+	 */
+	V route(ByteBuffer data) {
+		int position = data.position();
+		return get(data.get(position), keyId(data.get(position + 1), data.get(position + 2), data.get(position + 3),
+				data.get(position + 4)));
+	}
+
+	int size() {
+		return size;
+	}
+
+	@SuppressWarnings("unchecked")
+	private V get(byte startByte, int keyId) {
+		int slot = slot(keyId);
+		Object value;
+		while ((value = values[slot]) != null) {
+			if (keyIds[slot] == keyId) {
+				return startBytes[slot] == startByte ? (V) value : null;
+			}
+			slot = (slot + 1) & mask;
+		}
+		return null;
+	}
+
+	private int slot(int keyId) {
+		int hash = keyId * 0x9E3779B9;
+		return (hash ^ (hash >>> 16)) & mask;
+	}
+
+	private static int keyId(byte b1, byte b2, byte b3, byte b4) {
+		return (b1 & 0xff) << 24 | (b2 & 0xff) << 16 | (b3 & 0xff) << 8 | (b4 & 0xff);
+	}
+
+}
@@ -0,0 +1,190 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 Seamus Minogue
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package net.theblackchamber.crypto.util;
+
+import java.security.GeneralSecurityException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Utility used by the asynchronous facades to run blocking crypto operations on
+ * an {@link Executor} and to map the outcome back onto the checked exceptions
+ * of the blocking API.
+ * 
+ * @author sminogue
+ * 
+ */
+public final class AsyncExecutors {
+
+	private AsyncExecutors() {
+	}
+
+	/**
+	 * Method which will return the executor used when none is specified, a
+	 * pool of one daemon platform thread per processor. Tasks beyond that
+	 * are queued. The threads live as long as the pool, so the per thread
+	 * state of the library, such as the {@link StripedSecureRandom} DRBGs,
+	 * AES-GCM {@link javax.crypto.Cipher} instances, UTF-8 scratch buffers and
+	 * compression codecs, is created once per thread and then reused. A
+	 * virtual thread per task executor would create all of it again for every
+	 * task.
+	 * 
+	 * @return
+	 */
+	public static Executor defaultExecutor() {
+		return DefaultExecutorHolder.EXECUTOR;
+	}
+
+	/**
+	 * Method which will run a task on the executor and return a future for its
+	 * result. Cancelling the returned future interrupts the task if it is
+	 * running.
+	 * 
+	 * @param task
+	 *            Task to run.
+	 * @param executor
+	 *            Executor to run the task on.
+	 * @return
+	 */
+	public static <T> CompletableFuture<T> supplyAsync(Callable<T> task, Executor executor) {
+
+		CompletableFuture<T> future = new CompletableFuture<T>();
+
+		FutureTask<Void> runner = new FutureTask<Void>(() -> {
+			try {
+				future.complete(task.call());
+			} catch (Throwable t) {
+				future.completeExceptionally(t);
+			}
+			return null;
+		});
+
+		future.whenComplete((result, failure) -> {
+			if (future.isCancelled()) {
+				runner.cancel(true);
+			}
+		});
+
+		try {
+			executor.execute(runner);
+		} catch (RuntimeException e) {
+			future.completeExceptionally(e);
+		}
+
+		return future;
+	}
+
+	/**
+	 * Method which will wait for a future and return the failure which caused
+	 * it to complete exceptionally, unwrapped from {@link ExecutionException}
+	 * and {@link CompletionException}. Cancellation and interruption are
+	 * reported as a {@link GeneralSecurityException}.
+	 * 
+	 * @param future
+	 * @return The failure, or null if the future completed normally.
+	 */
+	static Throwable failureOf(CompletableFuture<?> future) {
+		try {
+			future.get();
+			return null;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			future.cancel(true);
+			return new GeneralSecurityException("Interrupted waiting for crypto operation", e);
+		} catch (CancellationException e) {
+			return new GeneralSecurityException("Crypto operation was cancelled", e);
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			while (cause instanceof CompletionException && cause.getCause() != null) {
+				cause = cause.getCause();
+			}
+			return cause;
+		}
+	}
+
+	/**
+	 * Method which will wait for a future and return its result, rethrowing a
+	 * failure as the checked exception type it was raised with.
+	 * 
+	 * @param future
+	 * @param checked
+	 *            Checked exception types which may be rethrown as is. Any other
+	 *            checked failure is wrapped in a
+	 *            {@link GeneralSecurityException}.
+	 * @return
+	 * @throws Exception
+	 *             One of the checked types or {@link GeneralSecurityException}.
+	 */
+	@SafeVarargs
+	public static <T> T await(CompletableFuture<T> future, Class<? extends Exception>... checked) throws Exception {
+		Throwable failure = failureOf(future);
+		if (failure == null) {
+			return future.getNow(null);
+		}
+		if (failure instanceof RuntimeException) {
+			throw (RuntimeException) failure;
+		}
+		if (failure instanceof Error) {
+			throw (Error) failure;
+		}
+		if (failure instanceof GeneralSecurityException) {
+			throw (GeneralSecurityException) failure;
+		}
+		for (Class<? extends Exception> type : checked) {
+			if (type.isInstance(failure)) {
+				throw type.cast(failure);
+			}
+		}
+		throw new GeneralSecurityException(failure.getMessage(), failure);
+	}
+
+	/**
+	 * Lazily created default executor.
+	 */
+	private static final class DefaultExecutorHolder {
+
+		private static final Executor EXECUTOR = create();
+
+		private static Executor create() {
+			AtomicInteger count = new AtomicInteger();
+			ThreadFactory factory = runnable -> {
+				Thread thread = new Thread(runnable, "commons-encryption-async-" + count.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			};
+			return Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), factory);
+		}
+
+	}
+
+}
@@ -0,0 +1,155 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 Seamus Minogue
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.theblackchamber.crypto.util;
+
+import java.security.GeneralSecurityException;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import com.google.crypto.tink.Aead;
+import com.google.crypto.tink.KeysetHandle;
+import com.google.crypto.tink.subtle.Random;
+
+import net.theblackchamber.crypto.constants.SupportedKeyTemplates;
+import net.theblackchamber.crypto.exceptions.RuntimeCryptoException;
+
+/**
+ * Utility which will measure AEAD throughput on the current host and recommend
+ * the faster key template. AES-GCM is much faster with AES hardware support
+ * while XChaCha20-Poly1305 is much faster without it, for example on virtual
+ * machines where AES instructions are masked. <br>
+ * The measurement runs once per JVM, on first use, and takes well under a
+ * second.
+ * 
+ * @author sminogue
+ * 
+ */
+public final class KeyTemplateSelector {
+
+	private static final Log LOG = LogFactory.getLog(KeyTemplateSelector.class);
+
+	/**
+	 * Payload size used for the measurement. Large enough that per call
+	 * overhead does not hide the cipher speed.
+	 */
+	private static final int PAYLOAD_SIZE = 4096;
+
+	private static final long WARMUP_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+	private static final long MEASURE_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+	private static volatile SupportedKeyTemplates recommended;
+
+	/**
+	 * Keeps the measured work observable so it is not optimized away.
+	 */
+	@SuppressWarnings("unused")
+	private static volatile int sink;
+
+	private KeyTemplateSelector() {
+	}
+
+	/**
+	 * Method which will return the faster of {@link SupportedKeyTemplates#AES256_GCM}
+	 * and {@link SupportedKeyTemplates#XCHACHA20_POLY1305} on this host. The
+	 * result is measured on first call and cached.
+	 * 
+	 * @return
+	 * @throws RuntimeCryptoException
+	 *             If the measurement could not be run.
+	 */
+	public static SupportedKeyTemplates recommend() {
+		SupportedKeyTemplates result = recommended;
+		if (result == null) {
+			synchronized (KeyTemplateSelector.class) {
+				result = recommended;
+				if (result == null) {
+					try {
+						result = measure();
+					} catch (GeneralSecurityException e) {
+						throw new RuntimeCryptoException("Failed to measure key template throughput: " + e.getMessage(), e);
+					}
+					recommended = result;
+				}
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Method which will measure the encryption throughput of a key template in
+	 * bytes per millisecond.
+	 * 
+	 * @param template
+	 *            Template to measure.
+	 * @return
+	 * @throws GeneralSecurityException
+	 */
+	public static double measureThroughput(SupportedKeyTemplates template) throws GeneralSecurityException {
+
+		TinkRegistration.register();
+
+		Aead aead = KeysetHandle.generateNew(template.getTemplate()).getPrimitive(Aead.class);
+		byte[] payload = Random.randBytes(PAYLOAD_SIZE);
+		byte[] associated = new byte[0];
+
+		run(aead, payload, associated, WARMUP_NANOS);
+		long start = System.nanoTime();
+		long operations = run(aead, payload, associated, MEASURE_NANOS);
+		long elapsed = System.nanoTime() - start;
+
+		return (double) operations * PAYLOAD_SIZE / TimeUnit.NANOSECONDS.toMillis(Math.max(elapsed, 1000000L));
+	}
+
+	private static SupportedKeyTemplates measure() throws GeneralSecurityException {
+
+		double aes = measureThroughput(SupportedKeyTemplates.AES256_GCM);
+		double chacha = measureThroughput(SupportedKeyTemplates.XCHACHA20_POLY1305);
+
+		SupportedKeyTemplates result = aes >= chacha ? SupportedKeyTemplates.AES256_GCM
+				: SupportedKeyTemplates.XCHACHA20_POLY1305;
+
+		if (LOG.isDebugEnabled()) {
+			LOG.debug("AEAD throughput AES256_GCM=" + Math.round(aes) + " B/ms, XCHACHA20_POLY1305=" + Math.round(chacha)
+					+ " B/ms, selected " + result);
+		}
+
+		return result;
+	}
+
+	private static long run(Aead aead, byte[] payload, byte[] associated, long nanos) throws GeneralSecurityException {
+		long operations = 0;
+		int accumulator = 0;
+		long deadline = System.nanoTime() + nanos;
+		do {
+			byte[] cipherText = aead.encrypt(payload, associated);
+			accumulator += cipherText[cipherText.length - 1];
+			operations++;
+		} while (System.nanoTime() < deadline);
+		sink = accumulator;
+		return operations;
+	}
+
+}
@@ -42,6 +42,8 @@ import javax.crypto.KeyGenerator;
 import javax.crypto.SecretKey;
 import javax.crypto.spec.SecretKeySpec;
 
+import net.theblackchamber.crypto.constants.SupportedKeyTemplates;
+import net.theblackchamber.crypto.jfr.CryptoEvents;
 import net.theblackchamber.crypto.model.KeyConfig2;
 import net.theblackchamber.crypto.providers.digest.SHA256DigestProvider;
 import net.theblackchamber.crypto.providers.digest.SHA256DigestProvider.TYPE;
@@ -56,7 +58,6 @@ import com.google.crypto.tink.JsonKeysetWriter;
 import com.google.crypto.tink.KeysetHandle;
 import com.google.crypto.tink.aead.AeadKeyTemplates;
 import com.google.crypto.tink.aead.AesGcmKeyManager;
-import com.google.crypto.tink.config.TinkConfig;
 import com.google.crypto.tink.subtle.AesGcmJce;
 
 /**
@@ -70,7 +71,8 @@ public class KeystoreUtils2 {
 	private static SHA256DigestProvider digest = new SHA256DigestProvider(TYPE.SHA1);
 	
 	/**
-	 * Method which will generate a random Secret key and store it securely on disk.
+	 * Method which will generate a random Secret key and store it securely on
+	 * disk. The type of key is taken from the key template of the config.
 	 * 
 	 * @param config
 	 *            Configuration for generation of key.
@@ -84,11 +86,12 @@ public class KeystoreUtils2 {
 			throw new KeyStoreException(
 					"Missing parameters, unable to create keystore.");
 		}
-		TinkConfig.register();
+		TinkRegistration.register();
 		
 		//Create rando key
-		KeysetHandle keysetHandle = KeysetHandle.generateNew(
-		        AesGcmKeyManager.aes256GcmTemplate());
+		SupportedKeyTemplates keyTemplate = config.getKeyTemplate() == null ? SupportedKeyTemplates.AES256_GCM
+				: config.getKeyTemplate();
+		KeysetHandle keysetHandle = KeysetHandle.generateNew(keyTemplate.getTemplate());
 				
 		//using key-pass from config encrypt the encryption key
 		String dKey = digest.digest(config.getKeyPass());
@@ -123,13 +126,31 @@ public class KeystoreUtils2 {
 					"Missing parameters, unable to create keystore.");
 		}
 		
-		TinkConfig.register();
+		TinkRegistration.register();
 		
-		//Read and decrypt encrypted key from disk
-		String dKey = digest.digest(config.getKeyPass());
-		AesGcmJce aesKey = new AesGcmJce(dKey.substring(0, 32).getBytes());
-		byte[] encryptedBytes = FileUtils.readFileToByteArray(config.getKeyStoreFile());
-		return KeysetHandle.read(JsonKeysetReader.withBytes(encryptedBytes), aesKey);
+		Object event = CryptoEvents.beginKeyLoad();
+		long kdfNanos = 0;
+		long parseNanos = 0;
+		try {
+			//Read and decrypt encrypted key from disk
+			long start = event == null ? 0 : System.nanoTime();
+			String dKey = digest.digest(config.getKeyPass());
+			AesGcmJce aesKey = new AesGcmJce(dKey.substring(0, 32).getBytes());
+			if (event != null) {
+				kdfNanos = System.nanoTime() - start;
+			}
+			byte[] encryptedBytes = FileUtils.readFileToByteArray(config.getKeyStoreFile());
+			start = event == null ? 0 : System.nanoTime();
+			KeysetHandle handle = KeysetHandle.read(JsonKeysetReader.withBytes(encryptedBytes), aesKey);
+			if (event != null) {
+				parseNanos = System.nanoTime() - start;
+			}
+			CryptoEvents.endKeyLoad(event, config.getKeyStoreFile().getPath(), kdfNanos, parseNanos, null);
+			return handle;
+		} catch (IOException | GeneralSecurityException | RuntimeException e) {
+			CryptoEvents.endKeyLoad(event, config.getKeyStoreFile().getPath(), kdfNanos, parseNanos, e);
+			throw e;
+		}
 		
 	}
 
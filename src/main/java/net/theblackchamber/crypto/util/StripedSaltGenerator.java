@@ -0,0 +1,51 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 Seamus Minogue
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.theblackchamber.crypto.util;
+
+import org.jasypt.salt.RandomSaltGenerator;
+import org.jasypt.salt.SaltGenerator;
+
+/**
+ * Jasypt {@link SaltGenerator} backed by {@link StripedSecureRandom}. Unlike
+ * {@link RandomSaltGenerator}, whose single {@link java.security.SecureRandom}
+ * is shared by every encryptor in a pool, threads do not contend for it.
+ * Salts are included in the encryption results, as with
+ * {@link RandomSaltGenerator}, so output stays compatible.
+ * 
+ * @author sminogue
+ * 
+ */
+public class StripedSaltGenerator implements SaltGenerator {
+
+	@Override
+	public byte[] generateSalt(int lengthBytes) {
+		return StripedSecureRandom.randBytes(lengthBytes);
+	}
+
+	@Override
+	public boolean includePlainSaltInEncryptionResults() {
+		return true;
+	}
+
+}
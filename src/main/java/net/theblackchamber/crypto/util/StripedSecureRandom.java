@@ -0,0 +1,166 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 Seamus Minogue
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.theblackchamber.crypto.util;
+
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Source of cryptographic randomness for IVs, nonces, salts and generated
+ * keys which does not contend between threads. A single shared
+ * {@link SecureRandom} serializes its callers; here each thread has its own
+ * deterministic random bit generator (the JDK "DRBG" where available,
+ * otherwise "SHA1PRNG"), seeded from the system source, so generation scales
+ * with the number of cores. <br>
+ * Each generator mixes in fresh seed from the system source after
+ * {@value #RESEED_BYTES} bytes of output or {@value #RESEED_MILLIS}
+ * milliseconds, whichever comes first.
+ * 
+ * @author sminogue
+ * 
+ */
+public final class StripedSecureRandom {
+
+	/**
+	 * Bytes of output after which a generator is reseeded.
+	 */
+	public static final long RESEED_BYTES = 1L << 24;
+
+	/**
+	 * Milliseconds after which a generator is reseeded.
+	 */
+	public static final long RESEED_MILLIS = 10 * 60 * 1000L;
+
+	private static final int SEED_SIZE = 32;
+
+	/**
+	 * System source, only used to seed the per thread generators.
+	 */
+	private static final SecureRandom SYSTEM = new SecureRandom();
+
+	private static final ThreadLocal<Stripe> STRIPES = new ThreadLocal<Stripe>() {
+		@Override
+		protected Stripe initialValue() {
+			return new Stripe();
+		}
+	};
+
+	private StripedSecureRandom() {
+	}
+
+	/**
+	 * Method which will fill an array with random bytes from the generator of
+	 * the calling thread.
+	 * 
+	 * @param bytes
+	 */
+	public static void nextBytes(byte[] bytes) {
+		STRIPES.get().nextBytes(bytes);
+	}
+
+	/**
+	 * Method which will return an array of random bytes from the generator of
+	 * the calling thread.
+	 * 
+	 * @param size
+	 * @return
+	 */
+	public static byte[] randBytes(int size) {
+		byte[] bytes = new byte[size];
+		nextBytes(bytes);
+		return bytes;
+	}
+
+	/**
+	 * Method which will return the generator of the calling thread, reseeded
+	 * first if due. Must not be handed to other threads.
+	 * 
+	 * @return
+	 */
+	public static SecureRandom current() {
+		Stripe stripe = STRIPES.get();
+		stripe.reseedIfDue();
+		return stripe.random;
+	}
+
+	/**
+	 * Method which will return the algorithm of the per thread generators.
+	 * 
+	 * @return
+	 */
+	public static String getAlgorithm() {
+		return STRIPES.get().random.getAlgorithm();
+	}
+
+	private static SecureRandom newGenerator() {
+		SecureRandom random;
+		try {
+			random = SecureRandom.getInstance("DRBG");
+		} catch (NoSuchAlgorithmException e) {
+			try {
+				// Java 8
+				random = SecureRandom.getInstance("SHA1PRNG");
+			} catch (NoSuchAlgorithmException e1) {
+				return new SecureRandom();
+			}
+		}
+		random.setSeed(systemSeed());
+		return random;
+	}
+
+	private static byte[] systemSeed() {
+		byte[] seed = new byte[SEED_SIZE];
+		SYSTEM.nextBytes(seed);
+		return seed;
+	}
+
+	/**
+	 * Generator of one thread with its reseed accounting.
+	 */
+	private static final class Stripe {
+
+		private final SecureRandom random = newGenerator();
+		private long bytesSinceSeed;
+		private long seededAt = System.nanoTime();
+
+		private void nextBytes(byte[] bytes) {
+			reseedIfDue();
+			random.nextBytes(bytes);
+			bytesSinceSeed += bytes.length;
+		}
+
+		private void reseedIfDue() {
+			if (bytesSinceSeed >= RESEED_BYTES
+					|| System.nanoTime() - seededAt >= TimeUnit.MILLISECONDS.toNanos(RESEED_MILLIS)) {
+				// setSeed adds to the existing state rather than replacing it
+				random.setSeed(systemSeed());
+				bytesSinceSeed = 0;
+				seededAt = System.nanoTime();
+			}
+		}
+
+	}
+
+}
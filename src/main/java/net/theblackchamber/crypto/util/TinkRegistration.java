@@ -0,0 +1,64 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 Seamus Minogue
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.theblackchamber.crypto.util;
+
+import java.security.GeneralSecurityException;
+
+import com.google.crypto.tink.config.TinkConfig;
+
+/**
+ * One time registration of the Tink primitives used by this library.
+ * {@link TinkConfig#register()} walks and re-registers every key manager on
+ * each call, so callers on hot paths go through {@link #register()} instead,
+ * which only does so the first time.
+ * 
+ * @author sminogue
+ * 
+ */
+public final class TinkRegistration {
+
+	private static volatile boolean registered;
+
+	private TinkRegistration() {
+	}
+
+	/**
+	 * Method which will register Tink if it has not been registered yet. Safe
+	 * to call from any thread, any number of times. If registration fails it is
+	 * attempted again on the next call.
+	 * 
+	 * @throws GeneralSecurityException
+	 */
+	public static void register() throws GeneralSecurityException {
+		if (!registered) {
+			synchronized (TinkRegistration.class) {
+				if (!registered) {
+					TinkConfig.register();
+					registered = true;
+				}
+			}
+		}
+	}
+
+}
@@ -0,0 +1,23 @@
+package net.theblackchamber.crypto.constants;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class SupportedKeyTemplatesTest {
+
+	@Test
+	public void testGetByTypeUrl() {
+
+		for (SupportedKeyTemplates template : SupportedKeyTemplates.values()) {
+
+			assertTrue(template == SupportedKeyTemplates.getByTypeUrl(template.getTypeUrl()));
+			assertNotNull(template.getTemplate());
+
+		}
+
+		assertNull(SupportedKeyTemplates.getByTypeUrl("type.googleapis.com/google.crypto.tink.HmacKey"));
+
+	}
+
+}
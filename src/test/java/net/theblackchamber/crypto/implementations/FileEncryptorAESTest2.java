@@ -1,12 +1,24 @@
 package net.theblackchamber.crypto.implementations;
 
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.NonWritableChannelException;
+import java.nio.channels.SeekableByteChannel;
+import java.security.GeneralSecurityException;
+import java.util.Arrays;
+import java.util.Random;
 
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.IOUtils;
@@ -16,7 +28,10 @@ import org.junit.Test;
 import org.junit.rules.TemporaryFolder;
 
 import com.google.crypto.tink.KeysetHandle;
+import com.google.crypto.tink.aead.AesGcmKeyManager;
 
+import net.theblackchamber.crypto.constants.SupportedFileFormats;
+import net.theblackchamber.crypto.exceptions.MissingParameterException;
 import net.theblackchamber.crypto.model.KeyConfig2;
 import net.theblackchamber.crypto.providers.EncryptionProvider2;
 import net.theblackchamber.crypto.providers.EncryptionProviderFactory2;
@@ -117,4 +132,455 @@ public class FileEncryptorAESTest2 {
 
 	}
 
+	@Test
+	public void testFileEncryptStreaming() {
+
+		try {
+
+			File testClearFile = temporaryFolder.newFile("test.fil");
+
+			byte[] clear = new byte[10000];
+			new Random(42).nextBytes(clear);
+			FileUtils.writeByteArrayToFile(testClearFile, clear);
+
+			fileEncryptor.setFileFormat(SupportedFileFormats.STREAMING);
+			fileEncryptor.setSegmentSize(1024);
+
+			fileEncryptor.encryptFile(testClearFile);
+
+			byte[] encrypted = FileUtils.readFileToByteArray(testClearFile);
+
+			assertArrayEquals(StreamingFileFormat.MAGIC, Arrays.copyOf(encrypted, 4));
+			assertEquals(StreamingFileFormat.VERSION, encrypted[4]);
+			assertTrue(encrypted.length > clear.length);
+			assertFalse(Arrays.equals(clear, Arrays.copyOfRange(encrypted, encrypted.length - clear.length, encrypted.length)));
+
+		} catch (Exception e) {
+			e.printStackTrace();
+			fail();
+		}
+
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testSegmentSizeTooSmall() {
+		fileEncryptor.setSegmentSize(16);
+	}
+
+	@Test
+	public void testFileDecryptSingleShot() {
+
+		try {
+
+			File testClearFile = temporaryFolder.newFile("test.fil");
+			FileUtils.writeByteArrayToFile(testClearFile, "this is a test".getBytes());
+
+			fileEncryptor.encryptFile(testClearFile);
+			fileEncryptor.decryptFile(testClearFile, false);
+
+			File decrypted = new File(testClearFile.getAbsolutePath() + ".decrypted");
+
+			assertTrue(decrypted.exists());
+			assertEquals("this is a test", FileUtils.readFileToString(decrypted));
+			assertFalse("this is a test".equals(FileUtils.readFileToString(testClearFile)));
+
+		} catch (Exception e) {
+			e.printStackTrace();
+			fail();
+		}
+
+	}
+
+	@Test
+	public void testFileDecryptStreaming() {
+
+		try {
+
+			File testClearFile = temporaryFolder.newFile("test.fil");
+
+			byte[] clear = new byte[10000];
+			new Random(7).nextBytes(clear);
+			FileUtils.writeByteArrayToFile(testClearFile, clear);
+
+			fileEncryptor.setFileFormat(SupportedFileFormats.STREAMING);
+			fileEncryptor.setSegmentSize(1024);
+
+			fileEncryptor.encryptFile(testClearFile);
+
+			// Format is detected, the configured format does not matter.
+			fileEncryptor.setFileFormat(SupportedFileFormats.SINGLE_SHOT);
+			fileEncryptor.decryptFile(testClearFile);
+
+			assertArrayEquals(clear, FileUtils.readFileToByteArray(testClearFile));
+			assertFalse(new File(testClearFile.getAbsolutePath() + ".bkp").exists());
+
+		} catch (Exception e) {
+			e.printStackTrace();
+			fail();
+		}
+
+	}
+
+	@Test
+	public void testStreamDecryptEmpty() {
+
+		try {
+
+			fileEncryptor.setFileFormat(SupportedFileFormats.STREAMING);
+
+			ByteArrayOutputStream encrypted = new ByteArrayOutputStream();
+			fileEncryptor.encryptStream(new ByteArrayInputStream(new byte[0]), encrypted);
+
+			ByteArrayOutputStream decrypted = new ByteArrayOutputStream();
+			fileEncryptor.decryptStream(new ByteArrayInputStream(encrypted.toByteArray()), decrypted);
+
+			assertEquals(0, decrypted.size());
+
+		} catch (Exception e) {
+			e.printStackTrace();
+			fail();
+		}
+
+	}
+
+	@Test
+	public void testFileDecryptStreamingTampered() throws Exception {
+
+		File testClearFile = temporaryFolder.newFile("test.fil");
+
+		byte[] clear = new byte[5000];
+		new Random(11).nextBytes(clear);
+		FileUtils.writeByteArrayToFile(testClearFile, clear);
+
+		fileEncryptor.setFileFormat(SupportedFileFormats.STREAMING);
+		fileEncryptor.setSegmentSize(1024);
+		fileEncryptor.encryptFile(testClearFile);
+
+		byte[] encrypted = FileUtils.readFileToByteArray(testClearFile);
+		encrypted[encrypted.length - 100] ^= 1;
+		FileUtils.writeByteArrayToFile(testClearFile, encrypted);
+
+		try {
+			fileEncryptor.decryptFile(testClearFile);
+			fail();
+		} catch (IOException e) {
+			// Tink reports a failed segment as an IOException.
+		}
+
+		assertArrayEquals(encrypted, FileUtils.readFileToByteArray(testClearFile));
+
+	}
+
+	@Test
+	public void testFileSegmented() {
+
+		try {
+
+			File testClearFile = temporaryFolder.newFile("test.fil");
+
+			// Not a multiple of the 1008 byte plain segment.
+			byte[] clear = new byte[100000];
+			new Random(13).nextBytes(clear);
+			FileUtils.writeByteArrayToFile(testClearFile, clear);
+
+			fileEncryptor.setFileFormat(SupportedFileFormats.SEGMENTED);
+			fileEncryptor.setSegmentSize(1024);
+			fileEncryptor.setParallelism(4);
+
+			fileEncryptor.encryptFile(testClearFile, false);
+
+			File encrypted = new File(testClearFile.getAbsolutePath() + ".encrypted");
+			byte[] cipherBytes = FileUtils.readFileToByteArray(encrypted);
+
+			assertArrayEquals(SegmentedFileFormat.MAGIC, Arrays.copyOf(cipherBytes, 4));
+
+			// Decrypted both in parallel and as a stream.
+			fileEncryptor.decryptFile(encrypted);
+			assertArrayEquals(clear, FileUtils.readFileToByteArray(encrypted));
+
+			ByteArrayOutputStream decrypted = new ByteArrayOutputStream();
+			fileEncryptor.decryptStream(new ByteArrayInputStream(cipherBytes), decrypted);
+			assertArrayEquals(clear, decrypted.toByteArray());
+
+		} catch (Exception e) {
+			e.printStackTrace();
+			fail();
+		}
+
+	}
+
+	@Test
+	public void testStreamSegmented() {
+
+		try {
+
+			byte[] clear = new byte[2016];
+			new Random(17).nextBytes(clear);
+
+			fileEncryptor.setFileFormat(SupportedFileFormats.SEGMENTED);
+			fileEncryptor.setSegmentSize(1024);
+
+			ByteArrayOutputStream encrypted = new ByteArrayOutputStream();
+			fileEncryptor.encryptStream(new ByteArrayInputStream(clear), encrypted);
+
+			File encryptedFile = temporaryFolder.newFile("test.fil");
+			FileUtils.writeByteArrayToFile(encryptedFile, encrypted.toByteArray());
+
+			fileEncryptor.decryptFile(encryptedFile);
+
+			assertArrayEquals(clear, FileUtils.readFileToByteArray(encryptedFile));
+
+		} catch (Exception e) {
+			e.printStackTrace();
+			fail();
+		}
+
+	}
+
+	@Test
+	public void testFileSegmentedTruncated() throws Exception {
+
+		File testClearFile = temporaryFolder.newFile("test.fil");
+
+		// Exactly three segments, so dropping the last leaves whole segments.
+		byte[] clear = new byte[3024];
+		new Random(19).nextBytes(clear);
+		FileUtils.writeByteArrayToFile(testClearFile, clear);
+
+		fileEncryptor.setFileFormat(SupportedFileFormats.SEGMENTED);
+		fileEncryptor.setSegmentSize(1024);
+		fileEncryptor.encryptFile(testClearFile);
+
+		byte[] encrypted = FileUtils.readFileToByteArray(testClearFile);
+		FileUtils.writeByteArrayToFile(testClearFile, Arrays.copyOf(encrypted, encrypted.length - 1024));
+
+		try {
+			fileEncryptor.decryptFile(testClearFile);
+			fail();
+		} catch (GeneralSecurityException e) {
+			// Expected, the second segment is not marked as the last.
+		}
+
+	}
+
+	@Test
+	public void testOpenChannel() {
+
+		try {
+
+			File testClearFile = temporaryFolder.newFile("test.fil");
+
+			byte[] clear = new byte[50000];
+			new Random(23).nextBytes(clear);
+			FileUtils.writeByteArrayToFile(testClearFile, clear);
+
+			fileEncryptor.setFileFormat(SupportedFileFormats.SEGMENTED);
+			fileEncryptor.setSegmentSize(1024);
+			fileEncryptor.encryptFile(testClearFile);
+
+			try (SeekableByteChannel channel = fileEncryptor.openChannel(testClearFile)) {
+
+				assertEquals(clear.length, channel.size());
+
+				// Within the 21st plain segment of 1008 bytes.
+				ByteBuffer buffer = ByteBuffer.allocate(100);
+				channel.position(20200);
+				assertEquals(100, channel.read(buffer));
+				assertArrayEquals(Arrays.copyOfRange(clear, 20200, 20300), buffer.array());
+				assertEquals(1, ((SegmentedFileChannel) channel).getDecryptedSegments());
+
+				// Across a segment boundary and to the end.
+				buffer = ByteBuffer.allocate(2000);
+				channel.position(clear.length - 1500);
+				assertEquals(1500, channel.read(buffer));
+				assertArrayEquals(Arrays.copyOfRange(clear, clear.length - 1500, clear.length),
+						Arrays.copyOf(buffer.array(), 1500));
+				assertEquals(-1, channel.read(buffer));
+
+				try {
+					channel.write(ByteBuffer.allocate(1));
+					fail();
+				} catch (NonWritableChannelException e) {
+					// Read only.
+				}
+			}
+
+			try (InputStream in = fileEncryptor.openInputStream(testClearFile)) {
+				assertEquals(40000, in.skip(40000));
+				assertArrayEquals(Arrays.copyOfRange(clear, 40000, clear.length), IOUtils.toByteArray(in));
+			}
+
+		} catch (Exception e) {
+			e.printStackTrace();
+			fail();
+		}
+
+	}
+
+	@Test(expected = GeneralSecurityException.class)
+	public void testOpenChannelNotSegmented() throws Exception {
+
+		File testClearFile = temporaryFolder.newFile("test.fil");
+		FileUtils.writeByteArrayToFile(testClearFile, "this is a test".getBytes());
+
+		fileEncryptor.encryptFile(testClearFile);
+		fileEncryptor.openChannel(testClearFile);
+
+	}
+
+	@Test
+	public void testFileSegmentedMemoryMapped() {
+
+		try {
+
+			File testClearFile = temporaryFolder.newFile("test.fil");
+
+			byte[] clear = new byte[100000];
+			new Random(29).nextBytes(clear);
+			FileUtils.writeByteArrayToFile(testClearFile, clear);
+
+			fileEncryptor.setFileFormat(SupportedFileFormats.SEGMENTED);
+			fileEncryptor.setSegmentSize(1024);
+			// Several windows of 4 segments, the last one partial.
+			fileEncryptor.setMapWindowSize(4096);
+			fileEncryptor.setParallelism(4);
+
+			fileEncryptor.setMemoryMapped(true);
+			fileEncryptor.encryptFile(testClearFile, false);
+			File encrypted = new File(testClearFile.getAbsolutePath() + ".encrypted");
+
+			// Readable by the unmapped engine and the other way around.
+			fileEncryptor.setMemoryMapped(false);
+			fileEncryptor.decryptFile(encrypted, false);
+			assertArrayEquals(clear, FileUtils.readFileToByteArray(new File(encrypted.getAbsolutePath() + ".decrypted")));
+
+			fileEncryptor.encryptFile(testClearFile);
+			fileEncryptor.setMemoryMapped(true);
+			fileEncryptor.decryptFile(testClearFile);
+			assertArrayEquals(clear, FileUtils.readFileToByteArray(testClearFile));
+
+		} catch (Exception e) {
+			e.printStackTrace();
+			fail();
+		}
+
+	}
+
+	@Test
+	public void testFileDecryptSingleShotWithMagic() {
+
+		try {
+
+			byte[][] magics = { StreamingFileFormat.MAGIC, SegmentedFileFormat.MAGIC };
+			for (byte[] magic : magics) {
+
+				File testClearFile = temporaryFolder.newFile();
+				byte[] clear = new byte[3000];
+				new Random(31).nextBytes(clear);
+				FileUtils.writeByteArrayToFile(testClearFile, clear);
+
+				FileEncryptor2 colliding = new FileEncryptor2(magicProvider(magic));
+				colliding.encryptFile(testClearFile);
+
+				byte[] encrypted = FileUtils.readFileToByteArray(testClearFile);
+				assertArrayEquals(magic, Arrays.copyOf(encrypted, magic.length));
+
+				ByteArrayOutputStream decrypted = new ByteArrayOutputStream();
+				colliding.decryptStream(new ByteArrayInputStream(encrypted), decrypted);
+				assertArrayEquals(clear, decrypted.toByteArray());
+
+				colliding.decryptFile(testClearFile);
+				assertArrayEquals(clear, FileUtils.readFileToByteArray(testClearFile));
+
+			}
+
+		} catch (Exception e) {
+			e.printStackTrace();
+			fail();
+		}
+
+	}
+
+	@Test
+	public void testFileDecryptStreamingWrongKey() throws Exception {
+		assertWrongKeyFails(SupportedFileFormats.STREAMING);
+	}
+
+	@Test
+	public void testFileDecryptSegmentedWrongKey() throws Exception {
+		assertWrongKeyFails(SupportedFileFormats.SEGMENTED);
+	}
+
+	/**
+	 * Without a RAW key in the keyset a header which does not unwrap is
+	 * reported as such rather than retried as single shot data.
+	 */
+	private void assertWrongKeyFails(SupportedFileFormats format) throws Exception {
+
+		File testClearFile = temporaryFolder.newFile("test.fil");
+
+		byte[] clear = new byte[5000];
+		new Random(37).nextBytes(clear);
+		FileUtils.writeByteArrayToFile(testClearFile, clear);
+
+		fileEncryptor.setFileFormat(format);
+		fileEncryptor.setSegmentSize(1024);
+		fileEncryptor.encryptFile(testClearFile);
+		byte[] encrypted = FileUtils.readFileToByteArray(testClearFile);
+
+		FileEncryptor2 wrongKey = new FileEncryptor2(
+				EncryptionProviderFactory2.getProvider(KeysetHandle.generateNew(AesGcmKeyManager.aes256GcmTemplate())));
+
+		try {
+			wrongKey.decryptFile(testClearFile);
+			fail();
+		} catch (GeneralSecurityException e) {
+		}
+		assertArrayEquals(encrypted, FileUtils.readFileToByteArray(testClearFile));
+
+		try {
+			wrongKey.decryptStream(new ByteArrayInputStream(encrypted), new ByteArrayOutputStream());
+			fail();
+		} catch (GeneralSecurityException e) {
+		}
+
+	}
+
+	/**
+	 * Provider whose ciphertext starts with a magic, as single shot
+	 * ciphertext of a RAW key can by chance.
+	 */
+	private EncryptionProvider2 magicProvider(final byte[] magic) throws GeneralSecurityException {
+
+		KeysetHandle rawKey = KeysetHandle.generateNew(AesGcmKeyManager.rawAes256GcmTemplate());
+		final EncryptionProvider2 provider = EncryptionProviderFactory2.getProvider(rawKey);
+
+		return new EncryptionProvider2(rawKey) {
+
+			@Override
+			protected byte[] performEncryption(byte[] data, byte[] associated) throws GeneralSecurityException {
+				try {
+					byte[] cipherText = provider.encrypt(data, associated);
+					return ByteBuffer.allocate(magic.length + cipherText.length).put(magic).put(cipherText).array();
+				} catch (MissingParameterException e) {
+					throw new GeneralSecurityException(e);
+				}
+			}
+
+			@Override
+			protected byte[] performDecryption(byte[] data, byte[] associated) throws GeneralSecurityException {
+				if (data.length <= magic.length || !Arrays.equals(magic, Arrays.copyOf(data, magic.length))) {
+					throw new GeneralSecurityException("Missing magic");
+				}
+				try {
+					return provider.decrypt(Arrays.copyOfRange(data, magic.length, data.length), associated);
+				} catch (MissingParameterException e) {
+					throw new GeneralSecurityException(e);
+				}
+			}
+
+		};
+
+	}
+
 }
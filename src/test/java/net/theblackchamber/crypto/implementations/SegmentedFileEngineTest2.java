@@ -0,0 +1,175 @@
+package net.theblackchamber.crypto.implementations;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import net.theblackchamber.crypto.model.KeyConfig2;
+import net.theblackchamber.crypto.providers.EncryptionProviderFactory2;
+import net.theblackchamber.crypto.util.KeystoreUtils2;
+
+public class SegmentedFileEngineTest2 {
+
+	@Rule
+	public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+	private SegmentedFileFormat format;
+
+	@Before
+	public void init() throws Exception {
+		KeyConfig2 config = new KeyConfig2(temporaryFolder.newFile("keystore.keys"), "test");
+		KeystoreUtils2.generateSecretKey(config);
+		format = SegmentedFileFormat.create(EncryptionProviderFactory2.getProvider(KeystoreUtils2.getSecretKey(config)), 1024);
+	}
+
+	@Test(expected = InternalError.class)
+	public void testWorkerError() throws Exception {
+
+		File source = temporaryFolder.newFile("test.fil");
+		byte[] clear = new byte[100000];
+		new Random(41).nextBytes(clear);
+		FileUtils.writeByteArrayToFile(source, clear);
+
+		File target = temporaryFolder.newFile("test.fil.encrypted");
+
+		// The calling thread waits on its first segment until a worker has failed on its own.
+		try (FileChannel in = FileChannel.open(source.toPath(), StandardOpenOption.READ);
+				FileChannel out = new FaultyFileChannel(FileChannel.open(target.toPath(), StandardOpenOption.WRITE),
+						Thread.currentThread())) {
+			SegmentedFileEngine.encrypt(format, in, out, command -> new Thread(command).start(), 2, 0);
+		}
+
+	}
+
+	/**
+	 * Channel whose positional writes fail with an {@link Error} on any thread
+	 * but one, as mapped I/O faults are reported.
+	 */
+	private static class FaultyFileChannel extends FileChannel {
+
+		private final FileChannel delegate;
+		private final Thread caller;
+		private final CountDownLatch failed = new CountDownLatch(1);
+
+		FaultyFileChannel(FileChannel delegate, Thread caller) {
+			this.delegate = delegate;
+			this.caller = caller;
+		}
+
+		@Override
+		public int write(ByteBuffer src, long position) throws IOException {
+			if (Thread.currentThread() != caller) {
+				failed.countDown();
+				throw new InternalError("a fault occurred in an unsafe memory access operation");
+			}
+			if (position > 0) {
+				try {
+					failed.await(10, TimeUnit.SECONDS);
+				} catch (InterruptedException e) {
+					throw new InterruptedIOException();
+				}
+			}
+			return delegate.write(src, position);
+		}
+
+		@Override
+		public int read(ByteBuffer dst) throws IOException {
+			return delegate.read(dst);
+		}
+
+		@Override
+		public long read(ByteBuffer[] dsts, int offset, int length) throws IOException {
+			return delegate.read(dsts, offset, length);
+		}
+
+		@Override
+		public int write(ByteBuffer src) throws IOException {
+			return delegate.write(src);
+		}
+
+		@Override
+		public long write(ByteBuffer[] srcs, int offset, int length) throws IOException {
+			return delegate.write(srcs, offset, length);
+		}
+
+		@Override
+		public long position() throws IOException {
+			return delegate.position();
+		}
+
+		@Override
+		public FileChannel position(long newPosition) throws IOException {
+			delegate.position(newPosition);
+			return this;
+		}
+
+		@Override
+		public long size() throws IOException {
+			return delegate.size();
+		}
+
+		@Override
+		public FileChannel truncate(long size) throws IOException {
+			delegate.truncate(size);
+			return this;
+		}
+
+		@Override
+		public void force(boolean metaData) throws IOException {
+			delegate.force(metaData);
+		}
+
+		@Override
+		public long transferTo(long position, long count, WritableByteChannel target) throws IOException {
+			return delegate.transferTo(position, count, target);
+		}
+
+		@Override
+		public long transferFrom(ReadableByteChannel src, long position, long count) throws IOException {
+			return delegate.transferFrom(src, position, count);
+		}
+
+		@Override
+		public int read(ByteBuffer dst, long position) throws IOException {
+			return delegate.read(dst, position);
+		}
+
+		@Override
+		public MappedByteBuffer map(MapMode mode, long position, long size) throws IOException {
+			return delegate.map(mode, position, size);
+		}
+
+		@Override
+		public FileLock lock(long position, long size, boolean shared) throws IOException {
+			return delegate.lock(position, size, shared);
+		}
+
+		@Override
+		public FileLock tryLock(long position, long size, boolean shared) throws IOException {
+			return delegate.tryLock(position, size, shared);
+		}
+
+		@Override
+		protected void implCloseChannel() throws IOException {
+			delegate.close();
+		}
+
+	}
+
+}
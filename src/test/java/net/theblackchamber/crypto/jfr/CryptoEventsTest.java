@@ -0,0 +1,119 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 Seamus Minogue
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.theblackchamber.crypto.jfr;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+import java.io.File;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.google.crypto.tink.KeysetHandle;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import net.theblackchamber.crypto.constants.SupportedKeyTemplates;
+import net.theblackchamber.crypto.model.KeyConfig2;
+import net.theblackchamber.crypto.providers.EncryptionProvider2;
+import net.theblackchamber.crypto.providers.EncryptionProviderFactory2;
+import net.theblackchamber.crypto.util.KeystoreUtils2;
+
+public class CryptoEventsTest {
+
+	@Rule
+	public TemporaryFolder	tempFolder	= new TemporaryFolder();
+
+	@Test
+	public void testDisabledWithoutRecording() {
+
+		assertEquals(null, CryptoEvents.beginProviderOperation());
+		CryptoEvents.endProviderOperation(null, "ENCRYPT", getClass(), null, 0, 0, 0, null);
+
+	}
+
+	@Test
+	public void testRecordEvents() throws Exception {
+
+		assumeTrue(CryptoEvents.isAvailable());
+
+		File keyFile = tempFolder.newFile("jfr.keys");
+		KeyConfig2 config = new KeyConfig2(keyFile, "test", SupportedKeyTemplates.AES256_GCM);
+		KeystoreUtils2.generateSecretKey(config);
+
+		List<RecordedEvent> events = new ArrayList<RecordedEvent>();
+		try (Recording recording = new Recording()) {
+			recording.enable(CryptoEvents.EVENT_PREFIX + "ProviderOperation").withThreshold(Duration.ZERO);
+			recording.enable(CryptoEvents.EVENT_PREFIX + "KeyLoad").withThreshold(Duration.ZERO);
+			recording.start();
+
+			KeysetHandle key = KeystoreUtils2.getSecretKey(config);
+			EncryptionProvider2 provider = EncryptionProviderFactory2.getProvider(key);
+			provider.decrypt(provider.encrypt("secret value"));
+
+			recording.stop();
+			Path dump = tempFolder.newFile("crypto.jfr").toPath();
+			recording.dump(dump);
+			events.addAll(RecordingFile.readAllEvents(dump));
+		}
+
+		int operations = 0;
+		boolean keyLoad = false;
+		long primaryKeyId = 0;
+		for (RecordedEvent event : events) {
+			String name = event.getEventType().getName();
+			if (name.equals(CryptoEvents.EVENT_PREFIX + "ProviderOperation")) {
+				operations++;
+				assertEquals(null, event.getString("failure"));
+				assertTrue(event.getLong("bytesIn") > 0);
+				assertTrue(event.getLong("keyId") != 0);
+				if (primaryKeyId == 0) {
+					primaryKeyId = event.getLong("keyId");
+				}
+				assertEquals(primaryKeyId, event.getLong("keyId"));
+				assertFalse(event.toString().contains("secret value"));
+			} else if (name.equals(CryptoEvents.EVENT_PREFIX + "KeyLoad")) {
+				keyLoad = true;
+				assertNotNull(event.getString("path"));
+				assertTrue(event.getLong("kdfDuration") > 0);
+				assertTrue(event.getLong("parseDuration") > 0);
+			}
+		}
+
+		assertEquals(2, operations);
+		assertTrue(keyLoad);
+
+	}
+
+}
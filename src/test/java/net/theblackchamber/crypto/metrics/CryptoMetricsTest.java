@@ -0,0 +1,165 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 Seamus Minogue
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.theblackchamber.crypto.metrics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.security.GeneralSecurityException;
+import java.util.List;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.google.crypto.tink.KeysetHandle;
+
+import net.theblackchamber.crypto.constants.SupportedKeyTemplates;
+import net.theblackchamber.crypto.model.KeyConfig2;
+import net.theblackchamber.crypto.providers.EncryptionProvider2;
+import net.theblackchamber.crypto.providers.EncryptionProviderFactory2;
+import net.theblackchamber.crypto.util.KeystoreUtils2;
+
+public class CryptoMetricsTest {
+
+	@Rule
+	public TemporaryFolder	tempFolder	= new TemporaryFolder();
+
+	private EncryptionProvider2 createProvider() throws Exception {
+		File keyFile = tempFolder.newFile("metrics.keys");
+
+		KeyConfig2 config = new KeyConfig2(keyFile, "test", SupportedKeyTemplates.AES256_GCM);
+		KeystoreUtils2.generateSecretKey(config);
+
+		KeysetHandle key = KeystoreUtils2.getSecretKey(config);
+
+		assertNotNull(key);
+
+		return EncryptionProviderFactory2.getProvider(key);
+	}
+
+	@Test
+	public void testDefaultIsNoOp() throws Exception {
+
+		assertSame(NoOpCryptoMetrics.INSTANCE, CryptoMetricsRegistry.getMetrics());
+		assertFalse(createProvider().getMetrics().isEnabled());
+
+	}
+
+	@Test
+	public void testRecordProviderOperations() throws Exception {
+
+		EncryptionProvider2 provider = createProvider();
+		DefaultCryptoMetrics metrics = new DefaultCryptoMetrics();
+		provider.setMetrics(metrics);
+
+		byte[] cipherText = provider.encrypt(new byte[100]);
+		provider.decrypt(cipherText);
+		provider.decrypt(provider.encrypt("clear text"));
+
+		try {
+			provider.decrypt(new byte[40]);
+			fail();
+		} catch (GeneralSecurityException e) {
+		}
+
+		OperationSnapshot encrypt = metrics.snapshot(CryptoOperation.ENCRYPT);
+		assertEquals(2, encrypt.getCount());
+		assertEquals(110, encrypt.getBytesIn());
+		assertTrue(encrypt.getBytesOut() > encrypt.getBytesIn());
+		assertTrue(encrypt.getMaxLatencyNanos() > 0);
+		assertTrue(encrypt.getLatencyPercentileNanos(50) > 0);
+		assertTrue(encrypt.getLatencyPercentileNanos(50) <= encrypt.getLatencyPercentileNanos(99.9));
+
+		OperationSnapshot decrypt = metrics.snapshot(CryptoOperation.DECRYPT);
+		assertEquals(2, decrypt.getCount());
+		assertEquals(110, decrypt.getBytesOut());
+		assertEquals(1, decrypt.getFailures());
+		assertEquals(1, decrypt.getFailuresByCause().size());
+
+		provider.setMetrics(null);
+		provider.encrypt(new byte[100]);
+		assertEquals(2, metrics.snapshot(CryptoOperation.ENCRYPT).getCount());
+
+	}
+
+	@Test
+	public void testHistogram() {
+
+		for (long value = 0; value < 100000; value++) {
+			int index = LatencyHistogram.index(value);
+			assertTrue(LatencyHistogram.upperBound(index) >= value);
+			assertTrue(index == 0 || LatencyHistogram.upperBound(index - 1) < value);
+		}
+
+		LatencyHistogram histogram = new LatencyHistogram();
+		assertEquals(0, LatencyHistogram.percentile(histogram.snapshot(), 50));
+
+		for (int i = 1; i <= 1000; i++) {
+			histogram.record(i * 1000L);
+		}
+		long[] snapshot = histogram.snapshot();
+		long median = LatencyHistogram.percentile(snapshot, 50);
+		assertTrue(median >= 500000 && median < 500000 * 1.125);
+		long p99 = LatencyHistogram.percentile(snapshot, 99);
+		assertTrue(p99 >= 990000 && p99 < 990000 * 1.125);
+
+		histogram.record(Long.MAX_VALUE);
+		assertTrue(LatencyHistogram.percentile(histogram.snapshot(), 100) > 0);
+
+	}
+
+	@Test
+	public void testJmx() throws Exception {
+
+		DefaultCryptoMetrics metrics = new DefaultCryptoMetrics();
+		metrics.record(CryptoOperation.ENCRYPT_PROPERTY, 1000, 10, 60);
+
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		List<ObjectName> names = CryptoMetricsJmx.register(metrics, server);
+		try {
+			assertEquals(CryptoOperation.values().length, names.size());
+			ObjectName name = CryptoMetricsJmx.objectName(CryptoOperation.ENCRYPT_PROPERTY);
+			assertEquals(1L, server.getAttribute(name, "Count"));
+			assertEquals(60L, server.getAttribute(name, "BytesOut"));
+		} finally {
+			CryptoMetricsJmx.unregister(names, server);
+		}
+
+		for (ObjectName name : names) {
+			assertFalse(server.isRegistered(name));
+		}
+
+	}
+
+}
@@ -0,0 +1,186 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 Seamus Minogue
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.theblackchamber.crypto.providers;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+import java.util.Arrays;
+
+import org.apache.commons.lang3.RandomStringUtils;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.google.crypto.tink.KeysetHandle;
+import com.google.crypto.tink.KeysetManager;
+import com.google.crypto.tink.aead.AesGcmKeyManager;
+import com.google.crypto.tink.proto.KeysetInfo.KeyInfo;
+import com.google.crypto.tink.proto.OutputPrefixType;
+
+import net.theblackchamber.crypto.exceptions.MissingParameterException;
+import net.theblackchamber.crypto.model.KeyConfig2;
+import net.theblackchamber.crypto.providers.symmetric.AESEncryptionProvider2;
+import net.theblackchamber.crypto.util.KeystoreUtils2;
+
+public class AESEncryptionProviderJceTest2 {
+
+	KeysetHandle			key;
+
+	@Rule
+	public TemporaryFolder	tempFolder	= new TemporaryFolder();
+
+	@Before
+	public void init() {
+		try {
+			File keyFile = tempFolder.newFile("keystore.keys");
+
+			KeyConfig2 config = new KeyConfig2(keyFile, "test");
+			KeystoreUtils2.generateSecretKey(config);
+
+			key = KeystoreUtils2.getSecretKey(config);
+
+			assertNotNull(key);
+
+		} catch (Exception e) {
+			e.printStackTrace();
+			fail();
+		}
+	}
+
+	@Test
+	public void testCrossCompatibility() throws GeneralSecurityException, MissingParameterException {
+
+		assertCompatible(new AESEncryptionProvider2(key), new AESEncryptionProvider2(key, true));
+
+	}
+
+	@Test
+	public void testCrossCompatibilityRotatedKeyset() throws GeneralSecurityException, MissingParameterException {
+
+		EncryptionProvider2 tink = new AESEncryptionProvider2(key);
+		EncryptionProvider2 jce = new AESEncryptionProvider2(key, true);
+
+		byte[] clear = RandomStringUtils.randomAlphabetic(50).getBytes();
+		byte[] oldTink = tink.encrypt(clear);
+		byte[] oldJce = jce.encrypt(clear);
+
+		// Add a RAW key and make it primary, the old prefixed key stays enabled.
+		KeysetManager manager = KeysetManager.withKeysetHandle(key).add(AesGcmKeyManager.rawAes256GcmTemplate());
+		int rawKeyId = 0;
+		for (KeyInfo keyInfo : manager.getKeysetHandle().getKeysetInfo().getKeyInfoList()) {
+			if (keyInfo.getOutputPrefixType() == OutputPrefixType.RAW) {
+				rawKeyId = keyInfo.getKeyId();
+			}
+		}
+		KeysetHandle rotated = manager.setPrimary(rawKeyId).getKeysetHandle();
+
+		EncryptionProvider2 rotatedTink = new AESEncryptionProvider2(rotated);
+		EncryptionProvider2 rotatedJce = new AESEncryptionProvider2(rotated, true);
+
+		assertTrue(Arrays.equals(clear, rotatedJce.decrypt(oldTink)));
+		assertTrue(Arrays.equals(clear, rotatedJce.decrypt(oldJce)));
+		assertTrue(Arrays.equals(clear, rotatedTink.decrypt(oldJce)));
+
+		assertCompatible(rotatedTink, rotatedJce);
+
+	}
+
+	@Test
+	public void testTamperedCipherText() throws GeneralSecurityException, MissingParameterException {
+
+		EncryptionProvider2 jce = new AESEncryptionProvider2(key, true);
+
+		byte[] clear = RandomStringUtils.randomAlphabetic(50).getBytes();
+		byte[] cipher = jce.encrypt(clear, "associated".getBytes());
+
+		try {
+			jce.decrypt(cipher, "other".getBytes());
+			fail();
+		} catch (GeneralSecurityException gse) {
+			// Expected behavior
+		}
+
+		cipher[cipher.length - 1] ^= 1;
+		try {
+			jce.decrypt(cipher, "associated".getBytes());
+			fail();
+		} catch (GeneralSecurityException gse) {
+			// Expected behavior
+		}
+
+		try {
+			jce.decrypt(Arrays.copyOf(cipher, 20));
+			fail();
+		} catch (GeneralSecurityException gse) {
+			// Expected behavior
+		}
+
+	}
+
+	private void assertCompatible(EncryptionProvider2 tink, EncryptionProvider2 jce)
+			throws GeneralSecurityException, MissingParameterException {
+
+		String clear = RandomStringUtils.randomAlphabetic(100);
+		byte[] clearBytes = clear.getBytes();
+		byte[] associated = "associated".getBytes();
+
+		assertEquals(clear, jce.decrypt(tink.encrypt(clear)));
+		assertEquals(clear, tink.decrypt(jce.encrypt(clear)));
+		assertTrue(Arrays.equals(clearBytes, jce.decrypt(tink.encrypt(clearBytes, associated), associated)));
+		assertTrue(Arrays.equals(clearBytes, tink.decrypt(jce.encrypt(clearBytes, associated), associated)));
+
+		byte[] jceCipher = jce.encrypt(clearBytes, associated);
+		byte[] tinkCipher = tink.encrypt(clearBytes, associated);
+		assertEquals(tinkCipher.length, jceCipher.length);
+		assertTrue(Arrays.equals(Arrays.copyOf(tinkCipher, 5), Arrays.copyOf(jceCipher, 5)));
+
+		// Direct buffers take the copy free path
+		ByteBuffer src = ByteBuffer.allocateDirect(clearBytes.length);
+		src.put(clearBytes).flip();
+		ByteBuffer cipher = ByteBuffer.allocateDirect(jce.ciphertextLength(clearBytes.length));
+		jce.encrypt(src, ByteBuffer.wrap(associated), cipher);
+		cipher.flip();
+
+		byte[] cipherBytes = new byte[cipher.remaining()];
+		cipher.duplicate().get(cipherBytes);
+		assertTrue(Arrays.equals(clearBytes, tink.decrypt(cipherBytes, associated)));
+
+		ByteBuffer decrypted = ByteBuffer.allocateDirect(jce.plaintextLength(cipher.remaining()));
+		assertEquals(clearBytes.length, jce.decrypt(cipher, ByteBuffer.wrap(associated), decrypted));
+		decrypted.flip();
+
+		byte[] result = new byte[decrypted.remaining()];
+		decrypted.get(result);
+		assertTrue(Arrays.equals(clearBytes, result));
+
+	}
+
+}
@@ -24,14 +24,20 @@
 package net.theblackchamber.crypto.providers;
 
 import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.security.GeneralSecurityException;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Base64;
 import java.util.Base64.Encoder;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
 
 import javax.crypto.SecretKey;
+import javax.crypto.ShortBufferException;
 
 import org.apache.commons.lang3.RandomStringUtils;
 import org.apache.commons.lang3.StringUtils;
@@ -41,9 +47,14 @@ import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.TemporaryFolder;
 
+import com.google.crypto.tink.Aead;
 import com.google.crypto.tink.KeysetHandle;
+import com.google.crypto.tink.KeysetManager;
+import com.google.crypto.tink.aead.AesGcmKeyManager;
+import com.google.crypto.tink.proto.KeysetInfo.KeyInfo;
 
 import static org.junit.Assert.*;
+import net.theblackchamber.crypto.constants.SupportedCiphertextCodecs;
 import net.theblackchamber.crypto.constants.SupportedKeyGenAlgorithms;
 import net.theblackchamber.crypto.exceptions.MissingParameterException;
 import net.theblackchamber.crypto.exceptions.UnsupportedAlgorithmException;
@@ -279,4 +290,367 @@ public class AESEncryptionProviderTest2 {
 		}
 	}
 
+	@Test
+	public void testKeyChange() throws Exception {
+
+		EncryptionProvider2 aesEncryptionProvider = new AESEncryptionProvider2(key);
+
+		byte[] clear = RandomStringUtils.randomAlphabetic(20).getBytes();
+		byte[] cipher = aesEncryptionProvider.encrypt(clear);
+
+		assertTrue(Arrays.equals(clear, aesEncryptionProvider.decrypt(cipher)));
+
+		File keyFile = tempFolder.newFile("rotated.keys");
+		KeyConfig2 config = new KeyConfig2(keyFile, "test");
+		KeystoreUtils2.generateSecretKey(config);
+		KeysetHandle rotated = KeystoreUtils2.getSecretKey(config);
+
+		aesEncryptionProvider.setKey(rotated);
+
+		try {
+			aesEncryptionProvider.decrypt(cipher);
+			fail();
+		} catch (GeneralSecurityException gse) {
+			// Expected behavior, old key is no longer in use
+		}
+
+		byte[] rotatedCipher = aesEncryptionProvider.encrypt(clear);
+		assertTrue(Arrays.equals(clear, aesEncryptionProvider.decrypt(rotatedCipher)));
+
+	}
+
+	@Test
+	public void testEncryptDecryptHeapBuffers() throws GeneralSecurityException, MissingParameterException {
+
+		EncryptionProvider2 aesEncryptionProvider = EncryptionProviderFactory2.getProvider(key);
+
+		byte[] clear = RandomStringUtils.randomAlphabetic(40).getBytes();
+		byte[] associated = RandomStringUtils.randomAlphabetic(20).getBytes();
+
+		// Sliced buffer so the backing array is not an exact match.
+		ByteBuffer src = ByteBuffer.allocate(clear.length + 10);
+		src.position(5);
+		src.put(clear);
+		src.position(5);
+		src.limit(5 + clear.length);
+
+		ByteBuffer cipher = ByteBuffer.allocate(aesEncryptionProvider.ciphertextLength(clear.length));
+		int written = aesEncryptionProvider.encrypt(src, ByteBuffer.wrap(associated), cipher);
+
+		assertEquals(aesEncryptionProvider.ciphertextLength(clear.length), written);
+		assertFalse(src.hasRemaining());
+		assertFalse(cipher.hasRemaining());
+
+		cipher.flip();
+		byte[] cipherBytes = new byte[cipher.remaining()];
+		cipher.duplicate().get(cipherBytes);
+		assertTrue(Arrays.equals(clear, aesEncryptionProvider.decrypt(cipherBytes, associated)));
+
+		ByteBuffer decrypted = ByteBuffer.allocate(aesEncryptionProvider.plaintextLength(cipher.remaining()));
+		int read = aesEncryptionProvider.decrypt(cipher, ByteBuffer.wrap(associated), decrypted);
+
+		assertEquals(clear.length, read);
+		assertTrue(Arrays.equals(clear, decrypted.array()));
+
+	}
+
+	@Test
+	public void testEncryptDecryptDirectBuffers() throws GeneralSecurityException, MissingParameterException {
+
+		EncryptionProvider2 aesEncryptionProvider = EncryptionProviderFactory2.getProvider(key);
+
+		byte[] clear = RandomStringUtils.randomAlphabetic(100).getBytes();
+
+		ByteBuffer src = ByteBuffer.allocateDirect(clear.length);
+		src.put(clear).flip();
+
+		ByteBuffer cipher = ByteBuffer.allocateDirect(aesEncryptionProvider.ciphertextLength(clear.length));
+		aesEncryptionProvider.encrypt(src, null, cipher);
+		cipher.flip();
+
+		ByteBuffer decrypted = ByteBuffer.allocateDirect(aesEncryptionProvider.plaintextLength(cipher.remaining()));
+		aesEncryptionProvider.decrypt(cipher, null, decrypted);
+		decrypted.flip();
+
+		byte[] result = new byte[decrypted.remaining()];
+		decrypted.get(result);
+		assertTrue(Arrays.equals(clear, result));
+
+	}
+
+	@Test
+	public void testEncryptBufferTooSmall() throws GeneralSecurityException, MissingParameterException {
+
+		EncryptionProvider2 aesEncryptionProvider = EncryptionProviderFactory2.getProvider(key);
+
+		ByteBuffer src = ByteBuffer.wrap(RandomStringUtils.randomAlphabetic(20).getBytes());
+		ByteBuffer dst = ByteBuffer.allocate(20);
+
+		try {
+			aesEncryptionProvider.encrypt(src, null, dst);
+			fail();
+		} catch (ShortBufferException sbe) {
+			// Expected behavior
+		}
+
+		assertEquals(0, src.position());
+		assertEquals(0, dst.position());
+
+		try {
+			aesEncryptionProvider.encrypt(ByteBuffer.allocate(0), null, dst);
+			fail();
+		} catch (MissingParameterException mpe) {
+			// Expected behavior
+		}
+
+	}
+
+	@Test
+	public void testEncryptDecryptOffsets() throws GeneralSecurityException, MissingParameterException {
+
+		EncryptionProvider2 aesEncryptionProvider = EncryptionProviderFactory2.getProvider(key);
+
+		byte[] associated = RandomStringUtils.randomAlphabetic(20).getBytes();
+		byte[] input = new byte[64];
+		byte[] cipher = new byte[aesEncryptionProvider.ciphertextLength(input.length) + 8];
+		byte[] output = new byte[aesEncryptionProvider.plaintextLength(cipher.length) + 8];
+
+		for (int i = 1; i < 10; i++) {
+
+			byte[] clear = RandomStringUtils.randomAlphabetic(32).getBytes();
+			System.arraycopy(clear, 0, input, 16, clear.length);
+
+			int cipherLength = aesEncryptionProvider.encrypt(input, 16, clear.length, associated, cipher, 8);
+			assertEquals(aesEncryptionProvider.ciphertextLength(clear.length), cipherLength);
+
+			int clearLength = aesEncryptionProvider.decrypt(cipher, 8, cipherLength, associated, output, 4);
+			assertEquals(clear.length, clearLength);
+			assertTrue(Arrays.equals(clear, Arrays.copyOfRange(output, 4, 4 + clearLength)));
+
+		}
+
+		try {
+			aesEncryptionProvider.encrypt(input, 0, input.length, null, new byte[input.length], 0);
+			fail();
+		} catch (ShortBufferException sbe) {
+			// Expected behavior
+		}
+
+		try {
+			aesEncryptionProvider.decrypt(cipher, 0, 0, null, output, 0);
+			fail();
+		} catch (MissingParameterException mpe) {
+			// Expected behavior
+		}
+
+	}
+
+	@Test
+	public void testEncryptDecryptAll() throws GeneralSecurityException, MissingParameterException {
+
+		EncryptionProvider2 aesEncryptionProvider = new AESEncryptionProvider2(key);
+
+		byte[][] clear = new byte[500][];
+		byte[][] associated = new byte[clear.length][];
+		for (int i = 0; i < clear.length; i++) {
+			clear[i] = ("value-" + i).getBytes();
+			associated[i] = i % 2 == 0 ? null : ("row-" + i).getBytes();
+		}
+
+		ForkJoinPool pool = new ForkJoinPool(4);
+		try {
+			aesEncryptionProvider.setBatchPool(pool);
+
+			for (int threshold : new int[] { 1, clear.length + 1 }) {
+
+				aesEncryptionProvider.setParallelThreshold(threshold);
+
+				byte[][] cipher = aesEncryptionProvider.encryptAll(clear, associated);
+				assertEquals(clear.length, cipher.length);
+
+				byte[][] decrypted = aesEncryptionProvider.decryptAll(cipher, associated);
+				for (int i = 0; i < clear.length; i++) {
+					assertTrue(Arrays.equals(clear[i], decrypted[i]));
+					assertTrue(Arrays.equals(clear[i], aesEncryptionProvider.decrypt(cipher[i], associated[i])));
+				}
+
+				List<byte[]> listed = aesEncryptionProvider.decryptAll(Arrays.asList(cipher), Arrays.asList(associated));
+				assertTrue(Arrays.equals(clear[clear.length - 1], listed.get(clear.length - 1)));
+
+				// Corrupt one value, the whole batch reports it.
+				byte[][] corrupt = cipher.clone();
+				corrupt[250] = cipher[251];
+				try {
+					aesEncryptionProvider.decryptAll(corrupt, associated);
+					fail();
+				} catch (GeneralSecurityException gse) {
+					// Expected behavior
+				}
+
+				byte[][] missing = clear.clone();
+				missing[10] = new byte[0];
+				try {
+					aesEncryptionProvider.encryptAll(missing);
+					fail();
+				} catch (MissingParameterException mpe) {
+					// Expected behavior
+				}
+			}
+		} finally {
+			pool.shutdown();
+		}
+
+	}
+
+	@Test
+	public void testDecryptRotatedKeyset() throws Exception {
+
+		byte[] clear = RandomStringUtils.randomAlphabetic(20).getBytes();
+		byte[] associated = RandomStringUtils.randomAlphabetic(20).getBytes();
+
+		List<byte[]> ciphers = new ArrayList<byte[]>();
+		KeysetHandle rotated = key;
+		for (int i = 0; i < 20; i++) {
+			ciphers.add(new AESEncryptionProvider2(rotated).encrypt(clear, associated));
+
+			// Alternate prefixed and RAW keys so both lookups are exercised.
+			Set<Integer> existing = new HashSet<Integer>();
+			for (KeyInfo keyInfo : rotated.getKeysetInfo().getKeyInfoList()) {
+				existing.add(keyInfo.getKeyId());
+			}
+			KeysetManager manager = KeysetManager.withKeysetHandle(rotated).add(
+					i % 2 == 0 ? AesGcmKeyManager.rawAes256GcmTemplate() : AesGcmKeyManager.aes256GcmTemplate());
+			for (KeyInfo keyInfo : manager.getKeysetHandle().getKeysetInfo().getKeyInfoList()) {
+				if (!existing.contains(keyInfo.getKeyId())) {
+					manager.setPrimary(keyInfo.getKeyId());
+				}
+			}
+			rotated = manager.getKeysetHandle();
+		}
+
+		EncryptionProvider2 aesEncryptionProvider = new AESEncryptionProvider2(rotated);
+		EncryptionProvider2 jceEncryptionProvider = new AESEncryptionProvider2(rotated, true);
+		Aead tink = rotated.getPrimitive(Aead.class);
+
+		for (byte[] cipher : ciphers) {
+			assertTrue(Arrays.equals(clear, aesEncryptionProvider.decrypt(cipher, associated)));
+			assertTrue(Arrays.equals(clear, jceEncryptionProvider.decrypt(cipher, associated)));
+			assertTrue(Arrays.equals(clear, tink.decrypt(cipher, associated)));
+		}
+
+		byte[] cipher = aesEncryptionProvider.encrypt(clear, associated);
+		assertTrue(Arrays.equals(clear, tink.decrypt(cipher, associated)));
+
+		try {
+			aesEncryptionProvider.decrypt(cipher, "other".getBytes());
+			fail();
+		} catch (GeneralSecurityException gse) {
+			// Expected behavior
+		}
+
+	}
+
+	@Test
+	public void testEncryptDecryptUtf8() throws GeneralSecurityException, MissingParameterException {
+
+		EncryptionProvider2 aesEncryptionProvider = EncryptionProviderFactory2.getProvider(key);
+
+		String clear = "h\u00e9llo w\u00f6rld \u20ac \ud834\udd1e " + RandomStringUtils.randomAlphabetic(20);
+		String associated = "\u00fcber";
+
+		String cipher = aesEncryptionProvider.encrypt(clear, associated);
+		assertEquals(clear, aesEncryptionProvider.decrypt(cipher, associated));
+
+		// Always UTF-8, whatever the default charset
+		byte[] decrypted = aesEncryptionProvider.decrypt(Base64.getDecoder().decode(cipher),
+				associated.getBytes(StandardCharsets.UTF_8));
+		assertTrue(Arrays.equals(clear.getBytes(StandardCharsets.UTF_8), decrypted));
+
+		StringBuilder builder = new StringBuilder(clear);
+		String built = aesEncryptionProvider.encrypt(builder, new StringBuilder(associated));
+		assertTrue(Arrays.equals(clear.toCharArray(), aesEncryptionProvider.decryptToChars(built, associated)));
+
+		// Large values grow the scratch buffers
+		String large = RandomStringUtils.randomAlphanumeric(100000);
+		assertEquals(large, aesEncryptionProvider.decrypt(aesEncryptionProvider.encrypt(large)));
+		assertEquals(clear, aesEncryptionProvider.decrypt(cipher, associated));
+
+		try {
+			aesEncryptionProvider.decryptToChars(cipher, "other");
+			fail();
+		} catch (GeneralSecurityException gse) {
+			// Expected behavior
+		}
+
+	}
+
+	@Test
+	public void testEncryptDecryptCodecs() throws GeneralSecurityException, MissingParameterException {
+
+		EncryptionProvider2 aesEncryptionProvider = EncryptionProviderFactory2.getProvider(key);
+
+		String clear = RandomStringUtils.randomAlphabetic(100);
+		int base64Length = aesEncryptionProvider.encrypt(clear).length();
+
+		for (SupportedCiphertextCodecs codec : SupportedCiphertextCodecs.values()) {
+			aesEncryptionProvider.setCodec(codec);
+
+			String cipher = aesEncryptionProvider.encrypt(clear, "associated");
+			assertEquals(codec.getCodec().encodedLength(aesEncryptionProvider.ciphertextLength(100)), cipher.length());
+			assertEquals(clear, aesEncryptionProvider.decrypt(cipher, "associated"));
+
+			if (codec == SupportedCiphertextCodecs.Z85) {
+				assertTrue(cipher.length() < base64Length);
+			}
+		}
+
+	}
+
+	@Test
+	public void testDecryptEach() throws Exception {
+
+		EncryptionProvider2 aesEncryptionProvider = new AESEncryptionProvider2(key);
+		EncryptionProvider2 otherProvider = new AESEncryptionProvider2(
+				KeysetHandle.generateNew(AesGcmKeyManager.aes256GcmTemplate()));
+
+		byte[] clear = RandomStringUtils.randomAlphabetic(20).getBytes();
+		byte[] valid = aesEncryptionProvider.encrypt(clear);
+		byte[] tampered = valid.clone();
+		tampered[tampered.length - 1] ^= 1;
+		byte[] badVersion = valid.clone();
+		badVersion[0] = 7;
+
+		byte[][] cipherTexts = { valid, null, new byte[3], tampered, otherProvider.encrypt(clear), badVersion };
+		byte[] expected = { BulkDecryptResult.OK, BulkDecryptResult.MISSING, BulkDecryptResult.MALFORMED,
+				BulkDecryptResult.AUTH_FAILED, BulkDecryptResult.UNKNOWN_KEY, BulkDecryptResult.MALFORMED };
+
+		for (int threshold : new int[] { EncryptionProvider2.DEFAULT_PARALLEL_THRESHOLD, 1 }) {
+			aesEncryptionProvider.setParallelThreshold(threshold);
+			BulkDecryptResult result = aesEncryptionProvider.decryptEach(cipherTexts);
+
+			assertEquals(cipherTexts.length, result.size());
+			assertTrue(Arrays.equals(expected, result.getStatuses()));
+			assertTrue(Arrays.equals(clear, result.getClearText(0)));
+			for (int i = 1; i < cipherTexts.length; i++) {
+				assertFalse(result.isOk(i));
+				assertNull(result.getClearText(i));
+			}
+			assertEquals(5, result.getFailureCount());
+		}
+
+		// The JCE engine reports the same statuses
+		BulkDecryptResult jceResult = new AESEncryptionProvider2(key, true).decryptEach(cipherTexts);
+		assertTrue(Arrays.equals(expected, jceResult.getStatuses()));
+		assertTrue(Arrays.equals(clear, jceResult.getClearText(0)));
+
+		assertEquals("UNKNOWN_KEY", BulkDecryptResult.getStatusName(BulkDecryptResult.UNKNOWN_KEY));
+
+		try {
+			aesEncryptionProvider.decryptEach(null);
+			fail();
+		} catch (MissingParameterException e) {
+		}
+
+	}
+
 }
@@ -0,0 +1,108 @@
+package net.theblackchamber.crypto.providers;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.security.GeneralSecurityException;
+import java.util.Arrays;
+
+import org.apache.commons.lang3.RandomStringUtils;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.google.crypto.tink.KeysetHandle;
+
+import net.theblackchamber.crypto.constants.SupportedKeyTemplates;
+import net.theblackchamber.crypto.exceptions.MissingParameterException;
+import net.theblackchamber.crypto.model.KeyConfig2;
+import net.theblackchamber.crypto.providers.symmetric.AESSIVEncryptionProvider2;
+import net.theblackchamber.crypto.util.KeystoreUtils2;
+
+public class AESSIVEncryptionProviderTest2 {
+
+	KeysetHandle			key;
+
+	@Rule
+	public TemporaryFolder	tempFolder	= new TemporaryFolder();
+
+	@Before
+	public void init() {
+		try {
+			File keyFile = tempFolder.newFile("keystore.keys");
+
+			KeyConfig2 config = new KeyConfig2(keyFile, "test", SupportedKeyTemplates.AES256_SIV);
+			KeystoreUtils2.generateSecretKey(config);
+
+			key = KeystoreUtils2.getSecretKey(config);
+
+			assertNotNull(key);
+
+		} catch (Exception e) {
+			e.printStackTrace();
+			fail();
+		}
+	}
+
+	@Test
+	public void testGetProvider() throws GeneralSecurityException {
+
+		EncryptionProvider2 encryptionProvider = EncryptionProviderFactory2.getProvider(key);
+
+		assertTrue(encryptionProvider instanceof AESSIVEncryptionProvider2);
+
+	}
+
+	@Test
+	public void testEncryptDeterministic() throws GeneralSecurityException, MissingParameterException {
+
+		EncryptionProvider2 encryptionProvider = EncryptionProviderFactory2.getProvider(key);
+
+		String clear = RandomStringUtils.randomAlphabetic(20);
+		String cipher = encryptionProvider.encrypt(clear);
+
+		for (int i = 1; i < 10; i++) {
+			assertEquals(cipher, encryptionProvider.encrypt(clear));
+		}
+
+		assertFalse(cipher.equals(encryptionProvider.encrypt(clear, "column")));
+		assertFalse(cipher.equals(encryptionProvider.encrypt(clear + "x")));
+		assertEquals(clear, encryptionProvider.decrypt(cipher));
+
+		try {
+			encryptionProvider.encrypt("");
+			fail();
+		} catch (MissingParameterException mpe) {
+			// Expected behavior
+		}
+
+	}
+
+	@Test
+	public void testDecryptBytesAssociated() throws GeneralSecurityException, MissingParameterException {
+
+		EncryptionProvider2 encryptionProvider = EncryptionProviderFactory2.getProvider(key);
+
+		byte[] clear = RandomStringUtils.randomAlphabetic(20).getBytes();
+		byte[] associated = RandomStringUtils.randomAlphabetic(20).getBytes();
+
+		byte[] cipher = encryptionProvider.encrypt(clear, associated);
+
+		assertTrue(Arrays.equals(cipher, encryptionProvider.encrypt(clear, associated)));
+		assertTrue(Arrays.equals(clear, encryptionProvider.decrypt(cipher, associated)));
+
+		try {
+			encryptionProvider.decrypt(cipher, "other".getBytes());
+			fail();
+		} catch (GeneralSecurityException gse) {
+			// Expected behavior
+		}
+
+	}
+
+}
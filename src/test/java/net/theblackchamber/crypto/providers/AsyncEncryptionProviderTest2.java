@@ -0,0 +1,134 @@
+package net.theblackchamber.crypto.providers;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.security.GeneralSecurityException;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.apache.commons.lang3.RandomStringUtils;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.google.crypto.tink.KeysetHandle;
+
+import net.theblackchamber.crypto.exceptions.MissingParameterException;
+import net.theblackchamber.crypto.model.KeyConfig2;
+import net.theblackchamber.crypto.util.AsyncExecutors;
+import net.theblackchamber.crypto.util.KeystoreUtils2;
+
+public class AsyncEncryptionProviderTest2 {
+
+	KeysetHandle			key;
+
+	@Rule
+	public TemporaryFolder	tempFolder	= new TemporaryFolder();
+
+	@Before
+	public void init() {
+		try {
+			File keyFile = tempFolder.newFile("keystore.keys");
+
+			KeyConfig2 config = new KeyConfig2(keyFile, "test");
+			KeystoreUtils2.generateSecretKey(config);
+
+			key = KeystoreUtils2.getSecretKey(config);
+
+			assertNotNull(key);
+
+		} catch (Exception e) {
+			e.printStackTrace();
+			fail();
+		}
+	}
+
+	@Test
+	public void testEncryptDecrypt() throws Exception {
+
+		AsyncEncryptionProvider2 provider = new AsyncEncryptionProvider2(EncryptionProviderFactory2.getProvider(key));
+
+		byte[] clear = RandomStringUtils.randomAlphabetic(20).getBytes();
+		byte[] associated = RandomStringUtils.randomAlphabetic(20).getBytes();
+
+		byte[] decrypted = provider.encrypt(clear, associated).thenCompose(cipher -> provider.decrypt(cipher, associated))
+				.get();
+		assertTrue(Arrays.equals(clear, decrypted));
+
+		String clearText = RandomStringUtils.randomAlphabetic(20);
+		String cipherText = AsyncEncryptionProvider2.await(provider.encrypt(clearText));
+		assertEquals(clearText, AsyncEncryptionProvider2.await(provider.decrypt(cipherText)));
+
+	}
+
+	@Test
+	public void testExceptionMapping() throws Exception {
+
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		try {
+			AsyncEncryptionProvider2 provider = new AsyncEncryptionProvider2(EncryptionProviderFactory2.getProvider(key),
+					executor);
+
+			try {
+				AsyncEncryptionProvider2.await(provider.encrypt(""));
+				fail();
+			} catch (MissingParameterException mpe) {
+				// Expected behavior
+			}
+
+			try {
+				AsyncEncryptionProvider2.await(provider.decrypt(RandomStringUtils.randomAlphabetic(40).getBytes()));
+				fail();
+			} catch (GeneralSecurityException gse) {
+				// Expected behavior
+			}
+		} finally {
+			executor.shutdown();
+		}
+
+	}
+
+	@Test
+	public void testCancellation() throws Exception {
+
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		try {
+			CountDownLatch started = new CountDownLatch(1);
+			CountDownLatch interrupted = new CountDownLatch(1);
+
+			CompletableFuture<byte[]> blocked = AsyncExecutors.supplyAsync(() -> {
+				started.countDown();
+				try {
+					Thread.sleep(60000);
+				} catch (InterruptedException e) {
+					interrupted.countDown();
+				}
+				return null;
+			}, executor);
+
+			started.await();
+			blocked.cancel(true);
+
+			try {
+				AsyncEncryptionProvider2.await(blocked);
+				fail();
+			} catch (GeneralSecurityException gse) {
+				// Expected behavior
+			}
+
+			interrupted.await();
+		} finally {
+			executor.shutdown();
+		}
+
+	}
+
+}
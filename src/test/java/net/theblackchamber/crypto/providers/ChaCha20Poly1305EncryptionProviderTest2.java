@@ -0,0 +1,172 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 Seamus Minogue
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.theblackchamber.crypto.providers;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.security.GeneralSecurityException;
+import java.util.Arrays;
+
+import org.apache.commons.lang3.RandomStringUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.google.crypto.tink.KeysetHandle;
+import com.google.crypto.tink.KeysetManager;
+import com.google.crypto.tink.proto.KeysetInfo.KeyInfo;
+
+import net.theblackchamber.crypto.constants.SupportedKeyTemplates;
+import net.theblackchamber.crypto.exceptions.MissingParameterException;
+import net.theblackchamber.crypto.model.KeyConfig2;
+import net.theblackchamber.crypto.providers.symmetric.AESEncryptionProvider2;
+import net.theblackchamber.crypto.providers.symmetric.ChaCha20Poly1305EncryptionProvider2;
+import net.theblackchamber.crypto.util.KeyTemplateSelector;
+import net.theblackchamber.crypto.util.KeystoreUtils2;
+
+public class ChaCha20Poly1305EncryptionProviderTest2 {
+
+	@Rule
+	public TemporaryFolder	tempFolder	= new TemporaryFolder();
+
+	private KeysetHandle generateKey(SupportedKeyTemplates template) throws Exception {
+		File keyFile = tempFolder.newFile(template.name() + ".keys");
+
+		KeyConfig2 config = new KeyConfig2(keyFile, "test", template);
+		KeystoreUtils2.generateSecretKey(config);
+
+		KeysetHandle key = KeystoreUtils2.getSecretKey(config);
+
+		assertNotNull(key);
+
+		return key;
+	}
+
+	@Test
+	public void testGetProvider() throws Exception {
+
+		assertTrue(EncryptionProviderFactory2.getProvider(
+				generateKey(SupportedKeyTemplates.CHACHA20_POLY1305)) instanceof ChaCha20Poly1305EncryptionProvider2);
+		assertTrue(EncryptionProviderFactory2.getProvider(
+				generateKey(SupportedKeyTemplates.XCHACHA20_POLY1305)) instanceof ChaCha20Poly1305EncryptionProvider2);
+
+	}
+
+	@Test
+	public void testEncryptDecrypt() throws Exception {
+
+		for (SupportedKeyTemplates template : new SupportedKeyTemplates[] { SupportedKeyTemplates.CHACHA20_POLY1305,
+				SupportedKeyTemplates.XCHACHA20_POLY1305 }) {
+
+			EncryptionProvider2 encryptionProvider = EncryptionProviderFactory2.getProvider(generateKey(template));
+
+			String clear = RandomStringUtils.randomAlphabetic(20);
+			String cipher = encryptionProvider.encrypt(clear);
+
+			assertFalse(cipher.equals(encryptionProvider.encrypt(clear)));
+			assertEquals(clear, encryptionProvider.decrypt(cipher));
+
+			byte[] clearBytes = clear.getBytes();
+			byte[] associated = "associated".getBytes();
+			byte[] cipherBytes = encryptionProvider.encrypt(clearBytes, associated);
+
+			assertTrue(Arrays.equals(clearBytes, encryptionProvider.decrypt(cipherBytes, associated)));
+
+			try {
+				encryptionProvider.decrypt(cipherBytes, "other".getBytes());
+				fail();
+			} catch (GeneralSecurityException gse) {
+				// Expected behavior
+			}
+
+			try {
+				encryptionProvider.encrypt("");
+				fail();
+			} catch (MissingParameterException mpe) {
+				// Expected behavior
+			}
+		}
+
+	}
+
+	@Test
+	public void testFastestAead() throws Exception {
+
+		SupportedKeyTemplates recommended = KeyTemplateSelector.recommend();
+
+		assertTrue(recommended == SupportedKeyTemplates.AES256_GCM
+				|| recommended == SupportedKeyTemplates.XCHACHA20_POLY1305);
+		assertEquals(recommended, KeyTemplateSelector.recommend());
+
+		EncryptionProvider2 encryptionProvider = EncryptionProviderFactory2
+				.getProvider(generateKey(SupportedKeyTemplates.FASTEST_AEAD));
+
+		if (recommended == SupportedKeyTemplates.AES256_GCM) {
+			assertTrue(encryptionProvider instanceof AESEncryptionProvider2);
+		} else {
+			assertTrue(encryptionProvider instanceof ChaCha20Poly1305EncryptionProvider2);
+		}
+
+		String clear = RandomStringUtils.randomAlphabetic(20);
+		assertEquals(clear, encryptionProvider.decrypt(encryptionProvider.encrypt(clear)));
+
+	}
+
+	@Test
+	public void testMixedKeyset() throws Exception {
+
+		KeysetHandle key = generateKey(SupportedKeyTemplates.AES256_GCM);
+		EncryptionProvider2 aesProvider = EncryptionProviderFactory2.getProvider(key);
+
+		String clear = RandomStringUtils.randomAlphabetic(3);
+		String cipher = aesProvider.encrypt(clear);
+		byte[] cipherBytes = aesProvider.encrypt(clear.getBytes());
+
+		// Rotate to XChaCha20-Poly1305, whose overhead is larger than that of the older key.
+		int aesKeyId = key.getKeysetInfo().getPrimaryKeyId();
+		KeysetManager manager = KeysetManager.withKeysetHandle(key)
+				.add(SupportedKeyTemplates.XCHACHA20_POLY1305.getTemplate());
+		for (KeyInfo keyInfo : manager.getKeysetHandle().getKeysetInfo().getKeyInfoList()) {
+			if (keyInfo.getKeyId() != aesKeyId) {
+				manager.setPrimary(keyInfo.getKeyId());
+			}
+		}
+		EncryptionProvider2 rotatedProvider = EncryptionProviderFactory2.getProvider(manager.getKeysetHandle());
+
+		assertTrue(rotatedProvider instanceof ChaCha20Poly1305EncryptionProvider2);
+		assertEquals(clear.length(), rotatedProvider.plaintextLength(cipherBytes.length));
+		assertEquals(clear, rotatedProvider.decrypt(cipher));
+
+		BulkDecryptResult result = rotatedProvider.decryptEach(new byte[][] { cipherBytes });
+		assertEquals(BulkDecryptResult.OK, result.getStatus(0));
+		assertTrue(Arrays.equals(clear.getBytes(), result.getClearText(0)));
+
+	}
+
+}
@@ -0,0 +1,160 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 Seamus Minogue
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.theblackchamber.crypto.providers;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.security.GeneralSecurityException;
+import java.util.Arrays;
+import java.util.Base64;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.google.crypto.tink.KeysetHandle;
+import com.google.crypto.tink.aead.AesGcmKeyManager;
+
+import net.theblackchamber.crypto.constants.CiphertextFormat;
+import net.theblackchamber.crypto.constants.SupportedCiphertextCodecs;
+import net.theblackchamber.crypto.constants.SupportedKeyGenAlgorithms;
+import net.theblackchamber.crypto.exceptions.MissingParameterException;
+import net.theblackchamber.crypto.model.KeyConfig;
+import net.theblackchamber.crypto.model.KeyConfig2;
+import net.theblackchamber.crypto.providers.symmetric.AESEncryptionProvider;
+import net.theblackchamber.crypto.providers.symmetric.AESEncryptionProvider2;
+import net.theblackchamber.crypto.util.KeystoreUtils;
+import net.theblackchamber.crypto.util.KeystoreUtils2;
+
+public class CiphertextFormatRouterTest2 {
+
+	@Rule
+	public TemporaryFolder	tempFolder	= new TemporaryFolder();
+
+	EncryptionProvider		legacyProvider;
+	EncryptionProvider2		encryptionProvider;
+
+	@Before
+	public void init() throws Exception {
+		File legacyFile = tempFolder.newFile("legacy.keys");
+		KeystoreUtils.generateSecretKey(new KeyConfig(legacyFile, "test", 256, SupportedKeyGenAlgorithms.AES, "aes-key"));
+		legacyProvider = new AESEncryptionProvider(KeystoreUtils.getSecretKey(legacyFile, "aes-key", "test"));
+
+		File keyFile = tempFolder.newFile("keystore.keys");
+		KeyConfig2 config = new KeyConfig2(keyFile, "test");
+		KeystoreUtils2.generateSecretKey(config);
+		encryptionProvider = EncryptionProviderFactory2.getProvider(KeystoreUtils2.getSecretKey(config));
+	}
+
+	@Test
+	public void testClassify() throws Exception {
+
+		for (int i = 0; i < 50; i++) {
+			assertEquals(CiphertextFormat.V1_HEX, CiphertextFormatRouter.classify(legacyProvider.encrypt("value " + i)));
+			assertEquals(CiphertextFormat.V2_TINK, CiphertextFormatRouter.classify(encryptionProvider.encrypt("value " + i)));
+		}
+
+		assertEquals(CiphertextFormat.UNKNOWN, CiphertextFormatRouter.classify(null));
+		assertEquals(CiphertextFormat.UNKNOWN, CiphertextFormatRouter.classify("ABC"));
+		assertEquals(CiphertextFormat.UNKNOWN, CiphertextFormatRouter.classify("not a ciphertext"));
+
+	}
+
+	@Test
+	public void testDecrypt() throws Exception {
+
+		CiphertextFormatRouter router = new CiphertextFormatRouter(legacyProvider, encryptionProvider);
+
+		assertEquals("legacy", router.decrypt(legacyProvider.encrypt("legacy")));
+		assertEquals("legacy", router.decrypt(legacyProvider.encrypt("legacy")));
+		assertEquals("current", router.decrypt(encryptionProvider.encrypt("current")));
+
+		// RAW keys have no prefix so are decrypted by trial.
+		EncryptionProvider2 rawProvider = new AESEncryptionProvider2(
+				KeysetHandle.generateNew(AesGcmKeyManager.rawAes256GcmTemplate()));
+		CiphertextFormatRouter rawRouter = new CiphertextFormatRouter(legacyProvider, rawProvider);
+		String rawCipherText = rawProvider.encrypt("raw");
+		assertEquals("raw", rawRouter.decrypt(rawCipherText));
+		assertEquals(1, rawRouter.getCount(CiphertextFormatRouter.classify(rawCipherText)));
+
+		assertEquals(2, router.getCount(CiphertextFormat.V1_HEX));
+		assertEquals(1, router.getCount(CiphertextFormat.V2_TINK));
+		assertEquals(0, router.getCount(CiphertextFormat.UNKNOWN));
+
+		router.resetCounts();
+		assertEquals(0, router.getCount(CiphertextFormat.V1_HEX));
+
+		try {
+			router.decrypt("");
+			fail();
+		} catch (MissingParameterException e) {
+		}
+
+	}
+
+	@Test
+	public void testDecryptHexLooking2x() throws Exception {
+
+		// 2.x values of LEGACY or RAW keys can be upper case hexadecimal by chance.
+		final byte[] prefix = Base64.getDecoder().decode("AABCDEF012345678");
+		EncryptionProvider2 hexProvider = new EncryptionProvider2(encryptionProvider.getKey()) {
+
+			@Override
+			protected byte[] performEncryption(byte[] data, byte[] associated) throws GeneralSecurityException {
+				byte[] cipherText = Arrays.copyOf(prefix, prefix.length + data.length);
+				System.arraycopy(data, 0, cipherText, prefix.length, data.length);
+				return cipherText;
+			}
+
+			@Override
+			protected byte[] performDecryption(byte[] data, byte[] associated) throws GeneralSecurityException {
+				if (!Arrays.equals(prefix, Arrays.copyOf(data, prefix.length))) {
+					throw new GeneralSecurityException("Decryption failed");
+				}
+				return Arrays.copyOfRange(data, prefix.length, data.length);
+			}
+
+		};
+
+		CiphertextFormatRouter router = new CiphertextFormatRouter(legacyProvider, hexProvider);
+		String cipherText = hexProvider.encrypt("current");
+
+		assertEquals(CiphertextFormat.V1_HEX, CiphertextFormatRouter.classify(cipherText));
+		assertEquals("current", router.decrypt(cipherText));
+		assertEquals("legacy", router.decrypt(legacyProvider.encrypt("legacy")));
+
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testRequiresBase64() throws Exception {
+
+		encryptionProvider.setCodec(SupportedCiphertextCodecs.HEX);
+		new CiphertextFormatRouter(legacyProvider, encryptionProvider);
+
+	}
+
+}
@@ -4,7 +4,9 @@ import java.io.File;
 
 import javax.crypto.SecretKey;
 
+import net.theblackchamber.crypto.constants.SupportedCiphertextCodecs;
 import net.theblackchamber.crypto.constants.SupportedKeyGenAlgorithms;
+import net.theblackchamber.crypto.exceptions.MissingParameterException;
 import net.theblackchamber.crypto.model.KeyConfig;
 import net.theblackchamber.crypto.model.KeyConfig2;
 import net.theblackchamber.crypto.util.KeystoreUtils;
@@ -22,6 +24,7 @@ import static org.junit.Assert.*;
 public class EncryptionProviderFactoryTest2 {
 
 	KeysetHandle aesKey;
+	KeyConfig2 config;
 	
 	
 	@Rule
@@ -32,7 +35,7 @@ public class EncryptionProviderFactoryTest2 {
 		try {
 			File keyFile = tempFolder.newFile("keystore.keys");
 
-			KeyConfig2 config = new KeyConfig2(keyFile,"test");
+			config = new KeyConfig2(keyFile,"test");
 			KeystoreUtils2.generateSecretKey(config);
 			
 
@@ -62,4 +65,56 @@ public class EncryptionProviderFactoryTest2 {
 		}
 	}
 	
+	@Test
+	public void testGetSharedProvider() throws Exception {
+
+		EncryptionProviderFactory2.clearSharedProviders();
+
+		EncryptionProvider2 shared = EncryptionProviderFactory2.getSharedProvider(aesKey);
+		assertSame(shared, EncryptionProviderFactory2.getSharedProvider(aesKey));
+		assertNotSame(shared, EncryptionProviderFactory2.getProvider(aesKey));
+
+		// Same keyset read again is matched by fingerprint
+		KeysetHandle reread = KeystoreUtils2.getSecretKey(config);
+		assertNotSame(aesKey, reread);
+		assertSame(shared, EncryptionProviderFactory2.getSharedProvider(reread));
+
+		// A different keyset gets its own provider
+		File otherFile = tempFolder.newFile("other.keys");
+		KeyConfig2 otherConfig = new KeyConfig2(otherFile, "test");
+		KeystoreUtils2.generateSecretKey(otherConfig);
+		EncryptionProvider2 other = EncryptionProviderFactory2.getSharedProvider(KeystoreUtils2.getSecretKey(otherConfig));
+		assertNotSame(shared, other);
+		assertSame(shared, EncryptionProviderFactory2.getSharedProvider(aesKey));
+
+		assertEquals("clear text", other.decrypt(other.encrypt("clear text")));
+
+		// Settings of a shared provider are read only, private instances are not
+		assertTrue(shared.isShared());
+		try {
+			shared.setCodec(SupportedCiphertextCodecs.HEX);
+			fail();
+		} catch (UnsupportedOperationException e) {
+			// Expected behavior
+		}
+		try {
+			shared.setMetrics(null);
+			fail();
+		} catch (UnsupportedOperationException e) {
+			// Expected behavior
+		}
+		EncryptionProvider2 own = EncryptionProviderFactory2.getProvider(aesKey);
+		assertFalse(own.isShared());
+		own.setCodec(SupportedCiphertextCodecs.HEX);
+
+		EncryptionProviderFactory2.clearSharedProviders();
+		assertNotSame(shared, EncryptionProviderFactory2.getSharedProvider(aesKey));
+
+	}
+
+	@Test(expected = MissingParameterException.class)
+	public void testGetSharedProviderMissingKey() throws Exception {
+		EncryptionProviderFactory2.getSharedProvider(null);
+	}
+	
 }
@@ -0,0 +1,191 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 Seamus Minogue
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.theblackchamber.crypto.providers;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.lang3.RandomStringUtils;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.google.crypto.tink.KeysetHandle;
+
+import net.theblackchamber.crypto.exceptions.MissingParameterException;
+import net.theblackchamber.crypto.model.KeyConfig2;
+import net.theblackchamber.crypto.providers.symmetric.AESEncryptionProvider2;
+import net.theblackchamber.crypto.providers.symmetric.EnvelopeEncryptionProvider2;
+import net.theblackchamber.crypto.util.KeystoreUtils2;
+
+public class EnvelopeEncryptionProviderTest2 {
+
+	KeysetHandle			key;
+
+	AtomicInteger			wraps		= new AtomicInteger();
+	AtomicInteger			unwraps		= new AtomicInteger();
+
+	@Rule
+	public TemporaryFolder	tempFolder	= new TemporaryFolder();
+
+	@Before
+	public void init() {
+		try {
+			File keyFile = tempFolder.newFile("keystore.keys");
+
+			KeyConfig2 config = new KeyConfig2(keyFile, "test");
+			KeystoreUtils2.generateSecretKey(config);
+
+			key = KeystoreUtils2.getSecretKey(config);
+
+			assertNotNull(key);
+
+		} catch (Exception e) {
+			e.printStackTrace();
+			fail();
+		}
+	}
+
+	private EncryptionProvider2 countingMaster() {
+		return new AESEncryptionProvider2(key) {
+
+			@Override
+			protected byte[] performEncryption(byte[] data, byte[] associated) throws GeneralSecurityException {
+				wraps.incrementAndGet();
+				return super.performEncryption(data, associated);
+			}
+
+			@Override
+			protected byte[] performDecryption(byte[] data, byte[] associated) throws GeneralSecurityException {
+				unwraps.incrementAndGet();
+				return super.performDecryption(data, associated);
+			}
+
+		};
+	}
+
+	@Test
+	public void testEncryptDecrypt() throws GeneralSecurityException, MissingParameterException {
+
+		EncryptionProvider2 encryptionProvider = new EnvelopeEncryptionProvider2(countingMaster());
+
+		String clear = RandomStringUtils.randomAlphabetic(50);
+		String cipher = encryptionProvider.encrypt(clear);
+
+		assertFalse(cipher.equals(encryptionProvider.encrypt(clear)));
+		assertEquals(clear, encryptionProvider.decrypt(cipher));
+
+		byte[] clearBytes = clear.getBytes();
+		byte[] associated = "associated".getBytes();
+		byte[] cipherBytes = encryptionProvider.encrypt(clearBytes, associated);
+		assertTrue(Arrays.equals(clearBytes, encryptionProvider.decrypt(cipherBytes, associated)));
+
+		try {
+			encryptionProvider.decrypt(cipherBytes, "other".getBytes());
+			fail();
+		} catch (GeneralSecurityException gse) {
+			// Expected behavior
+		}
+
+		cipherBytes[0] = 9;
+		try {
+			encryptionProvider.decrypt(cipherBytes, associated);
+			fail();
+		} catch (GeneralSecurityException gse) {
+			// Expected behavior
+		}
+
+		ByteBuffer src = ByteBuffer.wrap(clearBytes);
+		ByteBuffer dst = ByteBuffer.allocate(encryptionProvider.ciphertextLength(clearBytes.length));
+		encryptionProvider.encrypt(src, null, dst);
+		dst.flip();
+		ByteBuffer decrypted = ByteBuffer.allocate(encryptionProvider.plaintextLength(dst.remaining()));
+		assertEquals(clearBytes.length, encryptionProvider.decrypt(dst, null, decrypted));
+
+	}
+
+	@Test
+	public void testMasterKeyUsage() throws GeneralSecurityException, MissingParameterException {
+
+		EncryptionProvider2 encryptionProvider = new EnvelopeEncryptionProvider2(countingMaster(), 10,
+				EnvelopeEncryptionProvider2.DEFAULT_MAX_DEK_AGE, 16);
+
+		byte[] clear = RandomStringUtils.randomAlphabetic(50).getBytes();
+		byte[][] ciphers = new byte[25][];
+		for (int i = 0; i < ciphers.length; i++) {
+			ciphers[i] = encryptionProvider.encrypt(clear);
+		}
+
+		// One DEK per 10 messages
+		assertEquals(3, wraps.get());
+
+		for (byte[] cipher : ciphers) {
+			assertTrue(Arrays.equals(clear, encryptionProvider.decrypt(cipher)));
+		}
+
+		// DEKs this instance generated are already cached
+		assertEquals(0, unwraps.get());
+
+		EncryptionProvider2 decryptor = new EnvelopeEncryptionProvider2(countingMaster());
+		for (byte[] cipher : ciphers) {
+			assertTrue(Arrays.equals(clear, decryptor.decrypt(cipher)));
+		}
+
+		// Each DEK is unwrapped once
+		assertEquals(3, unwraps.get());
+
+	}
+
+	@Test
+	public void testDekAge() throws Exception {
+
+		EnvelopeEncryptionProvider2 encryptionProvider = new EnvelopeEncryptionProvider2(countingMaster(),
+				EnvelopeEncryptionProvider2.DEFAULT_MAX_DEK_USES, 50, 16);
+
+		byte[] clear = RandomStringUtils.randomAlphabetic(50).getBytes();
+		encryptionProvider.encrypt(clear);
+		encryptionProvider.encrypt(clear);
+		assertEquals(1, wraps.get());
+
+		Thread.sleep(100);
+		encryptionProvider.encrypt(clear);
+		assertEquals(2, wraps.get());
+
+		encryptionProvider.rotateDek();
+		encryptionProvider.encrypt(clear);
+		assertEquals(3, wraps.get());
+
+	}
+
+}
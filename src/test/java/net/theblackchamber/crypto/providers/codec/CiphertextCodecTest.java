@@ -0,0 +1,113 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 Seamus Minogue
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.theblackchamber.crypto.providers.codec;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Random;
+
+import org.junit.Test;
+
+import net.theblackchamber.crypto.constants.SupportedCiphertextCodecs;
+
+public class CiphertextCodecTest {
+
+	@Test
+	public void testRoundTrip() {
+
+		Random random = new Random();
+
+		for (SupportedCiphertextCodecs supported : SupportedCiphertextCodecs.values()) {
+			CiphertextCodec codec = supported.getCodec();
+			for (int length = 0; length < 100; length++) {
+				byte[] data = new byte[length];
+				random.nextBytes(data);
+
+				String encoded = codec.encodeToString(data);
+				assertEquals(codec.encodedLength(length), encoded.length());
+				assertTrue(codec.maxDecodedLength(encoded.length()) >= length);
+				assertTrue(Arrays.equals(data, codec.decode(encoded)));
+
+				char[] chars = new char[codec.encodedLength(length) + 2];
+				assertEquals(encoded.length(), codec.encode(data, 0, length, chars, 1));
+				assertEquals(encoded, new String(chars, 1, encoded.length()));
+			}
+		}
+
+	}
+
+	@Test
+	public void testBase64MatchesJdk() {
+
+		byte[] data = new byte[50];
+		new Random().nextBytes(data);
+
+		for (int length = 0; length < data.length; length++) {
+			byte[] range = Arrays.copyOf(data, length);
+			assertEquals(Base64.getEncoder().encodeToString(range),
+					SupportedCiphertextCodecs.BASE64.getCodec().encodeToString(range));
+			assertEquals(Base64.getEncoder().withoutPadding().encodeToString(range),
+					SupportedCiphertextCodecs.BASE64_UNPADDED.getCodec().encodeToString(range));
+			assertEquals(Base64.getUrlEncoder().encodeToString(range),
+					SupportedCiphertextCodecs.BASE64_URL.getCodec().encodeToString(range));
+			assertEquals(Base64.getUrlEncoder().withoutPadding().encodeToString(range),
+					SupportedCiphertextCodecs.BASE64_URL_UNPADDED.getCodec().encodeToString(range));
+		}
+
+	}
+
+	@Test
+	public void testKnownValues() {
+
+		byte[] data = new byte[] { (byte) 0x86, 0x4F, (byte) 0xD2, 0x6F, (byte) 0xB5, 0x59, (byte) 0xF7, 0x5B };
+
+		// Test vector from the Z85 specification
+		assertEquals("HelloWorld", SupportedCiphertextCodecs.Z85.getCodec().encodeToString(data));
+		assertEquals("864FD26FB559F75B", SupportedCiphertextCodecs.HEX.getCodec().encodeToString(data));
+		assertTrue(Arrays.equals(data, SupportedCiphertextCodecs.HEX.getCodec().decode("864fd26fb559f75b")));
+
+	}
+
+	@Test
+	public void testMalformed() {
+
+		String[][] malformed = new String[][] { { "BASE64", "QQ=" }, { "BASE64", "Q" }, { "BASE64_URL", "ab+/" },
+				{ "HEX", "ABC" }, { "HEX", "GG" }, { "Z85", "H" }, { "Z85", "Hell~" }, { "Z85", "#####" } };
+
+		for (String[] value : malformed) {
+			try {
+				SupportedCiphertextCodecs.valueOf(value[0]).getCodec().decode(value[1]);
+				fail(value[0] + " " + value[1]);
+			} catch (IllegalArgumentException iae) {
+				// Expected behavior
+			}
+		}
+
+	}
+
+}
@@ -0,0 +1,212 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 Seamus Minogue
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.theblackchamber.crypto.providers.compression;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.security.GeneralSecurityException;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.apache.commons.lang3.RandomStringUtils;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.google.crypto.tink.KeysetHandle;
+
+import net.theblackchamber.crypto.implementations.FileEncryptor2;
+import net.theblackchamber.crypto.model.KeyConfig2;
+import net.theblackchamber.crypto.providers.EncryptionProvider2;
+import net.theblackchamber.crypto.providers.EncryptionProviderFactory2;
+import net.theblackchamber.crypto.util.KeystoreUtils2;
+
+public class CompressingEncryptionProviderTest2 {
+
+	KeysetHandle			key;
+
+	@Rule
+	public TemporaryFolder	tempFolder	= new TemporaryFolder();
+
+	@Before
+	public void init() {
+		try {
+			File keyFile = tempFolder.newFile("keystore.keys");
+
+			KeyConfig2 config = new KeyConfig2(keyFile, "test");
+			KeystoreUtils2.generateSecretKey(config);
+
+			key = KeystoreUtils2.getSecretKey(config);
+
+			assertNotNull(key);
+
+		} catch (Exception e) {
+			e.printStackTrace();
+			fail();
+		}
+	}
+
+	private static byte[] json(int records) {
+		StringBuilder builder = new StringBuilder("[");
+		for (int i = 0; i < records; i++) {
+			builder.append("{\"id\":").append(i).append(",\"name\":\"").append(RandomStringUtils.randomAlphabetic(8))
+					.append("\",\"active\":true},");
+		}
+		return builder.append("]").toString().getBytes();
+	}
+
+	@Test
+	public void testCompressible() throws Exception {
+
+		EncryptionProvider2 plain = EncryptionProviderFactory2.getProvider(key);
+		EncryptionProvider2 compressing = new CompressingEncryptionProvider2(plain);
+
+		byte[] clear = json(1000);
+		byte[] associated = "associated".getBytes();
+		byte[] cipher = compressing.encrypt(clear, associated);
+
+		assertTrue(cipher.length < plain.encrypt(clear, associated).length / 2);
+		assertTrue(Arrays.equals(clear, compressing.decrypt(cipher, associated)));
+
+		try {
+			compressing.decrypt(cipher, "other".getBytes());
+			fail();
+		} catch (GeneralSecurityException gse) {
+			// Expected behavior
+		}
+
+		String text = new String(json(100));
+		assertEquals(text, compressing.decrypt(compressing.encrypt(text)));
+
+	}
+
+	@Test
+	public void testIncompressible() throws Exception {
+
+		EncryptionProvider2 plain = EncryptionProviderFactory2.getProvider(key);
+		CompressingEncryptionProvider2 compressing = new CompressingEncryptionProvider2(plain);
+
+		byte[] random = new byte[10000];
+		new Random().nextBytes(random);
+
+		assertTrue(CompressingEncryptionProvider2.sampleEntropy(random) > CompressingEncryptionProvider2.DEFAULT_MAXIMUM_ENTROPY);
+		assertTrue(CompressingEncryptionProvider2.sampleEntropy(json(1000)) < CompressingEncryptionProvider2.DEFAULT_MAXIMUM_ENTROPY);
+
+		// Random and short data is stored with a one byte flag
+		assertEquals(random.length + 1, compressing.frame(random).length);
+		assertEquals(0, compressing.frame(random)[0]);
+		byte[] small = "short".getBytes();
+		assertEquals(small.length + 1, compressing.frame(small).length);
+
+		byte[] cipher = compressing.encrypt(random);
+		assertEquals(compressing.ciphertextLength(random.length), cipher.length);
+		assertTrue(Arrays.equals(random, compressing.decrypt(cipher)));
+		assertTrue(Arrays.equals(small, compressing.decrypt(compressing.encrypt(small))));
+
+	}
+
+	@Test
+	public void testDecryptOverstatedLength() throws Exception {
+
+		EncryptionProvider2 plain = EncryptionProviderFactory2.getProvider(key);
+		CompressingEncryptionProvider2 compressing = new CompressingEncryptionProvider2(plain);
+
+		// A frame claiming far more data than it holds fails without allocating the claimed length.
+		byte[] framed = compressing.frame(json(100));
+		assertEquals(DeflateCompressionCodec.ID, framed[0]);
+		int claimed = CompressingEncryptionProvider2.MAX_ORIGINAL_LENGTH;
+		framed[1] = (byte) (claimed >>> 24);
+		framed[2] = (byte) (claimed >>> 16);
+		framed[3] = (byte) (claimed >>> 8);
+		framed[4] = (byte) claimed;
+
+		try {
+			compressing.decrypt(plain.encrypt(framed));
+			fail();
+		} catch (GeneralSecurityException gse) {
+			// Expected behavior
+		}
+
+	}
+
+	@Test
+	public void testFileEncryptor() throws Exception {
+
+		EncryptionProvider2 compressing = new CompressingEncryptionProvider2(EncryptionProviderFactory2.getProvider(key));
+		FileEncryptor2 fileEncryptor = new FileEncryptor2(compressing);
+
+		byte[] clear = json(1000);
+		ByteArrayOutputStream encrypted = new ByteArrayOutputStream();
+		fileEncryptor.encryptStream(new ByteArrayInputStream(clear), encrypted);
+
+		assertTrue(encrypted.size() < clear.length / 2);
+		assertTrue(Arrays.equals(clear, compressing.decrypt(encrypted.toByteArray())));
+
+	}
+
+	@Test
+	public void testDecryptTextOnFreshThread() throws Exception {
+
+		EncryptionProvider2 compressing = new CompressingEncryptionProvider2(EncryptionProviderFactory2.getProvider(key));
+
+		// Compresses to far less than the 256 byte initial scratch of a new thread.
+		String text = new String(json(100));
+		String cipher = compressing.encrypt(text);
+
+		AtomicReference<Object> result = new AtomicReference<Object>();
+		Thread reader = new Thread(() -> {
+			try {
+				result.set(compressing.decrypt(cipher));
+			} catch (Exception e) {
+				result.set(e);
+			}
+		});
+		reader.start();
+		reader.join();
+
+		assertEquals(text, result.get());
+
+		Thread charReader = new Thread(() -> {
+			try {
+				result.set(new String(compressing.decryptToChars(cipher, null)));
+			} catch (Exception e) {
+				result.set(e);
+			}
+		});
+		charReader.start();
+		charReader.join();
+
+		assertEquals(text, result.get());
+
+	}
+
+}
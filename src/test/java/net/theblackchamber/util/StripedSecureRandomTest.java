@@ -0,0 +1,90 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 Seamus Minogue
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.theblackchamber.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import net.theblackchamber.crypto.util.StripedSaltGenerator;
+import net.theblackchamber.crypto.util.StripedSecureRandom;
+
+public class StripedSecureRandomTest {
+
+	@Test
+	public void testRandBytes() {
+
+		assertNotNull(StripedSecureRandom.getAlgorithm());
+		assertEquals(12, StripedSecureRandom.randBytes(12).length);
+		assertFalse(Arrays.equals(StripedSecureRandom.randBytes(16), StripedSecureRandom.randBytes(16)));
+		assertTrue(StripedSecureRandom.current() == StripedSecureRandom.current());
+
+	}
+
+	@Test
+	public void testConcurrentUniqueness() throws InterruptedException {
+
+		final Set<String> values = ConcurrentHashMap.newKeySet();
+		ExecutorService executor = Executors.newFixedThreadPool(8);
+		try {
+			for (int t = 0; t < 8; t++) {
+				executor.execute(new Runnable() {
+					@Override
+					public void run() {
+						for (int i = 0; i < 1000; i++) {
+							values.add(Arrays.toString(StripedSecureRandom.randBytes(12)));
+						}
+					}
+				});
+			}
+		} finally {
+			executor.shutdown();
+		}
+		assertTrue(executor.awaitTermination(30, TimeUnit.SECONDS));
+
+		assertEquals(8000, values.size());
+
+	}
+
+	@Test
+	public void testSaltGenerator() {
+
+		StripedSaltGenerator generator = new StripedSaltGenerator();
+
+		assertEquals(16, generator.generateSalt(16).length);
+		assertTrue(generator.includePlainSaltInEncryptionResults());
+
+	}
+
+}